@@ -15,35 +15,93 @@
  */
 package io.gravitee.discovery.eureka;
 
-import com.netflix.appinfo.ApplicationInfoManager;
 import com.netflix.appinfo.InstanceInfo;
-import com.netflix.appinfo.MyDataCenterInstanceConfig;
-import com.netflix.appinfo.providers.EurekaConfigBasedInstanceInfoProvider;
-import com.netflix.discovery.CacheRefreshedEvent;
-import com.netflix.discovery.DiscoveryClient;
-import com.netflix.discovery.EurekaClientConfig;
-import com.netflix.discovery.shared.transport.EurekaTransportConfig;
 import io.gravitee.discovery.api.event.Event;
 import io.gravitee.discovery.api.event.Handler;
 import io.gravitee.discovery.api.service.AbstractServiceDiscovery;
 import io.gravitee.discovery.eureka.configuration.EurekaServiceDiscoveryConfiguration;
+import io.gravitee.discovery.eureka.configuration.HostResolution;
+import io.gravitee.discovery.eureka.event.ChangeSetHandler;
+import io.gravitee.discovery.eureka.event.EndpointChangeSet;
+import io.gravitee.discovery.eureka.event.EndpointUpdateEvent;
+import io.gravitee.discovery.eureka.event.EndpointUpdateHandler;
+import io.gravitee.discovery.eureka.registry.ApplicationChangeSet;
+import io.gravitee.discovery.eureka.registry.ApplicationFingerprint;
+import io.gravitee.discovery.eureka.registry.ApplicationListener;
+import io.gravitee.discovery.eureka.registry.EurekaRegistry;
+import io.gravitee.discovery.eureka.registry.RegistryStatistics;
+import io.gravitee.discovery.eureka.service.EndpointDamper;
+import io.gravitee.discovery.eureka.service.EndpointWeight;
 import io.gravitee.discovery.eureka.service.EurekaService;
+import io.gravitee.discovery.eureka.service.EurekaServiceDiff;
 import io.gravitee.discovery.eureka.service.EurekaServiceResolver;
-import io.gravitee.discovery.eureka.spring.EurekaClientConfigBean;
-import io.gravitee.discovery.eureka.spring.EurekaTransportConfigBean;
+import io.gravitee.discovery.eureka.service.HealthProber;
+import io.gravitee.discovery.eureka.service.HostResolver;
+import io.gravitee.discovery.eureka.service.InstanceFilter;
+import io.gravitee.discovery.eureka.service.InstanceSelector;
+import io.gravitee.discovery.eureka.service.PanicGuard;
+import io.gravitee.discovery.eureka.service.SlowStart;
+import io.gravitee.discovery.eureka.service.VertxHealthProbe;
+import io.gravitee.discovery.eureka.service.ZoneAffinity;
+import io.vertx.core.Vertx;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
 
+import java.time.Clock;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class EurekaServiceDiscovery extends AbstractServiceDiscovery<EurekaService> implements InitializingBean {
 
+  private static final Logger LOGGER = LoggerFactory.getLogger(EurekaServiceDiscovery.class);
+
   @Autowired
   private ConfigurableEnvironment env;
-  private DiscoveryClient eurekaClient;
+  @Autowired(required = false)
+  private Vertx vertx;
+  private EurekaRegistry eurekaRegistry;
   private EurekaServiceResolver eurekaServiceResolver;
+  private RegistryStatistics statistics;
   private final EurekaServiceDiscoveryConfiguration configuration;
+  private InstanceSelector selector;
+  private String application;
+  private ApplicationListener listener;
+  // Only subscribed so that the applications are fetched, their changes being received by the registry-wide listener
+  private final ApplicationListener watcher = (name, applicationFingerprint, changes) -> { };
+  private final EurekaServiceDiff serviceDiff = new EurekaServiceDiff();
+  private ApplicationFingerprint fingerprint;
+  private Clock clock = Clock.systemUTC();
+  private EndpointDamper damper;
+  private ZoneAffinity zoneAffinity;
+  private PanicGuard panicGuard;
+  private EndpointWeight endpointWeight;
+  private SlowStart slowStart;
+  private Function<InstanceInfo, EurekaService> serviceFactory;
+  private VertxHealthProbe healthProbe;
+  private HealthProber healthProber;
+  private final AtomicBoolean probesDrainScheduled = new AtomicBoolean();
+  private HostResolver hostResolver;
+  private final AtomicBoolean resolvedRefreshScheduled = new AtomicBoolean();
+  private ScheduledExecutorService scheduler;
+  private ScheduledFuture<?> flushTask;
+  private ScheduledFuture<?> rampTask;
+  private ScheduledFuture<?> healthCheckTask;
+  private ScheduledFuture<?> hostResolverTask;
+  private ScheduledFuture<?> panicTask;
+  private boolean initialized;
+  private boolean released;
 
   public EurekaServiceDiscovery(EurekaServiceDiscoveryConfiguration configuration) {
     this.configuration = configuration;
@@ -51,48 +109,431 @@ public class EurekaServiceDiscovery extends AbstractServiceDiscovery<EurekaServi
 
   @Override
   public void listen(Handler<Event> handler) {
-    refresh(handler);
-    eurekaClient.registerEventListener(eurekaEvent -> {
-      if (eurekaEvent instanceof CacheRefreshedEvent) {
-        refresh(handler);
+    List<String> applications = new ArrayList<>();
+    applications.add(configuration.getApplication());
+    if (configuration.getApplications() != null) {
+      applications.addAll(configuration.getApplications());
+    }
+    // Compiled once, instances are then filtered without parsing the expression again
+    InstanceFilter filter = StringUtils.hasText(configuration.getInstanceFilter())
+        ? InstanceFilter.compile(configuration.getInstanceFilter()) : null;
+    selector = new InstanceSelector(applications, configuration.getVipAddress(), configuration.getSecureVipAddress(),
+        filter);
+    Assert.isTrue(!selector.isEmpty(), "An application or a VIP address is required");
+    if (selector.getApplications().size() == 1 && !selector.hasVipAddresses()) {
+      // Single application, its fingerprint tells whether it changed
+      application = selector.getApplications().iterator().next();
+    }
+
+    if (StringUtils.hasText(configuration.getWeightMetadataKey())) {
+      endpointWeight = new EndpointWeight(configuration.getWeightMetadataKey(),
+          Math.max(configuration.getDefaultWeight(), EurekaService.DEFAULT_WEIGHT));
+    }
+    if (configuration.getSlowStartWindow() > 0) {
+      slowStart = new SlowStart(configuration.getSlowStartWindow(), configuration.getSlowStartCurve());
+    }
+    if (hostResolution() == HostResolution.RESOLVED) {
+      hostResolver = new HostResolver(eurekaRegistry.getLookupExecutor(), HostResolver::resolve,
+          configuration.getHostResolutionTtl(), clock, () -> onResolved(handler));
+    }
+    serviceFactory = serviceFactory();
+    if (configuration.isZoneAffinity()) {
+      if (eurekaRegistry.getZone() == null) {
+        LOGGER.warn("Zone affinity ignored for {}, the gateway availability zone is unknown", selector);
+      } else {
+        zoneAffinity = new ZoneAffinity(eurekaRegistry.getZone(), configuration.getZoneOverflowThreshold());
+      }
+    }
+    if (configuration.getPanicThreshold() > 0) {
+      panicGuard = new PanicGuard(selector.toString(), configuration.getPanicThreshold(),
+          configuration.getPanicDuration());
+    }
+    if (configuration.getFlapDwellTime() > 0) {
+      damper = new EndpointDamper(configuration.getFlapDwellTime(), configuration.getFlapMaxDelay());
+    }
+    if (configuration.isHealthCheck()) {
+      if (vertx == null) {
+        LOGGER.warn("Health check ignored for {}, no Vert.x instance available", selector);
+      } else {
+        healthProbe = new VertxHealthProbe(vertx, configuration.getHealthCheckTimeout(),
+            configuration.isHealthCheckTrustAll());
+        healthProber = new HealthProber(healthProbe, configuration.getHealthCheckConcurrency(),
+            configuration.getHealthCheckUnhealthyThreshold(), () -> onProbed(handler));
+      }
+    }
+    if (damper != null || slowStart != null || healthProber != null || hostResolver != null || panicGuard != null) {
+      scheduler = eurekaRegistry.getScheduler();
+    }
+
+    // Subscribe first so that the applications are watched (and fetched) before the initial refresh
+    listener = (name, applicationFingerprint, changes) ->
+        refresh(handler, application == null ? null : applicationFingerprint, changes);
+    if (selector.hasVipAddresses()) {
+      selector.getApplications().forEach(name -> eurekaRegistry.subscribe(name, watcher));
+      eurekaRegistry.subscribeAll(listener);
+    } else {
+      selector.getApplications().forEach(name -> eurekaRegistry.subscribe(name, listener));
+    }
+
+    // The Eureka client is started in background, do not hold the deployment longer than the warm-up deadline
+    if (!eurekaRegistry.awaitStarted()) {
+      LOGGER.info("Eureka registry not fetched yet, endpoints of {} will be refreshed once fetched", selector);
+    }
+    ApplicationFingerprint initialFingerprint = application == null ? null : eurekaRegistry.fingerprint(application);
+    refresh(handler, initialFingerprint, ApplicationChangeSet.RECONCILE);
+
+    if (healthProber != null) {
+      long interval = configuration.getHealthCheckInterval();
+      healthCheckTask = scheduler.scheduleWithFixedDelay(healthProber::probeAll, interval, interval, TimeUnit.MILLISECONDS);
+    }
+    if (hostResolver != null) {
+      long ttl = configuration.getHostResolutionTtl();
+      hostResolverTask = scheduler.scheduleWithFixedDelay(hostResolver::refresh, ttl, ttl, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * The host resolution of the API, or the gateway <code>applicationsResolverUseIp</code> setting.
+   */
+  private HostResolution hostResolution() {
+    HostResolution hostResolution = configuration.getHostResolution();
+    if (hostResolution != null) {
+      return hostResolution;
+    }
+    return eurekaRegistry.isUseIpAddress() ? HostResolution.IP_ADDRESS : HostResolution.HOSTNAME;
+  }
+
+  /**
+   * The created service is <code>null</code> if the instance is not to be published yet.
+   */
+  private Function<InstanceInfo, EurekaService> serviceFactory() {
+    HostResolution hostResolution = hostResolution();
+    if (endpointWeight == null && slowStart == null && application != null
+        && hostResolution != HostResolution.IP_ADDRESS && hostResolver == null) {
+      return null;
+    }
+
+    Function<InstanceInfo, EurekaService> factory = endpointWeight == null ? EurekaService::new : endpointWeight::service;
+    if (application == null) {
+      // Several applications are used, the same instance id can be registered by more than one of them
+      Function<InstanceInfo, EurekaService> unqualified = factory;
+      factory = instance -> unqualified.apply(instance).withApplication(instance.getAppName());
+    }
+    if (hostResolution == HostResolution.IP_ADDRESS) {
+      factory = factory.andThen(service ->
+          StringUtils.hasText(service.ipAddress()) ? service.withHost(service.ipAddress()) : service);
+    } else if (hostResolver != null) {
+      // Instances are published once their host name is resolved
+      factory = factory.andThen(service -> {
+        String address = hostResolver.address(service.host());
+        return address == null ? null : service.withHost(address);
+      });
+    }
+    if (slowStart != null) {
+      Function<InstanceInfo, EurekaService> weighted = factory;
+      factory = instance -> {
+        EurekaService service = weighted.apply(instance);
+        return service == null ? null : slowStart.weigh(service, clock.millis(), !initialized);
+      };
+    }
+    return factory;
+  }
+
+  private void onResolved(Handler<Event> handler) {
+    if (resolvedRefreshScheduled.compareAndSet(false, true)) {
+      try {
+        scheduler.execute(() -> {
+          resolvedRefreshScheduled.set(false);
+          refresh(handler, null, ApplicationChangeSet.RECONCILE);
+        });
+      } catch (RejectedExecutionException ex) {
+        // Registry being shut down
       }
-    });
+    }
   }
 
-  private void refresh(Handler<Event> handler) {
-    List<EurekaService> servicesUp = eurekaServiceResolver.getServicesUpByApplicationName(configuration.getApplication());
-    for (EurekaService serviceUp : servicesUp) {
-      EurekaService oldService = getService(serviceUp::equals);
+  private synchronized void refresh(Handler<Event> handler, ApplicationFingerprint applicationFingerprint,
+                                    ApplicationChangeSet changes) {
+    // Steady state: the application did not change since the last processed refresh
+    if (changes.isReconcile() && applicationFingerprint != null && applicationFingerprint.equals(fingerprint)) {
+      statistics.refreshSkipped();
+      return;
+    }
 
-      if (oldService == null) {
-        handler.handle(registerEndpoint(serviceUp));
+    if (damper == null) {
+      publish(handler, diffListener -> apply(applicationFingerprint, changes, diffListener));
+    } else {
+      apply(applicationFingerprint, changes, damper.observer(clock.millis()));
+      if (initialized) {
+        flush(handler);
       } else {
-        // Update it only if target has been changed
-        if (!serviceUp.isTargetEquals(oldService)) {
-          handler.handle(unregisterEndpoint(oldService));
-          handler.handle(registerEndpoint(serviceUp));
+        // Nothing to damp yet, the initial endpoints are published right away
+        publish(handler, damper::flushAll);
+      }
+    }
+    initialized = true;
+    statistics.refreshProcessed();
+    scheduleRamp(handler);
+    schedulePanicCheck(handler);
+  }
+
+  private synchronized void rampUp(Handler<Event> handler) {
+    rampTask = null;
+    long now = clock.millis();
+    if (damper == null) {
+      publish(handler, diffListener -> slowStart.step(now, serviceDiff, diffListener));
+    } else {
+      slowStart.step(now, serviceDiff, damper.observer(now));
+      flush(handler);
+    }
+    scheduleRamp(handler);
+  }
+
+  private void scheduleRamp(Handler<Event> handler) {
+    if (slowStart != null && slowStart.isRamping() && rampTask == null) {
+      rampTask = scheduler.schedule(() -> rampUp(handler), slowStart.stepInterval(), TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void schedulePanicCheck(Handler<Event> handler) {
+    if (panicGuard == null) {
+      return;
+    }
+    long deadline = panicGuard.deadline();
+    if (deadline < 0) {
+      if (panicTask != null) {
+        panicTask.cancel(false);
+        panicTask = null;
+      }
+    } else if (panicTask == null) {
+      panicTask = scheduler.schedule(() -> {
+        synchronized (this) {
+          panicTask = null;
+          refresh(handler, null, ApplicationChangeSet.RECONCILE);
         }
+      }, Math.max(0, deadline - clock.millis()), TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private synchronized void flush(Handler<Event> handler) {
+    if (flushTask != null) {
+      flushTask.cancel(false);
+      flushTask = null;
+    }
+    long now = clock.millis();
+    publish(handler, diffListener -> damper.flush(now, diffListener));
+
+    // Wake up when the next pending change is due
+    long due = damper.nextDue();
+    if (due >= 0) {
+      flushTask = scheduler.schedule(() -> flush(handler), Math.max(0, due - now), TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void onProbed(Handler<Event> handler) {
+    if (probesDrainScheduled.compareAndSet(false, true)) {
+      try {
+        scheduler.execute(() -> {
+          probesDrainScheduled.set(false);
+          publishProbed(handler);
+        });
+      } catch (RejectedExecutionException ex) {
+        // Registry being shut down
       }
     }
+  }
 
-    List<EurekaService> servicesDown = getServices(s -> !servicesUp.contains(s));
-    for (EurekaService serviceDown:servicesDown) {
-      handler.handle(unregisterEndpoint(serviceDown));
+  private synchronized void publishProbed(Handler<Event> handler) {
+    emit(handler, healthProber::drain);
+  }
+
+  private void publish(Handler<Event> handler, Consumer<EurekaServiceDiff.Listener> changes) {
+    if (healthProber == null) {
+      emit(handler, changes);
+    } else {
+      emit(handler, diffListener -> changes.accept(healthProber.gate(diffListener)));
+    }
+  }
+
+  private void emit(Handler<Event> handler, Consumer<EurekaServiceDiff.Listener> changes) {
+    if (configuration.isBatchEvents()) {
+      EndpointChangeSet.Builder changeSet = EndpointChangeSet.builder();
+      changes.accept(batchListener(handler, changeSet));
+      publish(handler, changeSet.build());
+    } else {
+      changes.accept(directListener(handler));
     }
   }
 
+  private void apply(ApplicationFingerprint applicationFingerprint, ApplicationChangeSet changes,
+                     EurekaServiceDiff.Listener diffListener) {
+    if (!changes.isReconcile() && zoneAffinity == null && panicGuard == null) {
+      // Only apply the instances received from the Eureka delta
+      for (InstanceInfo instance : changes.getInstances()) {
+        EurekaService service = null;
+        if (instance.getActionType() != InstanceInfo.ActionType.DELETED
+            && selector.accepts(instance) && selector.matches(instance)) {
+          service = serviceFactory == null ? new EurekaService(instance) : serviceFactory.apply(instance);
+        }
+        if (service != null) {
+          serviceDiff.put(service, diffListener);
+        } else {
+          serviceDiff.remove(serviceId(instance), diffListener);
+        }
+      }
+      // The application has changed since the last processed fingerprint
+      fingerprint = null;
+      return;
+    }
+
+    // With zone affinity or a panic guard, the published services depend on the state of the whole applications
+    List<EurekaService> servicesUp;
+    if (application == null || selector.hasFilter()) {
+      servicesUp = eurekaServiceResolver.getServicesUp(selector,
+          serviceFactory == null ? EurekaService::new : serviceFactory);
+    } else if (serviceFactory == null) {
+      servicesUp = eurekaServiceResolver.getServicesUpByApplicationName(application);
+    } else {
+      servicesUp = eurekaServiceResolver.getServicesUpByApplicationName(application, serviceFactory);
+    }
+    if (panicGuard != null) {
+      servicesUp = guard(servicesUp);
+    }
+    serviceDiff.apply(zoneAffinity == null ? servicesUp : zoneAffinity.select(servicesUp), diffListener);
+    fingerprint = changes.isReconcile() ? applicationFingerprint : null;
+  }
+
+  private List<EurekaService> guard(List<EurekaService> servicesUp) {
+    boolean panicking = panicGuard.isPanicking();
+    List<EurekaService> guarded = panicGuard.guard(servicesUp, clock.millis());
+    if (panicGuard.isPanicking() != panicking) {
+      if (panicking) {
+        statistics.panicExited();
+      } else {
+        statistics.panicEntered();
+      }
+    }
+    return guarded;
+  }
+
+  private String serviceId(InstanceInfo instance) {
+    EurekaService service = new EurekaService(instance);
+    return application == null ? service.withApplication(instance.getAppName()).id() : service.id();
+  }
+
+  private void publish(Handler<Event> handler, EndpointChangeSet changeSet) {
+    if (changeSet.isEmpty()) {
+      return;
+    }
+    if (handler instanceof ChangeSetHandler) {
+      ((ChangeSetHandler) handler).handleChangeSet(changeSet);
+    } else {
+      changeSet.getEvents().forEach(event -> dispatch(handler, event));
+    }
+  }
+
+  private void dispatch(Handler<Event> handler, Event event) {
+    if (event instanceof EndpointUpdateEvent) {
+      ((EndpointUpdateHandler) handler).handleUpdate((EndpointUpdateEvent) event);
+    } else {
+      handler.handle(event);
+    }
+  }
+
+  private EndpointUpdateEvent updateEndpoint(EurekaService previous, EurekaService service) {
+    unregisterEndpoint(previous);
+    registerEndpoint(service);
+    return new EndpointUpdateEvent(previous, service);
+  }
+
+  private EurekaServiceDiff.Listener directListener(Handler<Event> handler) {
+    return new EurekaServiceDiff.Listener() {
+      @Override
+      public void onRegister(EurekaService service) {
+        handler.handle(registerEndpoint(service));
+      }
+
+      @Override
+      public void onUnregister(EurekaService service) {
+        handler.handle(unregisterEndpoint(service));
+      }
+
+      @Override
+      public void onUpdate(EurekaService previous, EurekaService service) {
+        if (handler instanceof EndpointUpdateHandler) {
+          ((EndpointUpdateHandler) handler).handleUpdate(updateEndpoint(previous, service));
+        } else {
+          handler.handle(unregisterEndpoint(previous));
+          handler.handle(registerEndpoint(service));
+        }
+      }
+    };
+  }
+
+  private EurekaServiceDiff.Listener batchListener(Handler<Event> handler, EndpointChangeSet.Builder changeSet) {
+    return new EurekaServiceDiff.Listener() {
+      @Override
+      public void onRegister(EurekaService service) {
+        changeSet.register(registerEndpoint(service));
+      }
+
+      @Override
+      public void onUnregister(EurekaService service) {
+        changeSet.unregister(unregisterEndpoint(service));
+      }
+
+      @Override
+      public void onUpdate(EurekaService previous, EurekaService service) {
+        if (handler instanceof EndpointUpdateHandler) {
+          changeSet.update(updateEndpoint(previous, service));
+        } else {
+          changeSet.update(unregisterEndpoint(previous), registerEndpoint(service));
+        }
+      }
+    };
+  }
+
   @Override
-  public void stop() throws Exception {
-    eurekaClient.shutdown();
+  public synchronized void stop() throws Exception {
+    if (flushTask != null) {
+      flushTask.cancel(false);
+    }
+    if (rampTask != null) {
+      rampTask.cancel(false);
+    }
+    if (healthCheckTask != null) {
+      healthCheckTask.cancel(false);
+    }
+    if (hostResolverTask != null) {
+      hostResolverTask.cancel(false);
+    }
+    if (panicTask != null) {
+      panicTask.cancel(false);
+    }
+    if (panicGuard != null && panicGuard.isPanicking()) {
+      statistics.panicExited();
+    }
+    if (healthProbe != null) {
+      healthProbe.close();
+    }
+    if (listener != null) {
+      if (selector.hasVipAddresses()) {
+        eurekaRegistry.unsubscribeAll(listener);
+        selector.getApplications().forEach(name -> eurekaRegistry.unsubscribe(name, watcher));
+      } else {
+        selector.getApplications().forEach(name -> eurekaRegistry.unsubscribe(name, listener));
+      }
+    }
+    if (!released) {
+      released = true;
+      eurekaRegistry.release();
+    }
   }
 
   @Override
   public void afterPropertiesSet() throws Exception {
-    MyDataCenterInstanceConfig instanceConfig = new MyDataCenterInstanceConfig();
-    InstanceInfo instanceInfo = new EurekaConfigBasedInstanceInfoProvider(instanceConfig).get();
-    EurekaTransportConfig eurekaTransportConfig = new EurekaTransportConfigBean(env);
-    EurekaClientConfig eurekaClientConfig = new EurekaClientConfigBean(env, eurekaTransportConfig);
-    eurekaClient =  new DiscoveryClient(new ApplicationInfoManager(instanceConfig, instanceInfo), eurekaClientConfig);
-    eurekaServiceResolver = new EurekaServiceResolver(eurekaClient);
+    eurekaRegistry = EurekaRegistry.acquire(env, vertx);
+    eurekaServiceResolver = eurekaRegistry.getResolver();
+    statistics = eurekaRegistry.getStatistics();
   }
 }
@@ -17,10 +17,58 @@ package io.gravitee.discovery.eureka.configuration;
 
 import io.gravitee.discovery.api.ServiceDiscoveryConfiguration;
 
+import java.util.List;
+
 public class EurekaServiceDiscoveryConfiguration implements ServiceDiscoveryConfiguration {
 
   private String application;
 
+  private List<String> applications;
+
+  private String vipAddress;
+
+  private String secureVipAddress;
+
+  private String instanceFilter;
+
+  private boolean batchEvents;
+
+  private long flapDwellTime;
+
+  private long flapMaxDelay = 60000;
+
+  private boolean zoneAffinity;
+
+  private int zoneOverflowThreshold = 50;
+
+  private String weightMetadataKey;
+
+  private int defaultWeight = 1;
+
+  private long slowStartWindow;
+
+  private SlowStartCurve slowStartCurve = SlowStartCurve.LINEAR;
+
+  private boolean healthCheck;
+
+  private long healthCheckInterval = 10000;
+
+  private long healthCheckTimeout = 2000;
+
+  private int healthCheckUnhealthyThreshold = 3;
+
+  private int healthCheckConcurrency = 8;
+
+  private boolean healthCheckTrustAll = true;
+
+  private HostResolution hostResolution;
+
+  private long hostResolutionTtl = 60000;
+
+  private int panicThreshold;
+
+  private long panicDuration = 300000;
+
   public String getApplication() {
     return application;
   }
@@ -28,4 +76,191 @@ public class EurekaServiceDiscoveryConfiguration implements ServiceDiscoveryConf
   public void setApplication(String application) {
     this.application = application;
   }
+
+  public List<String> getApplications() {
+    return applications;
+  }
+
+  public void setApplications(List<String> applications) {
+    this.applications = applications;
+  }
+
+  public String getVipAddress() {
+    return vipAddress;
+  }
+
+  public void setVipAddress(String vipAddress) {
+    this.vipAddress = vipAddress;
+  }
+
+  public String getSecureVipAddress() {
+    return secureVipAddress;
+  }
+
+  public void setSecureVipAddress(String secureVipAddress) {
+    this.secureVipAddress = secureVipAddress;
+  }
+
+  public String getInstanceFilter() {
+    return instanceFilter;
+  }
+
+  public void setInstanceFilter(String instanceFilter) {
+    this.instanceFilter = instanceFilter;
+  }
+
+  public boolean isBatchEvents() {
+    return batchEvents;
+  }
+
+  public void setBatchEvents(boolean batchEvents) {
+    this.batchEvents = batchEvents;
+  }
+
+  public long getFlapDwellTime() {
+    return flapDwellTime;
+  }
+
+  public void setFlapDwellTime(long flapDwellTime) {
+    this.flapDwellTime = flapDwellTime;
+  }
+
+  public long getFlapMaxDelay() {
+    return flapMaxDelay;
+  }
+
+  public void setFlapMaxDelay(long flapMaxDelay) {
+    this.flapMaxDelay = flapMaxDelay;
+  }
+
+  public boolean isZoneAffinity() {
+    return zoneAffinity;
+  }
+
+  public void setZoneAffinity(boolean zoneAffinity) {
+    this.zoneAffinity = zoneAffinity;
+  }
+
+  public int getZoneOverflowThreshold() {
+    return zoneOverflowThreshold;
+  }
+
+  public void setZoneOverflowThreshold(int zoneOverflowThreshold) {
+    this.zoneOverflowThreshold = zoneOverflowThreshold;
+  }
+
+  public String getWeightMetadataKey() {
+    return weightMetadataKey;
+  }
+
+  public void setWeightMetadataKey(String weightMetadataKey) {
+    this.weightMetadataKey = weightMetadataKey;
+  }
+
+  public int getDefaultWeight() {
+    return defaultWeight;
+  }
+
+  public void setDefaultWeight(int defaultWeight) {
+    this.defaultWeight = defaultWeight;
+  }
+
+  public long getSlowStartWindow() {
+    return slowStartWindow;
+  }
+
+  public void setSlowStartWindow(long slowStartWindow) {
+    this.slowStartWindow = slowStartWindow;
+  }
+
+  public SlowStartCurve getSlowStartCurve() {
+    return slowStartCurve;
+  }
+
+  public void setSlowStartCurve(SlowStartCurve slowStartCurve) {
+    this.slowStartCurve = slowStartCurve;
+  }
+
+  public boolean isHealthCheck() {
+    return healthCheck;
+  }
+
+  public void setHealthCheck(boolean healthCheck) {
+    this.healthCheck = healthCheck;
+  }
+
+  public long getHealthCheckInterval() {
+    return healthCheckInterval;
+  }
+
+  public void setHealthCheckInterval(long healthCheckInterval) {
+    this.healthCheckInterval = healthCheckInterval;
+  }
+
+  public long getHealthCheckTimeout() {
+    return healthCheckTimeout;
+  }
+
+  public void setHealthCheckTimeout(long healthCheckTimeout) {
+    this.healthCheckTimeout = healthCheckTimeout;
+  }
+
+  public int getHealthCheckUnhealthyThreshold() {
+    return healthCheckUnhealthyThreshold;
+  }
+
+  public void setHealthCheckUnhealthyThreshold(int healthCheckUnhealthyThreshold) {
+    this.healthCheckUnhealthyThreshold = healthCheckUnhealthyThreshold;
+  }
+
+  public int getHealthCheckConcurrency() {
+    return healthCheckConcurrency;
+  }
+
+  public void setHealthCheckConcurrency(int healthCheckConcurrency) {
+    this.healthCheckConcurrency = healthCheckConcurrency;
+  }
+
+  public boolean isHealthCheckTrustAll() {
+    return healthCheckTrustAll;
+  }
+
+  public void setHealthCheckTrustAll(boolean healthCheckTrustAll) {
+    this.healthCheckTrustAll = healthCheckTrustAll;
+  }
+
+  /**
+   * Wins over <code>service-discovery.eureka.transport.applicationsResolverUseIp</code>, <code>null</code> if not set.
+   */
+  public HostResolution getHostResolution() {
+    return hostResolution;
+  }
+
+  public void setHostResolution(HostResolution hostResolution) {
+    this.hostResolution = hostResolution;
+  }
+
+  public long getHostResolutionTtl() {
+    return hostResolutionTtl;
+  }
+
+  public void setHostResolutionTtl(long hostResolutionTtl) {
+    this.hostResolutionTtl = hostResolutionTtl;
+  }
+
+  public int getPanicThreshold() {
+    return panicThreshold;
+  }
+
+  public void setPanicThreshold(int panicThreshold) {
+    this.panicThreshold = panicThreshold;
+  }
+
+  public long getPanicDuration() {
+    return panicDuration;
+  }
+
+  public void setPanicDuration(long panicDuration) {
+    this.panicDuration = panicDuration;
+  }
 }
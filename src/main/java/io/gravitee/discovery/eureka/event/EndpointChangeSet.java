@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.event;
+
+import io.gravitee.discovery.api.event.Event;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Endpoint events of a single refresh, ordered so that the endpoint set never shrinks in between: registrations,
+ * updates, then unregistrations.
+ */
+public final class EndpointChangeSet {
+
+  private final List<Event> events;
+
+  private EndpointChangeSet(List<Event> events) {
+    this.events = Collections.unmodifiableList(events);
+  }
+
+  public List<Event> getEvents() {
+    return events;
+  }
+
+  public boolean isEmpty() {
+    return events.isEmpty();
+  }
+
+  public int size() {
+    return events.size();
+  }
+
+  @Override
+  public String toString() {
+    return "EndpointChangeSet{events=" + events.size() + '}';
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public static class Builder {
+
+    private final List<Event> registered = new ArrayList<>();
+    private final List<Event> updated = new ArrayList<>();
+    private final List<Event> unregistered = new ArrayList<>();
+
+    private Builder() {
+    }
+
+    public Builder register(Event register) {
+      registered.add(register);
+      return this;
+    }
+
+    /**
+     * Both events share the same endpoint id and stay adjacent.
+     */
+    public Builder update(Event unregister, Event register) {
+      updated.add(unregister);
+      updated.add(register);
+      return this;
+    }
+
+    public Builder update(EndpointUpdateEvent update) {
+      updated.add(update);
+      return this;
+    }
+
+    public Builder unregister(Event unregister) {
+      unregistered.add(unregister);
+      return this;
+    }
+
+    public EndpointChangeSet build() {
+      List<Event> events = new ArrayList<>(registered.size() + updated.size() + unregistered.size());
+      events.addAll(registered);
+      events.addAll(updated);
+      events.addAll(unregistered);
+      return new EndpointChangeSet(events);
+    }
+  }
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.event;
+
+import io.gravitee.discovery.api.event.Event;
+import io.gravitee.discovery.api.event.EventType;
+import io.gravitee.discovery.api.service.Service;
+
+/**
+ * A known endpoint changed its target or weight. The discovery API has no update event type, so it is typed as
+ * {@link EventType#REGISTER} of the new target.
+ */
+public final class EndpointUpdateEvent implements Event {
+
+  private final Service previous;
+  private final Service service;
+
+  public EndpointUpdateEvent(Service previous, Service service) {
+    this.previous = previous;
+    this.service = service;
+  }
+
+  @Override
+  public EventType type() {
+    return EventType.REGISTER;
+  }
+
+  @Override
+  public Service service() {
+    return service;
+  }
+
+  public Service previous() {
+    return previous;
+  }
+
+  @Override
+  public String toString() {
+    return "EndpointUpdateEvent{previous=" + previous + ", service=" + service + '}';
+  }
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.registry;
+
+import com.netflix.appinfo.InstanceInfo;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Instances of an application changed by a Eureka delta, or {@link #RECONCILE} when the changes are unknown.
+ */
+public final class ApplicationChangeSet {
+
+  public static final ApplicationChangeSet RECONCILE = new ApplicationChangeSet(null);
+
+  private final List<InstanceInfo> instances;
+
+  private ApplicationChangeSet(List<InstanceInfo> instances) {
+    this.instances = instances;
+  }
+
+  public static ApplicationChangeSet of(List<InstanceInfo> instances) {
+    return new ApplicationChangeSet(Collections.unmodifiableList(instances));
+  }
+
+  public boolean isReconcile() {
+    return instances == null;
+  }
+
+  /**
+   * In the order they have been received, an instance may appear more than once.
+   */
+  public List<InstanceInfo> getInstances() {
+    return instances == null ? Collections.emptyList() : instances;
+  }
+
+  @Override
+  public String toString() {
+    return isReconcile() ? "ApplicationChangeSet{reconcile}" : "ApplicationChangeSet{instances=" + instances.size() + '}';
+  }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.registry;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.shared.Application;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Fingerprint of the instances of an application: the Eureka apps hash code plus a content hash of the instances,
+ * whatever their order.
+ */
+public final class ApplicationFingerprint {
+
+  public static final ApplicationFingerprint EMPTY = new ApplicationFingerprint("", 0);
+
+  private final String statusCounts;
+  private final long contentHash;
+
+  private ApplicationFingerprint(String statusCounts, long contentHash) {
+    this.statusCounts = statusCounts;
+    this.contentHash = contentHash;
+  }
+
+  public static ApplicationFingerprint of(Application application) {
+    if (application == null) {
+      return EMPTY;
+    }
+    List<InstanceInfo> instances = application.getInstancesAsIsFromEureka();
+    if (instances == null || instances.isEmpty()) {
+      return EMPTY;
+    }
+
+    Map<InstanceInfo.InstanceStatus, Integer> counts = new EnumMap<>(InstanceInfo.InstanceStatus.class);
+    long contentHash = 0;
+    for (InstanceInfo instance : instances) {
+      counts.merge(instance.getStatus(), 1, Integer::sum);
+      contentHash += mix(hash(instance));
+    }
+
+    StringBuilder statusCounts = new StringBuilder();
+    counts.forEach((status, count) -> statusCounts.append(status).append('_').append(count).append('_'));
+    return new ApplicationFingerprint(statusCounts.toString(), contentHash);
+  }
+
+  private static long hash(InstanceInfo instance) {
+    long hash = Objects.hashCode(instance.getId());
+    hash = 31 * hash + Objects.hashCode(instance.getHostName());
+    hash = 31 * hash + Objects.hashCode(instance.getIPAddr());
+    hash = 31 * hash + instance.getPort();
+    hash = 31 * hash + instance.getSecurePort();
+    hash = 31 * hash + (instance.isPortEnabled(InstanceInfo.PortType.SECURE) ? 1 : 0);
+    hash = 31 * hash + Objects.hashCode(instance.getStatus());
+    hash = 31 * hash + Objects.hashCode(instance.getMetadata());
+    hash = 31 * hash + Objects.hashCode(instance.getLastDirtyTimestamp());
+    return hash;
+  }
+
+  private static long mix(long hash) {
+    // MurmurHash3 finalizer, spreads bits before summing instance hashes
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o)
+      return true;
+    if (o == null || getClass() != o.getClass())
+      return false;
+    ApplicationFingerprint that = (ApplicationFingerprint) o;
+    return contentHash == that.contentHash && statusCounts.equals(that.statusCounts);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(statusCounts, contentHash);
+  }
+
+  @Override
+  public String toString() {
+    return statusCounts + Long.toHexString(contentHash);
+  }
+}
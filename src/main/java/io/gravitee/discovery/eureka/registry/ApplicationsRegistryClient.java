@@ -0,0 +1,240 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.registry;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.CacheRefreshedEvent;
+import com.netflix.discovery.EurekaEvent;
+import com.netflix.discovery.EurekaEventListener;
+import com.netflix.discovery.shared.Application;
+import com.netflix.discovery.shared.resolver.DefaultEndpoint;
+import com.netflix.discovery.shared.transport.EurekaHttpClient;
+import com.netflix.discovery.shared.transport.EurekaHttpResponse;
+import com.netflix.discovery.shared.transport.TransportClientFactory;
+import com.netflix.discovery.shared.transport.jersey.Jersey1TransportClientFactories;
+import com.netflix.discovery.shared.transport.jersey.TransportClientFactories;
+import io.gravitee.discovery.eureka.spring.EurekaClientConfigBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * {@link RegistryClient} fetching only the applications watched by the gateway instead of the whole registry.
+ */
+public class ApplicationsRegistryClient implements RegistryClient {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ApplicationsRegistryClient.class);
+
+  private final TransportClientFactory transportClientFactory;
+  private final List<EurekaHttpClient> httpClients;
+  private final ScheduledExecutorService scheduler;
+  private final ExecutorService fetchExecutor;
+  private final RefreshInterval refreshInterval;
+  private final Map<String, Application> applications = new ConcurrentHashMap<>();
+  private final List<EurekaEventListener> listeners = new CopyOnWriteArrayList<>();
+  private volatile Set<String> watched = Collections.emptySet();
+  private volatile boolean fetched;
+
+  ApplicationsRegistryClient(TransportClientFactory transportClientFactory, List<EurekaHttpClient> httpClients,
+                             RefreshInterval refreshInterval, int fetchThreadPoolSize) {
+    this.transportClientFactory = transportClientFactory;
+    this.httpClients = httpClients;
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory("eureka-applications-refresh"));
+    this.fetchExecutor = Executors.newFixedThreadPool(Math.max(1, fetchThreadPoolSize), threadFactory("eureka-applications-fetch"));
+    this.refreshInterval = refreshInterval;
+    scheduleRefresh(refreshInterval.current());
+  }
+
+  @SuppressWarnings("unchecked")
+  public static ApplicationsRegistryClient create(EurekaClientConfigBean clientConfig, InstanceInfo instanceInfo) {
+    // Same transport as the one built by the DiscoveryClient
+    TransportClientFactories transportClientFactories = new Jersey1TransportClientFactories();
+    TransportClientFactory transportClientFactory = transportClientFactories
+        .newTransportClientFactory(clientConfig, Collections.emptyList(), instanceInfo);
+
+    String[] zones = clientConfig.getAvailabilityZones(clientConfig.getRegion());
+    List<String> serviceUrls = clientConfig.getEurekaServerServiceUrls(zones.length > 0 ? zones[0] : "default");
+    List<EurekaHttpClient> httpClients = serviceUrls.stream()
+        .map(serviceUrl -> transportClientFactory.newClient(new DefaultEndpoint(serviceUrl.trim())))
+        .collect(Collectors.toList());
+
+    return new ApplicationsRegistryClient(transportClientFactory, httpClients,
+        RefreshInterval.of(clientConfig), clientConfig.getCacheRefreshExecutorThreadPoolSize());
+  }
+
+  @Override
+  public Application getApplication(String applicationName) {
+    return applications.get(applicationName.toUpperCase());
+  }
+
+  @Override
+  public Collection<Application> getApplications() {
+    return applications.values();
+  }
+
+  @Override
+  public void registerEventListener(EurekaEventListener listener) {
+    listeners.add(listener);
+  }
+
+  @Override
+  public synchronized void watch(Set<String> applicationNames) {
+    Set<String> names = applicationNames.stream().map(String::toUpperCase).collect(Collectors.toSet());
+    Set<String> added = new HashSet<>(names);
+    added.removeAll(watched);
+
+    watched = Collections.unmodifiableSet(names);
+    applications.keySet().retainAll(names);
+
+    // Fetched right away rather than on the next refresh, without holding the caller
+    if (!added.isEmpty()) {
+      fetchAsync(added).whenComplete((changed, ex) -> {
+        if (ex != null) {
+          LOGGER.error("Unexpected error while fetching newly watched Eureka applications", ex);
+        } else {
+          notifyRefreshed();
+        }
+      });
+    }
+  }
+
+  @Override
+  public RegistryChanges drainChanges() {
+    // Watched applications are fetched as a whole, their listeners have to reconcile
+    return RegistryChanges.reconcile();
+  }
+
+  @Override
+  public boolean isRegistryFetched() {
+    return fetched;
+  }
+
+  @Override
+  public void shutdown() {
+    scheduler.shutdownNow();
+    fetchExecutor.shutdownNow();
+    httpClients.forEach(EurekaHttpClient::shutdown);
+    if (transportClientFactory != null) {
+      transportClientFactory.shutdown();
+    }
+  }
+
+  /**
+   * @return whether a watched application has changed
+   */
+  boolean refresh() {
+    try {
+      boolean changed = fetch(watched);
+      fireEvent(new CacheRefreshedEvent());
+      return changed;
+    } catch (Exception ex) {
+      LOGGER.error("Unexpected error while refreshing watched Eureka applications", ex);
+      return false;
+    }
+  }
+
+  private void scheduleRefresh(long delay) {
+    try {
+      scheduler.schedule(() -> scheduleRefresh(refreshInterval.next(refresh())), delay, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException ex) {
+      // Shut down
+    }
+  }
+
+  private boolean fetch(Collection<String> applicationNames) {
+    return fetchAsync(applicationNames).join();
+  }
+
+  private CompletableFuture<Boolean> fetchAsync(Collection<String> applicationNames) {
+    try {
+      List<CompletableFuture<Boolean>> fetches = applicationNames.stream()
+          .map(applicationName -> CompletableFuture.supplyAsync(() -> fetch(applicationName), fetchExecutor))
+          .collect(Collectors.toList());
+      return CompletableFuture.allOf(fetches.toArray(new CompletableFuture[0]))
+          .thenApply(done -> fetches.stream().map(CompletableFuture::join).reduce(false, Boolean::logicalOr));
+    } catch (RejectedExecutionException ex) {
+      // Shut down
+      return CompletableFuture.completedFuture(false);
+    }
+  }
+
+  private void notifyRefreshed() {
+    try {
+      // Listeners are notified from the refresh thread, never concurrently with a scheduled refresh
+      scheduler.execute(() -> fireEvent(new CacheRefreshedEvent()));
+    } catch (RejectedExecutionException ex) {
+      // Shut down
+    }
+  }
+
+  private boolean fetch(String applicationName) {
+    for (EurekaHttpClient httpClient : httpClients) {
+      try {
+        EurekaHttpResponse<Application> response = httpClient.getApplication(applicationName);
+        if (response.getStatusCode() == 200 && response.getEntity() != null) {
+          fetched = true;
+          if (watched.contains(applicationName)) {
+            Application previous = applications.put(applicationName, response.getEntity());
+            return previous == null
+                || !ApplicationFingerprint.of(previous).equals(ApplicationFingerprint.of(response.getEntity()));
+          }
+          return false;
+        }
+        if (response.getStatusCode() == 404) {
+          fetched = true;
+          return applications.remove(applicationName) != null;
+        }
+        LOGGER.debug("Unexpected status {} while fetching application {}", response.getStatusCode(), applicationName);
+      } catch (Exception ex) {
+        LOGGER.debug("Unable to fetch application {}, trying next Eureka server", applicationName, ex);
+      }
+    }
+    LOGGER.warn("Unable to fetch application {} from any Eureka server, keeping last known instances", applicationName);
+    return false;
+  }
+
+  private void fireEvent(EurekaEvent event) {
+    for (EurekaEventListener listener : listeners) {
+      listener.onEvent(event);
+    }
+  }
+
+  private static ThreadFactory threadFactory(String prefix) {
+    AtomicInteger counter = new AtomicInteger();
+    return runnable -> {
+      Thread thread = new Thread(runnable, prefix + '-' + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+}
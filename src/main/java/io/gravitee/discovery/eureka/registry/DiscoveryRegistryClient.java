@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.registry;
+
+import com.netflix.appinfo.ApplicationInfoManager;
+import com.netflix.discovery.DiscoveryClient;
+import com.netflix.discovery.EurekaClientConfig;
+import com.netflix.discovery.EurekaEventListener;
+import com.netflix.discovery.shared.Application;
+import com.netflix.discovery.shared.transport.jersey.Jersey1DiscoveryClientOptionalArgs;
+import com.netflix.discovery.shared.transport.jersey.Jersey1TransportClientFactories;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * {@link RegistryClient} backed by the Eureka {@link DiscoveryClient}, fetching the whole registry.
+ */
+public class DiscoveryRegistryClient implements RegistryClient {
+
+  private final DiscoveryClient discoveryClient;
+  private final RegistryChangeRecorder changeRecorder;
+
+  DiscoveryRegistryClient(DiscoveryClient discoveryClient, RegistryChangeRecorder changeRecorder) {
+    this.discoveryClient = discoveryClient;
+    this.changeRecorder = changeRecorder;
+  }
+
+  public static DiscoveryRegistryClient create(ApplicationInfoManager applicationInfoManager, EurekaClientConfig clientConfig) {
+    RegistryChangeRecorder changeRecorder = new RegistryChangeRecorder();
+    Jersey1DiscoveryClientOptionalArgs args = new Jersey1DiscoveryClientOptionalArgs();
+    args.setTransportClientFactories(changeRecorder.transportClientFactories(new Jersey1TransportClientFactories()));
+    return new DiscoveryRegistryClient(new DiscoveryClient(applicationInfoManager, clientConfig, args), changeRecorder);
+  }
+
+  @Override
+  public Application getApplication(String applicationName) {
+    return discoveryClient.getApplication(applicationName);
+  }
+
+  @Override
+  public Collection<Application> getApplications() {
+    return discoveryClient.getApplications().getRegisteredApplications();
+  }
+
+  @Override
+  public void registerEventListener(EurekaEventListener listener) {
+    discoveryClient.registerEventListener(listener);
+  }
+
+  @Override
+  public void watch(Set<String> applicationNames) {
+    // The whole registry is fetched
+  }
+
+  @Override
+  public RegistryChanges drainChanges() {
+    return changeRecorder.drain();
+  }
+
+  @Override
+  public boolean isRegistryFetched() {
+    // Negative until the first successful fetch
+    return discoveryClient.getLastSuccessfulRegistryFetchTimePeriod() >= 0;
+  }
+
+  @Override
+  public void shutdown() {
+    discoveryClient.shutdown();
+  }
+}
@@ -0,0 +1,367 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.registry;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.netflix.appinfo.AmazonInfo;
+import com.netflix.appinfo.DataCenterInfo;
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.appinfo.LeaseInfo;
+import com.netflix.appinfo.MyDataCenterInfo;
+import com.netflix.discovery.shared.Application;
+import com.netflix.discovery.shared.Applications;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Decodes the Eureka REST API payloads with the Jackson streaming parser, skipping the fields unused by the gateway.
+ *
+ * Instances of the applications which are not accepted are reduced to what the reconcile hash code needs.
+ */
+public final class EurekaJsonDecoder {
+
+  /**
+   * <code>decoderName</code> decoding only the watched applications with the Vert.x transport and the full fetch mode.
+   */
+  public static final String NAME = "StreamingJson";
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  public static final EurekaJsonDecoder ALL_APPLICATIONS = new EurekaJsonDecoder(application -> true);
+
+  private final Predicate<String> applicationFilter;
+
+  public EurekaJsonDecoder(Predicate<String> applicationFilter) {
+    this.applicationFilter = applicationFilter;
+  }
+
+  /**
+   * Decodes the response of <code>GET /apps</code> or <code>GET /apps/delta</code>.
+   */
+  public Applications decodeApplications(InputStream input) throws IOException {
+    try (JsonParser parser = JSON_FACTORY.createParser(input)) {
+      Applications applications = new Applications();
+      expect(parser.nextToken(), JsonToken.START_OBJECT);
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        parser.nextToken();
+        if ("applications".equals(field)) {
+          applications = readApplications(parser);
+        } else {
+          parser.skipChildren();
+        }
+      }
+      return applications;
+    }
+  }
+
+  /**
+   * Decodes the response of <code>GET /apps/{name}</code>.
+   */
+  public Application decodeApplication(InputStream input) throws IOException {
+    try (JsonParser parser = JSON_FACTORY.createParser(input)) {
+      Application application = null;
+      expect(parser.nextToken(), JsonToken.START_OBJECT);
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        parser.nextToken();
+        if ("application".equals(field)) {
+          application = readApplication(parser);
+        } else {
+          parser.skipChildren();
+        }
+      }
+      return application;
+    }
+  }
+
+  private Applications readApplications(JsonParser parser) throws IOException {
+    expect(parser.currentToken(), JsonToken.START_OBJECT);
+    String appsHashCode = null;
+    Long version = null;
+    List<Application> applications = new ArrayList<>();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      JsonToken token = parser.nextToken();
+      switch (field) {
+        case "versions__delta":
+          version = parser.getValueAsLong();
+          break;
+        case "apps__hashcode":
+          appsHashCode = parser.getValueAsString();
+          break;
+        case "application":
+          // A single application may be given as an object instead of an array
+          if (token == JsonToken.START_ARRAY) {
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+              applications.add(readApplication(parser));
+            }
+          } else if (token == JsonToken.START_OBJECT) {
+            applications.add(readApplication(parser));
+          }
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+    return new Applications(appsHashCode, version, applications);
+  }
+
+  private Application readApplication(JsonParser parser) throws IOException {
+    expect(parser.currentToken(), JsonToken.START_OBJECT);
+    Application application = new Application();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      JsonToken token = parser.nextToken();
+      if ("name".equals(field)) {
+        application.setName(parser.getValueAsString());
+      } else if ("instance".equals(field)) {
+        // The name is given before the instances by the Eureka server
+        boolean accepted = application.getName() == null || applicationFilter.test(application.getName());
+        if (token == JsonToken.START_ARRAY) {
+          while (parser.nextToken() != JsonToken.END_ARRAY) {
+            application.addInstance(accepted ? readInstance(parser) : readInstanceStatus(parser));
+          }
+        } else if (token == JsonToken.START_OBJECT) {
+          application.addInstance(accepted ? readInstance(parser) : readInstanceStatus(parser));
+        }
+      } else {
+        parser.skipChildren();
+      }
+    }
+    return application;
+  }
+
+  private static InstanceInfo readInstanceStatus(JsonParser parser) throws IOException {
+    expect(parser.currentToken(), JsonToken.START_OBJECT);
+    InstanceInfo.Builder builder = InstanceInfo.Builder.newBuilder();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      parser.nextToken();
+      switch (field) {
+        case "instanceId":
+          builder.setInstanceId(parser.getValueAsString());
+          break;
+        case "app":
+          builder.setAppNameForDeser(parser.getValueAsString());
+          break;
+        case "status":
+          builder.setStatus(InstanceInfo.InstanceStatus.toEnum(parser.getValueAsString()));
+          break;
+        case "actionType":
+          builder.setActionType(InstanceInfo.ActionType.valueOf(parser.getValueAsString()));
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+    return builder.build();
+  }
+
+  private static InstanceInfo readInstance(JsonParser parser) throws IOException {
+    expect(parser.currentToken(), JsonToken.START_OBJECT);
+    InstanceInfo.Builder builder = InstanceInfo.Builder.newBuilder();
+    String healthCheckUrl = null;
+    String secureHealthCheckUrl = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      parser.nextToken();
+      switch (field) {
+        case "instanceId":
+          builder.setInstanceId(parser.getValueAsString());
+          break;
+        case "app":
+          builder.setAppNameForDeser(parser.getValueAsString());
+          break;
+        case "hostName":
+          builder.setHostName(parser.getValueAsString());
+          break;
+        case "ipAddr":
+          builder.setIPAddr(parser.getValueAsString());
+          break;
+        case "status":
+          builder.setStatus(InstanceInfo.InstanceStatus.toEnum(parser.getValueAsString()));
+          break;
+        case "overriddenStatus":
+        case "overriddenstatus":
+          builder.setOverriddenStatus(InstanceInfo.InstanceStatus.toEnum(parser.getValueAsString()));
+          break;
+        case "port":
+          readPort(parser, builder, InstanceInfo.PortType.UNSECURE);
+          break;
+        case "securePort":
+          readPort(parser, builder, InstanceInfo.PortType.SECURE);
+          break;
+        case "vipAddress":
+          builder.setVIPAddressDeser(parser.getValueAsString());
+          break;
+        case "secureVipAddress":
+          builder.setSecureVIPAddressDeser(parser.getValueAsString());
+          break;
+        case "healthCheckUrl":
+          healthCheckUrl = parser.getValueAsString();
+          break;
+        case "secureHealthCheckUrl":
+          secureHealthCheckUrl = parser.getValueAsString();
+          break;
+        case "dataCenterInfo":
+          builder.setDataCenterInfo(readDataCenterInfo(parser));
+          break;
+        case "leaseInfo":
+          builder.setLeaseInfo(readLeaseInfo(parser));
+          break;
+        case "metadata":
+          Map<String, String> metadata = readMetadata(parser);
+          if (!metadata.isEmpty()) {
+            builder.setMetadata(metadata);
+          }
+          break;
+        case "lastUpdatedTimestamp":
+          builder.setLastUpdatedTimestamp(parser.getValueAsLong());
+          break;
+        case "lastDirtyTimestamp":
+          builder.setLastDirtyTimestamp(parser.getValueAsLong());
+          break;
+        case "actionType":
+          builder.setActionType(InstanceInfo.ActionType.valueOf(parser.getValueAsString()));
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+    return builder.setHealthCheckUrlsForDeser(healthCheckUrl, secureHealthCheckUrl).build();
+  }
+
+  private static void readPort(JsonParser parser, InstanceInfo.Builder builder, InstanceInfo.PortType type)
+      throws IOException {
+    if (parser.currentToken() != JsonToken.START_OBJECT) {
+      // Port given as a plain value
+      setPort(builder, type, parser.getValueAsInt());
+      return;
+    }
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      parser.nextToken();
+      if ("$".equals(field)) {
+        setPort(builder, type, parser.getValueAsInt());
+      } else if ("@enabled".equals(field)) {
+        builder.enablePort(type, parser.getValueAsBoolean());
+      } else {
+        parser.skipChildren();
+      }
+    }
+  }
+
+  private static void setPort(InstanceInfo.Builder builder, InstanceInfo.PortType type, int port) {
+    if (type == InstanceInfo.PortType.SECURE) {
+      builder.setSecurePort(port);
+    } else {
+      builder.setPort(port);
+    }
+  }
+
+  private static DataCenterInfo readDataCenterInfo(JsonParser parser) throws IOException {
+    String name = null;
+    String availabilityZone = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      parser.nextToken();
+      if ("name".equals(field)) {
+        name = parser.getValueAsString();
+      } else if ("metadata".equals(field)) {
+        availabilityZone = readMetadata(parser).get(AmazonInfo.MetaDataKey.availabilityZone.getName());
+      } else {
+        parser.skipChildren();
+      }
+    }
+
+    if (DataCenterInfo.Name.Amazon.name().equals(name)) {
+      AmazonInfo.Builder amazonInfo = AmazonInfo.Builder.newBuilder();
+      if (availabilityZone != null) {
+        amazonInfo.addMetadata(AmazonInfo.MetaDataKey.availabilityZone, availabilityZone);
+      }
+      return amazonInfo.build();
+    }
+    return new MyDataCenterInfo(DataCenterInfo.Name.Netflix.name().equals(name)
+        ? DataCenterInfo.Name.Netflix : DataCenterInfo.Name.MyOwn);
+  }
+
+  private static LeaseInfo readLeaseInfo(JsonParser parser) throws IOException {
+    LeaseInfo.Builder leaseInfo = LeaseInfo.Builder.newBuilder();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      parser.nextToken();
+      switch (field) {
+        case "renewalIntervalInSecs":
+          leaseInfo.setRenewalIntervalInSecs(parser.getValueAsInt());
+          break;
+        case "durationInSecs":
+          leaseInfo.setDurationInSecs(parser.getValueAsInt());
+          break;
+        case "registrationTimestamp":
+          leaseInfo.setRegistrationTimestamp(parser.getValueAsLong());
+          break;
+        case "lastRenewalTimestamp":
+          leaseInfo.setRenewalTimestamp(parser.getValueAsLong());
+          break;
+        case "evictionTimestamp":
+          leaseInfo.setEvictionTimestamp(parser.getValueAsLong());
+          break;
+        case "serviceUpTimestamp":
+          leaseInfo.setServiceUpTimestamp(parser.getValueAsLong());
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+    return leaseInfo.build();
+  }
+
+  private static Map<String, String> readMetadata(JsonParser parser) throws IOException {
+    if (parser.currentToken() != JsonToken.START_OBJECT) {
+      parser.skipChildren();
+      return Collections.emptyMap();
+    }
+    Map<String, String> metadata = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String key = parser.getCurrentName();
+      parser.nextToken();
+      if ("@class".equals(key)) {
+        continue;
+      }
+      if (metadata == null) {
+        metadata = new HashMap<>();
+      }
+      metadata.put(key, parser.getValueAsString());
+    }
+    return metadata == null ? Collections.emptyMap() : metadata;
+  }
+
+  private static void expect(JsonToken token, JsonToken expected) throws IOException {
+    if (token != expected) {
+      throw new IOException("Unexpected token " + token + " in Eureka payload, expected " + expected);
+    }
+  }
+}
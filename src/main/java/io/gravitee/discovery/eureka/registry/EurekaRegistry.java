@@ -0,0 +1,519 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.registry;
+
+import com.netflix.appinfo.ApplicationInfoManager;
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.appinfo.MyDataCenterInstanceConfig;
+import com.netflix.appinfo.providers.EurekaConfigBasedInstanceInfoProvider;
+import com.netflix.discovery.CacheRefreshedEvent;
+import com.netflix.discovery.EurekaEvent;
+import com.netflix.discovery.shared.Application;
+import com.netflix.discovery.shared.transport.EurekaTransportConfig;
+import io.gravitee.discovery.eureka.service.EurekaServiceResolver;
+import io.gravitee.discovery.eureka.service.LeasePruning;
+import io.gravitee.discovery.eureka.spring.EurekaClientConfigBean;
+import io.gravitee.discovery.eureka.spring.EurekaTransportConfigBean;
+import io.vertx.core.Vertx;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.ConfigurableEnvironment;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Eureka registry shared by all the Eureka service discoveries, started by the first one and shut down with the last.
+ */
+public class EurekaRegistry {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(EurekaRegistry.class);
+  private static final int LOOKUP_THREADS = 2;
+
+  private static EurekaRegistry instance;
+  private static int references;
+
+  private volatile CompletableFuture<RegistryClient> started;
+  private Supplier<CompletableFuture<RegistryClient>> clientStarter;
+  private final long warmupDeadline;
+  private volatile RegistryClient registryClient;
+  private boolean stopped;
+  private final RegistrySnapshot snapshot;
+  private volatile Map<String, Application> restoredApplications;
+  private volatile long lastSnapshotWrite;
+  private final EurekaServiceResolver eurekaServiceResolver;
+  private final boolean leasePruning;
+  private final Map<String, Set<ApplicationListener>> listeners = new ConcurrentHashMap<>();
+  private final Set<ApplicationListener> registryListeners = new CopyOnWriteArraySet<>();
+  private final RegistryStatistics statistics = new RegistryStatistics();
+  private ScheduledExecutorService scheduler;
+  private ExecutorService lookupExecutor;
+  private volatile String zone;
+  private volatile boolean useIpAddress;
+  private volatile boolean allApplicationsDecoded = true;
+
+  EurekaRegistry(RegistryClient registryClient) {
+    this(CompletableFuture.completedFuture(registryClient), 0);
+  }
+
+  EurekaRegistry(CompletableFuture<RegistryClient> registryClient, long warmupTimeout) {
+    this(registryClient, warmupTimeout, null);
+  }
+
+  EurekaRegistry(CompletableFuture<RegistryClient> registryClient, long warmupTimeout, RegistrySnapshot snapshot) {
+    this(registryClient, warmupTimeout, snapshot, null);
+  }
+
+  EurekaRegistry(Supplier<CompletableFuture<RegistryClient>> clientStarter, long warmupTimeout,
+                 RegistrySnapshot snapshot, LeasePruning leasePruning) {
+    this(clientStarter.get(), warmupTimeout, snapshot, leasePruning);
+    this.clientStarter = clientStarter;
+  }
+
+  /**
+   * @param warmupTimeout maximum time in milliseconds to wait for the client to be started
+   */
+  EurekaRegistry(CompletableFuture<RegistryClient> registryClient, long warmupTimeout, RegistrySnapshot snapshot,
+                 LeasePruning leasePruning) {
+    this.snapshot = snapshot;
+    this.leasePruning = leasePruning != null;
+    if (snapshot != null) {
+      Map<String, Application> applications = snapshot.load();
+      this.restoredApplications = applications.isEmpty() ? null : applications;
+    }
+    this.eurekaServiceResolver = new EurekaServiceResolver(this::getApplication, this::getApplications, leasePruning);
+    this.warmupDeadline = System.currentTimeMillis() + warmupTimeout;
+    this.started = start(registryClient);
+  }
+
+  private CompletableFuture<RegistryClient> start(CompletableFuture<RegistryClient> registryClient) {
+    return registryClient.whenComplete((client, throwable) -> {
+      if (throwable != null) {
+        LOGGER.error("Unable to start the Eureka client", throwable);
+      } else {
+        onStarted(client);
+      }
+    });
+  }
+
+  public static EurekaRegistry acquire(ConfigurableEnvironment environment, Vertx vertx) {
+    return acquire(() -> {
+      MyDataCenterInstanceConfig instanceConfig = new MyDataCenterInstanceConfig();
+      EurekaTransportConfig eurekaTransportConfig = new EurekaTransportConfigBean(environment);
+      EurekaClientConfigBean eurekaClientConfig = new EurekaClientConfigBean(environment, eurekaTransportConfig);
+
+      Supplier<CompletableFuture<RegistryClient>> clientStarter = () -> {
+        ExecutorService executor = Executors.newSingleThreadExecutor(threadFactory("eureka-client-startup"));
+        CompletableFuture<RegistryClient> registryClient = CompletableFuture.supplyAsync(
+            () -> createRegistryClient(instanceConfig, eurekaClientConfig, vertx), executor);
+        executor.shutdown();
+        return registryClient;
+      };
+      EurekaRegistry registry = new EurekaRegistry(clientStarter, eurekaClientConfig.getWarmupTimeout(),
+          snapshot(eurekaClientConfig), leasePruning(eurekaClientConfig));
+      registry.zone = eurekaClientConfig.getZone();
+      registry.useIpAddress = eurekaTransportConfig.applicationsResolverUseIp();
+      registry.allApplicationsDecoded = allApplicationsDecoded(eurekaClientConfig);
+      return registry;
+    });
+  }
+
+  static synchronized EurekaRegistry acquire(Supplier<EurekaRegistry> factory) {
+    if (instance == null) {
+      LOGGER.info("Starting shared Eureka client");
+      instance = factory.get();
+    } else {
+      instance.retryStart();
+    }
+    references++;
+    return instance;
+  }
+
+  public void release() {
+    synchronized (EurekaRegistry.class) {
+      if (instance != this || references == 0) {
+        return;
+      }
+      if (--references == 0) {
+        LOGGER.info("Shutting down shared Eureka client");
+        instance = null;
+        shutdown();
+      }
+    }
+  }
+
+  /**
+   * Waits for the client to be started until the warm-up deadline, unless applications were restored from a snapshot.
+   */
+  public boolean awaitStarted() {
+    CompletableFuture<RegistryClient> started = this.started;
+    try {
+      if (!started.isDone()) {
+        if (restoredApplications != null) {
+          return false;
+        }
+        long remaining = warmupDeadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+          return false;
+        }
+        started.get(remaining, TimeUnit.MILLISECONDS);
+      }
+      return !started.isCompletedExceptionally();
+    } catch (TimeoutException | ExecutionException ex) {
+      return false;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  public synchronized void subscribe(String application, ApplicationListener listener) {
+    String key = key(application);
+    boolean watched = listeners.containsKey(key);
+    listeners.computeIfAbsent(key, k -> new CopyOnWriteArraySet<>()).add(listener);
+    if (!watched && registryClient != null) {
+      registryClient.watch(new HashSet<>(listeners.keySet()));
+    }
+  }
+
+  public synchronized void unsubscribe(String application, ApplicationListener listener) {
+    String key = key(application);
+    listeners.computeIfPresent(key, (k, applicationListeners) -> {
+      applicationListeners.remove(listener);
+      return applicationListeners.isEmpty() ? null : applicationListeners;
+    });
+    if (!listeners.containsKey(key) && registryClient != null) {
+      registryClient.watch(new HashSet<>(listeners.keySet()));
+    }
+  }
+
+  /**
+   * Notified once per refresh with a <code>null</code> application name. Only the fetched applications are known.
+   */
+  public void subscribeAll(ApplicationListener listener) {
+    if (!allApplicationsDecoded && registryListeners.isEmpty()) {
+      LOGGER.warn("Only watched applications are decoded, "
+          + "instances of other applications cannot be discovered by VIP address");
+    }
+    registryListeners.add(listener);
+  }
+
+  public void unsubscribeAll(ApplicationListener listener) {
+    registryListeners.remove(listener);
+  }
+
+  public EurekaServiceResolver getResolver() {
+    return eurekaServiceResolver;
+  }
+
+  public RegistryStatistics getStatistics() {
+    return statistics;
+  }
+
+  public String getZone() {
+    return zone;
+  }
+
+  public boolean isUseIpAddress() {
+    return useIpAddress;
+  }
+
+  public List<EurekaServerStatistics> getServerStatistics() {
+    RegistryClient client = registryClient;
+    return client == null ? Collections.emptyList() : client.getServerStatistics();
+  }
+
+  public synchronized ScheduledExecutorService getScheduler() {
+    checkNotStopped();
+    if (scheduler == null) {
+      scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory("eureka-discovery-scheduler"));
+    }
+    return scheduler;
+  }
+
+  public synchronized ExecutorService getLookupExecutor() {
+    checkNotStopped();
+    if (lookupExecutor == null) {
+      lookupExecutor = Executors.newFixedThreadPool(LOOKUP_THREADS, threadFactory("eureka-discovery-lookup"));
+    }
+    return lookupExecutor;
+  }
+
+  private void checkNotStopped() {
+    if (stopped) {
+      throw new RejectedExecutionException("Eureka registry is shut down");
+    }
+  }
+
+  /**
+   * <code>null</code> when stale instances are pruned, as staleness changes with time only.
+   */
+  public ApplicationFingerprint fingerprint(String application) {
+    return leasePruning ? null : ApplicationFingerprint.of(getApplication(key(application)));
+  }
+
+  public Application getApplication(String application) {
+    RegistryClient client = registryClient;
+    Map<String, Application> restored = restoredApplications;
+    if (restored != null && (client == null || !client.isRegistryFetched())) {
+      return restored.get(key(application));
+    }
+    return client == null ? null : client.getApplication(application);
+  }
+
+  public Collection<Application> getApplications() {
+    RegistryClient client = registryClient;
+    Map<String, Application> restored = restoredApplications;
+    if (restored != null && (client == null || !client.isRegistryFetched())) {
+      return restored.values();
+    }
+    return client == null ? Collections.emptyList() : client.getApplications();
+  }
+
+  static synchronized int references() {
+    return references;
+  }
+
+  synchronized void retryStart() {
+    if (!stopped && clientStarter != null && started.isCompletedExceptionally()) {
+      LOGGER.info("Retrying to start shared Eureka client");
+      started = start(clientStarter.get());
+    }
+  }
+
+  private void onStarted(RegistryClient client) {
+    synchronized (this) {
+      if (stopped) {
+        client.shutdown();
+        return;
+      }
+      registryClient = client;
+      if (client.isRegistryFetched()) {
+        restoredApplications = null;
+      }
+      client.registerEventListener(this::onEvent);
+      if (!listeners.isEmpty()) {
+        client.watch(new HashSet<>(listeners.keySet()));
+      }
+    }
+
+    LOGGER.info("Shared Eureka client started");
+    // Applications subscribed while the client was starting get their initial endpoints
+    if (!listeners.isEmpty() || !registryListeners.isEmpty()) {
+      notifyListeners(RegistryChanges.reconcile());
+    }
+  }
+
+  void shutdown() {
+    RegistryClient client;
+    ExecutorService lookups;
+    ScheduledExecutorService tasks;
+    synchronized (this) {
+      stopped = true;
+      client = registryClient;
+      lookups = lookupExecutor;
+      tasks = scheduler;
+    }
+    if (client != null) {
+      client.shutdown();
+    }
+    if (lookups != null) {
+      lookups.shutdownNow();
+    }
+    if (tasks != null) {
+      tasks.shutdownNow();
+    }
+  }
+
+  private void onEvent(EurekaEvent event) {
+    if (event instanceof CacheRefreshedEvent) {
+      RegistryClient client = registryClient;
+      RegistryChanges changes = client.drainChanges();
+      if (restoredApplications != null && client.isRegistryFetched()) {
+        // Listeners only know the restored instances, they have to reconcile against the fetched ones
+        LOGGER.info("Eureka registry fetched, replacing the applications restored from the snapshot");
+        restoredApplications = null;
+        changes = RegistryChanges.reconcile();
+      }
+      notifyListeners(changes);
+      writeSnapshot(client);
+    }
+  }
+
+  private void notifyListeners(RegistryChanges changes) {
+    if (!registryListeners.isEmpty()) {
+      notifyRegistryListeners(changes);
+    }
+    listeners.forEach((application, applicationListeners) -> {
+      ApplicationChangeSet changeSet = changes.get(application);
+      if (changeSet == null) {
+        // Not part of the delta, nothing to refresh
+        applicationListeners.forEach(listener -> statistics.refreshSkipped());
+        return;
+      }
+
+      // Computed once per application whatever the number of listeners
+      ApplicationFingerprint fingerprint = changeSet.isReconcile() ? fingerprint(application) : null;
+      for (ApplicationListener listener : applicationListeners) {
+        try {
+          listener.onApplicationRefreshed(application, fingerprint, changeSet);
+        } catch (Exception ex) {
+          LOGGER.error("Unexpected error while refreshing endpoints of application {}", application, ex);
+        }
+      }
+    });
+  }
+
+  private void notifyRegistryListeners(RegistryChanges changes) {
+    ApplicationChangeSet changeSet = ApplicationChangeSet.RECONCILE;
+    if (!changes.isReconcile()) {
+      List<InstanceInfo> instances = new ArrayList<>();
+      boolean reconcile = false;
+      for (String application : changes.getApplications()) {
+        ApplicationChangeSet applicationChanges = changes.get(application);
+        reconcile |= applicationChanges.isReconcile();
+        instances.addAll(applicationChanges.getInstances());
+      }
+      if (!reconcile && instances.isEmpty()) {
+        registryListeners.forEach(listener -> statistics.refreshSkipped());
+        return;
+      }
+      if (!reconcile) {
+        changeSet = ApplicationChangeSet.of(instances);
+      }
+    }
+
+    for (ApplicationListener listener : registryListeners) {
+      try {
+        listener.onApplicationRefreshed(null, null, changeSet);
+      } catch (Exception ex) {
+        LOGGER.error("Unexpected error while refreshing endpoints", ex);
+      }
+    }
+  }
+
+  private void writeSnapshot(RegistryClient client) {
+    long now = System.currentTimeMillis();
+    if (snapshot == null || !client.isRegistryFetched() || now - lastSnapshotWrite < snapshot.getInterval()) {
+      return;
+    }
+    lastSnapshotWrite = now;
+
+    List<Application> applications = listeners.keySet().stream()
+        .map(client::getApplication)
+        .filter(Objects::nonNull)
+        .collect(Collectors.toList());
+    try {
+      getScheduler().execute(() -> {
+        try {
+          snapshot.write(applications);
+        } catch (IOException ex) {
+          LOGGER.warn("Unable to write Eureka registry snapshot {}", snapshot.getFile(), ex);
+        }
+      });
+    } catch (RejectedExecutionException ex) {
+      // Registry being shut down
+    }
+  }
+
+  private static RegistrySnapshot snapshot(EurekaClientConfigBean eurekaClientConfig) {
+    String path = eurekaClientConfig.getSnapshotPath();
+    if (path == null || path.isEmpty()) {
+      return null;
+    }
+    return new RegistrySnapshot(Paths.get(path),
+        TimeUnit.SECONDS.toMillis(eurekaClientConfig.getSnapshotIntervalSeconds()),
+        TimeUnit.SECONDS.toMillis(eurekaClientConfig.getSnapshotMaxAgeSeconds()));
+  }
+
+  private static LeasePruning leasePruning(EurekaClientConfigBean eurekaClientConfig) {
+    int missedRenewals = eurekaClientConfig.getLeasePruningMissedRenewals();
+    if (missedRenewals <= 0) {
+      return null;
+    }
+    if (eurekaClientConfig.getRegistryFetchMode() != RegistryFetchMode.APPLICATIONS) {
+      // Renewals are not part of the deltas, lease timestamps are only up to date for applications fetched as a whole
+      LOGGER.warn("Lease pruning ignored, it requires the applications registry fetch mode");
+      return null;
+    }
+    return new LeasePruning(missedRenewals, eurekaClientConfig.getLeasePruningMaxPrunedPercent());
+  }
+
+  private static boolean allApplicationsDecoded(EurekaClientConfigBean eurekaClientConfig) {
+    if (eurekaClientConfig.getRegistryFetchMode() == RegistryFetchMode.APPLICATIONS) {
+      return false;
+    }
+    // The Vert.x client only decodes the watched applications with the streaming codec
+    return eurekaClientConfig.getRegistryTransport() != RegistryTransport.VERTX
+        || !EurekaJsonDecoder.NAME.equals(eurekaClientConfig.getDecoderName());
+  }
+
+  private static String key(String application) {
+    // Eureka application names are case insensitive and stored upper-cased
+    return application.toUpperCase();
+  }
+
+  private static RegistryClient createRegistryClient(MyDataCenterInstanceConfig instanceConfig,
+                                                     EurekaClientConfigBean eurekaClientConfig, Vertx vertx) {
+    if (EurekaJsonDecoder.NAME.equals(eurekaClientConfig.getDecoderName())
+        && (eurekaClientConfig.getRegistryTransport() != RegistryTransport.VERTX
+        || eurekaClientConfig.getRegistryFetchMode() != RegistryFetchMode.FULL)) {
+      LOGGER.warn("Decoder {} ignored, it requires the vertx transport and the full fetch mode", EurekaJsonDecoder.NAME);
+    }
+
+    if (eurekaClientConfig.getRegistryTransport() == RegistryTransport.VERTX) {
+      LOGGER.info("Eureka registry is fetched with the Vert.x HTTP client");
+      return VertxRegistryClient.create(vertx, eurekaClientConfig, eurekaClientConfig.getRegistryFetchMode());
+    }
+
+    InstanceInfo instanceInfo = new EurekaConfigBasedInstanceInfoProvider(instanceConfig).get();
+
+    if (eurekaClientConfig.getRegistryFetchMode() == RegistryFetchMode.APPLICATIONS) {
+      LOGGER.info("Eureka registry is fetched for watched applications only");
+      return ApplicationsRegistryClient.create(eurekaClientConfig, instanceInfo);
+    }
+    return DiscoveryRegistryClient.create(new ApplicationInfoManager(instanceConfig, instanceInfo), eurekaClientConfig);
+  }
+
+  private static ThreadFactory threadFactory(String name) {
+    return runnable -> {
+      Thread thread = new Thread(runnable, name);
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.registry;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Orders the Eureka servers to call, fastest healthy server first. Failing or slow servers are quarantined for a while.
+ */
+class EurekaServerSelector<S> {
+
+  private final List<Server<S>> servers = new ArrayList<>();
+  private final long quarantineDuration;
+  private final double slowRatio;
+  private final double quarantineRefreshPercentage;
+
+  EurekaServerSelector(List<S> servers, Function<S, String> serviceUrl, long quarantineDuration, double slowRatio,
+                       double quarantineRefreshPercentage) {
+    servers.forEach(server -> this.servers.add(new Server<>(server, new EurekaServerStatistics(serviceUrl.apply(server)))));
+    this.quarantineDuration = quarantineDuration;
+    this.slowRatio = slowRatio;
+    this.quarantineRefreshPercentage = quarantineRefreshPercentage;
+  }
+
+  synchronized List<S> select(long now) {
+    long quarantined = servers.stream().filter(server -> server.statistics.isQuarantined(now)).count();
+    boolean refresh = quarantined > 0 && quarantined >= servers.size() * quarantineRefreshPercentage;
+    servers.stream()
+        .map(server -> server.statistics)
+        .filter(statistics -> refresh || statistics.isReleasable(now))
+        .forEach(EurekaServerStatistics::release);
+
+    List<Server<S>> ordered = new ArrayList<>(servers);
+    ordered.sort(Comparator.<Server<S>, Boolean>comparing(server -> server.statistics.isQuarantined(now))
+        .thenComparingDouble(server -> server.statistics.score()));
+
+    List<S> selected = new ArrayList<>(ordered.size());
+    ordered.forEach(server -> selected.add(server.server));
+    return selected;
+  }
+
+  synchronized void onSuccess(S server, long latencyMillis, long now) {
+    statistics(server).onSuccess(latencyMillis);
+
+    double fastest = servers.stream()
+        .map(candidate -> candidate.statistics)
+        .filter(candidate -> candidate.getLatency() >= 0 && !candidate.isQuarantined(now))
+        .mapToDouble(EurekaServerStatistics::getLatency)
+        .min()
+        .orElse(-1);
+    if (fastest < 0) {
+      return;
+    }
+    servers.stream()
+        .map(candidate -> candidate.statistics)
+        .filter(candidate -> candidate.getLatency() >= 0 && !candidate.isQuarantined(now)
+            && candidate.getLatency() > fastest * slowRatio)
+        .forEach(candidate -> candidate.quarantine(now + quarantineDuration, true));
+  }
+
+  synchronized void onFailure(S server, long now) {
+    EurekaServerStatistics statistics = statistics(server);
+    statistics.onFailure();
+    statistics.quarantine(now + quarantineDuration, false);
+  }
+
+  void onHedge(S server) {
+    statistics(server).onHedge();
+  }
+
+  void onHedgeWon(S server) {
+    statistics(server).onHedgeWon();
+  }
+
+  List<EurekaServerStatistics> getStatistics() {
+    List<EurekaServerStatistics> statistics = new ArrayList<>(servers.size());
+    servers.forEach(server -> statistics.add(server.statistics));
+    return statistics;
+  }
+
+  private EurekaServerStatistics statistics(S server) {
+    for (Server<S> candidate : servers) {
+      if (candidate.server == server) {
+        return candidate.statistics;
+      }
+    }
+    throw new IllegalArgumentException("Unknown Eureka server " + server);
+  }
+
+  private static class Server<S> {
+
+    private final S server;
+    private final EurekaServerStatistics statistics;
+
+    Server(S server, EurekaServerStatistics statistics) {
+      this.server = server;
+      this.statistics = statistics;
+    }
+  }
+}
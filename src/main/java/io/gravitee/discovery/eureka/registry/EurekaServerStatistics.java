@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.registry;
+
+/**
+ * Latency and error rate of the calls made to a Eureka server, as exponentially weighted moving averages.
+ */
+public class EurekaServerStatistics {
+
+  static final double ALPHA = 0.3;
+
+  private final String serviceUrl;
+  private double latency = -1;
+  private double errorRate;
+  private long requests;
+  private long failures;
+  private long hedges;
+  private long hedgeWins;
+  private long quarantinedUntil;
+  private boolean slow;
+
+  EurekaServerStatistics(String serviceUrl) {
+    this.serviceUrl = serviceUrl;
+  }
+
+  synchronized void onSuccess(long latencyMillis) {
+    requests++;
+    latency = latency < 0 ? latencyMillis : ALPHA * latencyMillis + (1 - ALPHA) * latency;
+    errorRate = (1 - ALPHA) * errorRate;
+  }
+
+  synchronized void onFailure() {
+    requests++;
+    failures++;
+    errorRate = ALPHA + (1 - ALPHA) * errorRate;
+  }
+
+  synchronized void onHedge() {
+    hedges++;
+  }
+
+  synchronized void onHedgeWon() {
+    hedgeWins++;
+  }
+
+  synchronized void quarantine(long until, boolean slow) {
+    this.quarantinedUntil = until;
+    this.slow = slow;
+  }
+
+  /**
+   * Lifts the quarantine, forgetting the latency of a server quarantined for being slow.
+   */
+  synchronized void release() {
+    if (slow) {
+      latency = -1;
+    }
+    quarantinedUntil = 0;
+    slow = false;
+  }
+
+  synchronized boolean isReleasable(long now) {
+    return quarantinedUntil != 0 && quarantinedUntil <= now;
+  }
+
+  synchronized boolean isQuarantined(long now) {
+    return quarantinedUntil > now;
+  }
+
+  /**
+   * Average latency divided by the success rate, 0 for servers not measured yet so that each of them is tried once.
+   */
+  synchronized double score() {
+    if (latency < 0) {
+      return errorRate == 0 ? 0 : Double.MAX_VALUE;
+    }
+    return latency / Math.max(1 - errorRate, 0.01);
+  }
+
+  public String getServiceUrl() {
+    return serviceUrl;
+  }
+
+  /**
+   * -1 if no call succeeded yet.
+   */
+  public synchronized double getLatency() {
+    return latency;
+  }
+
+  public synchronized double getErrorRate() {
+    return errorRate;
+  }
+
+  public synchronized long getRequests() {
+    return requests;
+  }
+
+  public synchronized long getFailures() {
+    return failures;
+  }
+
+  public synchronized long getHedges() {
+    return hedges;
+  }
+
+  public synchronized long getHedgeWins() {
+    return hedgeWins;
+  }
+
+  public boolean isQuarantined() {
+    return isQuarantined(System.currentTimeMillis());
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "EurekaServerStatistics{serviceUrl=" + serviceUrl + ", latency=" + latency + ", errorRate=" + errorRate
+        + ", requests=" + requests + ", failures=" + failures + ", hedges=" + hedges + ", hedgeWins=" + hedgeWins
+        + ", quarantinedUntil=" + quarantinedUntil + '}';
+  }
+}
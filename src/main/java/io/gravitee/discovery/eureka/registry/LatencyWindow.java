@@ -0,0 +1,51 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.registry;
+
+import java.util.Arrays;
+
+/**
+ * Latencies of the last calls of a kind, to compute their percentiles.
+ */
+class LatencyWindow {
+
+  private final long[] latencies;
+  private int count;
+  private int next;
+
+  LatencyWindow(int size) {
+    this.latencies = new long[size];
+  }
+
+  synchronized void record(long latencyMillis) {
+    latencies[next] = latencyMillis;
+    next = (next + 1) % latencies.length;
+    count = Math.min(count + 1, latencies.length);
+  }
+
+  /**
+   * @return -1 if less than <code>minSamples</code> calls have been recorded
+   */
+  synchronized long percentile(double percentile, int minSamples) {
+    if (count < Math.max(minSamples, 1)) {
+      return -1;
+    }
+    long[] sorted = Arrays.copyOf(latencies, count);
+    Arrays.sort(sorted);
+    int index = (int) Math.ceil(percentile / 100 * count) - 1;
+    return sorted[Math.min(Math.max(index, 0), count - 1)];
+  }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.registry;
+
+import io.gravitee.discovery.eureka.spring.EurekaClientConfigBean;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delay before the next registry refresh. When adaptive, it is halved after a change and doubled once nothing changed
+ * for a number of refreshes, with a jitter so that gateway nodes do not refresh all at once.
+ */
+class RefreshInterval {
+
+  private final long min;
+  private final long max;
+  private final int idleRefreshes;
+  private final double jitter;
+  private long current;
+  private int unchangedRefreshes;
+
+  RefreshInterval(long interval, long min, long max, int idleRefreshes, double jitter) {
+    this.min = Math.min(min, interval);
+    this.max = Math.max(max, interval);
+    this.idleRefreshes = Math.max(idleRefreshes, 1);
+    this.jitter = jitter;
+    this.current = interval;
+  }
+
+  static RefreshInterval fixed(long interval) {
+    return new RefreshInterval(interval, interval, interval, 1, 0);
+  }
+
+  static RefreshInterval of(EurekaClientConfigBean clientConfig) {
+    long interval = TimeUnit.SECONDS.toMillis(clientConfig.getRegistryFetchIntervalSeconds());
+    if (!clientConfig.isAdaptiveRefreshEnabled()) {
+      return fixed(interval);
+    }
+    return new RefreshInterval(interval,
+        TimeUnit.SECONDS.toMillis(clientConfig.getAdaptiveRefreshMinSeconds()),
+        TimeUnit.SECONDS.toMillis(clientConfig.getAdaptiveRefreshMaxSeconds()),
+        clientConfig.getAdaptiveRefreshIdleRefreshes(), clientConfig.getAdaptiveRefreshJitter());
+  }
+
+  /**
+   * @param changed whether the last refresh changed a watched application
+   */
+  synchronized long next(boolean changed) {
+    if (changed) {
+      unchangedRefreshes = 0;
+      current = Math.max(min, current / 2);
+    } else if (++unchangedRefreshes >= idleRefreshes) {
+      unchangedRefreshes = 0;
+      current = Math.min(max, current * 2);
+    }
+    if (jitter <= 0) {
+      return current;
+    }
+    double factor = 1 + jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+    return Math.max(1, Math.round(current * factor));
+  }
+
+  synchronized long current() {
+    return current;
+  }
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.registry;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.EurekaClientConfig;
+import com.netflix.discovery.shared.Application;
+import com.netflix.discovery.shared.Applications;
+import com.netflix.discovery.shared.resolver.EurekaEndpoint;
+import com.netflix.discovery.shared.transport.EurekaHttpClient;
+import com.netflix.discovery.shared.transport.EurekaHttpResponse;
+import com.netflix.discovery.shared.transport.TransportClientFactory;
+import com.netflix.discovery.shared.transport.decorator.EurekaHttpClientDecorator;
+import com.netflix.discovery.shared.transport.jersey.EurekaJerseyClient;
+import com.netflix.discovery.shared.transport.jersey.TransportClientFactories;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Turns the registry responses received by the {@link com.netflix.discovery.DiscoveryClient} transport into
+ * per-application change sets, a full fetch forcing a reconcile.
+ */
+class RegistryChangeRecorder {
+
+  private Map<String, List<InstanceInfo>> instances = new HashMap<>();
+  private Set<String> fetchedApplications = new HashSet<>();
+  private boolean reconcile = true;
+
+  synchronized void onFullFetch() {
+    reconcile = true;
+    instances = new HashMap<>();
+    fetchedApplications = new HashSet<>();
+  }
+
+  synchronized void onApplicationFetch(String application) {
+    if (!reconcile) {
+      fetchedApplications.add(application.toUpperCase());
+    }
+  }
+
+  synchronized void onDelta(Applications delta) {
+    if (reconcile) {
+      // Already reconciling against the whole registry
+      return;
+    }
+    for (Application application : delta.getRegisteredApplications()) {
+      instances.computeIfAbsent(application.getName().toUpperCase(), name -> new ArrayList<>())
+          .addAll(application.getInstancesAsIsFromEureka());
+    }
+  }
+
+  synchronized RegistryChanges drain() {
+    RegistryChanges changes;
+    if (reconcile) {
+      changes = RegistryChanges.reconcile();
+    } else {
+      Map<String, ApplicationChangeSet> applications = new HashMap<>();
+      instances.forEach((application, changed) -> applications.put(application, ApplicationChangeSet.of(changed)));
+      fetchedApplications.forEach(application -> applications.put(application, ApplicationChangeSet.RECONCILE));
+      changes = RegistryChanges.of(applications);
+    }
+    reconcile = false;
+    instances = new HashMap<>();
+    fetchedApplications = new HashSet<>();
+    return changes;
+  }
+
+  @SuppressWarnings("unchecked")
+  TransportClientFactories transportClientFactories(TransportClientFactories delegate) {
+    return new TransportClientFactories() {
+      // Only used with a Jersey client given to the discovery client, which is never the case
+      @Override
+      @Deprecated
+      public TransportClientFactory newTransportClientFactory(Collection additionalFilters, EurekaJerseyClient providedJerseyClient) {
+        return decorate(delegate.newTransportClientFactory(additionalFilters, providedJerseyClient));
+      }
+
+      @Override
+      public TransportClientFactory newTransportClientFactory(EurekaClientConfig clientConfig, Collection additionalFilters,
+                                                              InstanceInfo myInstanceInfo) {
+        return decorate(delegate.newTransportClientFactory(clientConfig, additionalFilters, myInstanceInfo));
+      }
+
+      @Override
+      public TransportClientFactory newTransportClientFactory(EurekaClientConfig clientConfig, Collection additionalFilters,
+                                                              InstanceInfo myInstanceInfo, Optional sslContext,
+                                                              Optional hostnameVerifier) {
+        return decorate(delegate.newTransportClientFactory(clientConfig, additionalFilters, myInstanceInfo,
+            (Optional<SSLContext>) sslContext, (Optional<HostnameVerifier>) hostnameVerifier));
+      }
+    };
+  }
+
+  private TransportClientFactory decorate(TransportClientFactory delegate) {
+    return new TransportClientFactory() {
+      @Override
+      public EurekaHttpClient newClient(EurekaEndpoint serviceUrl) {
+        return decorate(delegate.newClient(serviceUrl));
+      }
+
+      @Override
+      public void shutdown() {
+        delegate.shutdown();
+      }
+    };
+  }
+
+  EurekaHttpClient decorate(EurekaHttpClient delegate) {
+    return new EurekaHttpClientDecorator() {
+      @Override
+      protected <R> EurekaHttpResponse<R> execute(RequestExecutor<R> requestExecutor) {
+        EurekaHttpResponse<R> response = requestExecutor.execute(delegate);
+        if (response.getStatusCode() == 200 && response.getEntity() != null) {
+          switch (requestExecutor.getRequestType()) {
+            case GetDelta:
+              onDelta((Applications) response.getEntity());
+              break;
+            case GetApplications:
+            case GetVip:
+            case GetSecureVip:
+              onFullFetch();
+              break;
+            default:
+              break;
+          }
+        }
+        return response;
+      }
+
+      @Override
+      public void shutdown() {
+        delegate.shutdown();
+      }
+    };
+  }
+}
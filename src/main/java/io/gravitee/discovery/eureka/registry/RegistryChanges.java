@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.registry;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Per-application changes observed by a {@link RegistryClient} between two registry refreshes.
+ */
+public final class RegistryChanges {
+
+  private static final RegistryChanges RECONCILE = new RegistryChanges(null);
+
+  private final Map<String, ApplicationChangeSet> applications;
+
+  private RegistryChanges(Map<String, ApplicationChangeSet> applications) {
+    this.applications = applications;
+  }
+
+  /**
+   * Changes are unknown, every application has to be reconciled.
+   */
+  public static RegistryChanges reconcile() {
+    return RECONCILE;
+  }
+
+  public static RegistryChanges of(Map<String, ApplicationChangeSet> applications) {
+    return new RegistryChanges(Collections.unmodifiableMap(applications));
+  }
+
+  public boolean isReconcile() {
+    return applications == null;
+  }
+
+  /**
+   * Empty when every application has to be reconciled.
+   */
+  public Set<String> getApplications() {
+    return applications == null ? Collections.emptySet() : applications.keySet();
+  }
+
+  /**
+   * <code>null</code> if the application did not change.
+   */
+  public ApplicationChangeSet get(String application) {
+    if (applications == null) {
+      return ApplicationChangeSet.RECONCILE;
+    }
+    return applications.get(application);
+  }
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.registry;
+
+import com.netflix.discovery.EurekaEventListener;
+import com.netflix.discovery.shared.Application;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Source of registry information used by the shared {@link EurekaRegistry}.
+ */
+public interface RegistryClient {
+
+  Application getApplication(String applicationName);
+
+  Collection<Application> getApplications();
+
+  void registerEventListener(EurekaEventListener listener);
+
+  /**
+   * Gives the applications used by the gateway. Newly watched applications are fetched without blocking the caller.
+   */
+  void watch(Set<String> applicationNames);
+
+  /**
+   * Returns the changes observed since the previous call.
+   */
+  RegistryChanges drainChanges();
+
+  boolean isRegistryFetched();
+
+  default List<EurekaServerStatistics> getServerStatistics() {
+    return Collections.emptyList();
+  }
+
+  void shutdown();
+}
@@ -0,0 +1,237 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.registry;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.appinfo.LeaseInfo;
+import com.netflix.discovery.shared.Application;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary file snapshot of the watched applications, used to resolve endpoints until the registry has been fetched.
+ * It is written to a temporary file renamed over the previous one, so that it is never read partially written.
+ */
+public class RegistrySnapshot {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(RegistrySnapshot.class);
+
+  private static final int MAGIC = 0x47524553;
+  static final int VERSION = 1;
+
+  private final Path file;
+  private final long interval;
+  private final long maxAge;
+
+  /**
+   * @param interval minimum time in milliseconds between two writes
+   * @param maxAge time in milliseconds after which a snapshot is too stale to be loaded, unlimited if <code>0</code>
+   */
+  public RegistrySnapshot(Path file, long interval, long maxAge) {
+    this.file = file;
+    this.interval = interval;
+    this.maxAge = maxAge;
+  }
+
+  public Path getFile() {
+    return file;
+  }
+
+  public long getInterval() {
+    return interval;
+  }
+
+  /**
+   * Empty if there is no snapshot, or if it is stale, unreadable or written with another format version.
+   */
+  public Map<String, Application> load() {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.getInt() != MAGIC) {
+        LOGGER.warn("Ignoring Eureka registry snapshot {}, not a registry snapshot", file);
+        return Collections.emptyMap();
+      }
+      int version = buffer.getInt();
+      if (version != VERSION) {
+        LOGGER.warn("Ignoring Eureka registry snapshot {}, unsupported version {}", file, version);
+        return Collections.emptyMap();
+      }
+      long age = System.currentTimeMillis() - buffer.getLong();
+      if (maxAge > 0 && age > maxAge) {
+        LOGGER.warn("Ignoring Eureka registry snapshot {}, written {} ms ago", file, age);
+        return Collections.emptyMap();
+      }
+
+      Map<String, Application> applications = readApplications(buffer);
+      LOGGER.info("Eureka registry snapshot {} loaded with {} applications, written {} ms ago",
+          file, applications.size(), age);
+      return applications;
+    } catch (NoSuchFileException ex) {
+      LOGGER.debug("No Eureka registry snapshot found at {}", file);
+    } catch (IOException | BufferUnderflowException | IllegalArgumentException ex) {
+      LOGGER.warn("Unable to read Eureka registry snapshot {}", file, ex);
+    }
+    return Collections.emptyMap();
+  }
+
+  public void write(Collection<Application> applications) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(System.currentTimeMillis());
+      writeApplications(out, applications);
+    }
+
+    Path directory = file.toAbsolutePath().getParent();
+    if (directory != null) {
+      Files.createDirectories(directory);
+    }
+    Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+    try (OutputStream out = Files.newOutputStream(temporary)) {
+      bytes.writeTo(out);
+    }
+    try {
+      Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException ex) {
+      Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private static void writeApplications(DataOutputStream out, Collection<Application> applications) throws IOException {
+    out.writeInt(applications.size());
+    for (Application application : applications) {
+      writeString(out, application.getName());
+      List<InstanceInfo> instances = application.getInstancesAsIsFromEureka();
+      out.writeInt(instances.size());
+      for (InstanceInfo instance : instances) {
+        writeString(out, instance.getId());
+        writeString(out, instance.getHostName());
+        writeString(out, instance.getIPAddr());
+        writeString(out, instance.getVIPAddress());
+        writeString(out, instance.getSecureVipAddress());
+        writeString(out, instance.getStatus().name());
+        out.writeInt(instance.getPort());
+        out.writeBoolean(instance.isPortEnabled(InstanceInfo.PortType.UNSECURE));
+        out.writeInt(instance.getSecurePort());
+        out.writeBoolean(instance.isPortEnabled(InstanceInfo.PortType.SECURE));
+        out.writeLong(instance.getLeaseInfo() == null ? 0 : instance.getLeaseInfo().getServiceUpTimestamp());
+        Map<String, String> metadata = instance.getMetadata();
+        out.writeInt(metadata.size());
+        for (Map.Entry<String, String> entry : metadata.entrySet()) {
+          writeString(out, entry.getKey());
+          writeString(out, entry.getValue());
+        }
+      }
+    }
+  }
+
+  private static Map<String, Application> readApplications(ByteBuffer buffer) {
+    int count = buffer.getInt();
+    Map<String, Application> applications = new HashMap<>();
+    for (int i = 0; i < count; i++) {
+      Application application = new Application(readRequiredString(buffer));
+      int instances = buffer.getInt();
+      for (int j = 0; j < instances; j++) {
+        application.addInstance(readInstance(application.getName(), buffer));
+      }
+      applications.put(application.getName().toUpperCase(), application);
+    }
+    return applications;
+  }
+
+  private static InstanceInfo readInstance(String applicationName, ByteBuffer buffer) {
+    InstanceInfo.Builder builder = InstanceInfo.Builder.newBuilder()
+        .setAppName(applicationName)
+        .setInstanceId(readRequiredString(buffer))
+        .setHostName(readRequiredString(buffer))
+        .setIPAddr(readString(buffer));
+    String vipAddress = readString(buffer);
+    if (vipAddress != null) {
+      builder.setVIPAddress(vipAddress);
+    }
+    String secureVipAddress = readString(buffer);
+    if (secureVipAddress != null) {
+      builder.setSecureVIPAddress(secureVipAddress);
+    }
+    builder.setStatus(InstanceInfo.InstanceStatus.toEnum(readRequiredString(buffer)))
+        .setPort(buffer.getInt())
+        .enablePort(InstanceInfo.PortType.UNSECURE, buffer.get() != 0)
+        .setSecurePort(buffer.getInt())
+        .enablePort(InstanceInfo.PortType.SECURE, buffer.get() != 0)
+        .setLeaseInfo(LeaseInfo.Builder.newBuilder().setServiceUpTimestamp(buffer.getLong()).build());
+
+    int metadataSize = buffer.getInt();
+    Map<String, String> metadata = new HashMap<>();
+    for (int i = 0; i < metadataSize; i++) {
+      metadata.put(readRequiredString(buffer), readString(buffer));
+    }
+    return builder.setMetadata(metadata).build();
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readRequiredString(ByteBuffer buffer) {
+    String value = readString(buffer);
+    if (value == null) {
+      throw new IllegalArgumentException("Missing value at position " + buffer.position());
+    }
+    return value;
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if (length == -1) {
+      return null;
+    }
+    if (length < 0 || length > buffer.remaining()) {
+      // Corrupted length, never allocated
+      throw new IllegalArgumentException("Invalid string length " + length + " at position " + buffer.position());
+    }
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
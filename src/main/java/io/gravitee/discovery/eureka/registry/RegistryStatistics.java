@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.registry;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters shared by every Eureka service discovery using the same {@link EurekaRegistry}.
+ */
+public class RegistryStatistics {
+
+  private final AtomicLong processedRefreshes = new AtomicLong();
+  private final AtomicLong skippedRefreshes = new AtomicLong();
+  private final AtomicLong panics = new AtomicLong();
+  private final AtomicInteger panicking = new AtomicInteger();
+
+  public void refreshProcessed() {
+    processedRefreshes.incrementAndGet();
+  }
+
+  public void refreshSkipped() {
+    skippedRefreshes.incrementAndGet();
+  }
+
+  public void panicEntered() {
+    panics.incrementAndGet();
+    panicking.incrementAndGet();
+  }
+
+  public void panicExited() {
+    panicking.decrementAndGet();
+  }
+
+  public long getProcessedRefreshes() {
+    return processedRefreshes.get();
+  }
+
+  public long getSkippedRefreshes() {
+    return skippedRefreshes.get();
+  }
+
+  public long getPanics() {
+    return panics.get();
+  }
+
+  /**
+   * Anything else than 0 means that Eureka does not list the instances of some applications anymore.
+   */
+  public int getPanicking() {
+    return panicking.get();
+  }
+
+  @Override
+  public String toString() {
+    return "RegistryStatistics{processedRefreshes=" + processedRefreshes + ", skippedRefreshes=" + skippedRefreshes
+        + ", panics=" + panics + ", panicking=" + panicking + '}';
+  }
+}
@@ -0,0 +1,32 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.registry;
+
+public enum RegistryTransport {
+
+  JERSEY,
+
+  VERTX;
+
+  public static RegistryTransport fromValue(String value) {
+    for (RegistryTransport transport : values()) {
+      if (transport.name().equalsIgnoreCase(value)) {
+        return transport;
+      }
+    }
+    throw new IllegalArgumentException("Unknown Eureka registry transport: " + value);
+  }
+}
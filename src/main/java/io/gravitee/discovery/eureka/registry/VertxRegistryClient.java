@@ -0,0 +1,661 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.registry;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.CacheRefreshedEvent;
+import com.netflix.discovery.EurekaEvent;
+import com.netflix.discovery.EurekaEventListener;
+import com.netflix.discovery.shared.Application;
+import com.netflix.discovery.shared.Applications;
+import io.gravitee.discovery.eureka.spring.EurekaClientConfigBean;
+import io.netty.buffer.ByteBufInputStream;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.RequestOptions;
+import io.vertx.core.net.ProxyOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * {@link RegistryClient} calling the Eureka REST API with the non-blocking Vert.x HTTP client.
+ */
+public class VertxRegistryClient implements RegistryClient {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(VertxRegistryClient.class);
+  private static final int LATENCY_WINDOW = 100;
+  private static final CompletableFuture<Buffer> CANCELLED = new CompletableFuture<>();
+
+  private final Vertx vertx;
+  private final boolean ownedVertx;
+  private final HttpClient httpClient;
+  private final EurekaServerSelector<EurekaServer> serverSelector;
+  private final RegistryFetchMode fetchMode;
+  private final RefreshInterval refreshInterval;
+  private final long requestTimeout;
+  private final boolean deltaDisabled;
+  private final boolean watchedOnly;
+  private final EurekaJsonDecoder jsonDecoder;
+  private final double hedgingPercentile;
+  private final int maxConnectionsPerHost;
+  private final int maxConnections;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+  private final RegistryChangeRecorder changeRecorder = new RegistryChangeRecorder();
+  private final List<EurekaEventListener> listeners = new CopyOnWriteArrayList<>();
+  private final Map<String, Application> applications = new ConcurrentHashMap<>();
+  private volatile Map<String, Application> registry = Collections.emptyMap();
+  // Only accessed by the serialized registry fetches
+  private Map<String, AtomicInteger> statusCounts = new TreeMap<>();
+  private volatile Set<String> watched = Collections.emptySet();
+  private volatile boolean fetched;
+  private volatile boolean watchedChanged;
+  private volatile boolean stopped;
+  private volatile long refreshTimer = -1;
+  private CompletableFuture<Void> registryFetch = CompletableFuture.completedFuture(null);
+
+  VertxRegistryClient(Vertx vertx, boolean ownedVertx, List<String> serviceUrls, RegistryFetchMode fetchMode,
+                      EurekaClientConfigBean clientConfig) {
+    this.vertx = vertx;
+    this.ownedVertx = ownedVertx;
+    this.httpClient = vertx.createHttpClient(httpClientOptions(clientConfig));
+    this.serverSelector = new EurekaServerSelector<>(
+        serviceUrls.stream().map(String::trim).map(EurekaServer::new).collect(Collectors.toList()),
+        EurekaServer::toString, TimeUnit.SECONDS.toMillis(clientConfig.getServerQuarantineSeconds()),
+        clientConfig.getServerSlowRatio(),
+        clientConfig.getTransportConfig().getRetryableClientQuarantineRefreshPercentage());
+    this.fetchMode = fetchMode;
+    this.refreshInterval = RefreshInterval.of(clientConfig);
+    this.requestTimeout = TimeUnit.SECONDS.toMillis(clientConfig.getEurekaServerReadTimeoutSeconds());
+    this.deltaDisabled = clientConfig.shouldDisableDelta();
+    this.watchedOnly = EurekaJsonDecoder.NAME.equals(clientConfig.getDecoderName()) && fetchMode == RegistryFetchMode.FULL;
+    this.jsonDecoder = this.watchedOnly
+        ? new EurekaJsonDecoder(application -> watched.contains(application.toUpperCase()))
+        : EurekaJsonDecoder.ALL_APPLICATIONS;
+    this.hedgingPercentile = clientConfig.isHedgingEnabled() ? clientConfig.getHedgingPercentile() : -1;
+    this.maxConnectionsPerHost = clientConfig.getEurekaServerTotalConnectionsPerHost();
+    this.maxConnections = clientConfig.getEurekaServerTotalConnections();
+  }
+
+  /**
+   * @param vertx the gateway Vert.x instance, a dedicated one is created if <code>null</code>
+   */
+  public static VertxRegistryClient create(Vertx vertx, EurekaClientConfigBean clientConfig, RegistryFetchMode fetchMode) {
+    String[] zones = clientConfig.getAvailabilityZones(clientConfig.getRegion());
+    List<String> serviceUrls = clientConfig.getEurekaServerServiceUrls(zones.length > 0 ? zones[0] : "default");
+
+    VertxRegistryClient client = new VertxRegistryClient(
+        vertx == null ? Vertx.vertx(new VertxOptions().setEventLoopPoolSize(1).setWorkerPoolSize(1).setInternalBlockingPoolSize(1)) : vertx,
+        vertx == null, serviceUrls, fetchMode, clientConfig);
+    client.start().join();
+    return client;
+  }
+
+  private static HttpClientOptions httpClientOptions(EurekaClientConfigBean clientConfig) {
+    HttpClientOptions httpClientOptions = new HttpClientOptions()
+        .setConnectTimeout((int) TimeUnit.SECONDS.toMillis(clientConfig.getEurekaServerConnectTimeoutSeconds()))
+        .setIdleTimeout(clientConfig.getEurekaConnectionIdleTimeoutSeconds())
+        .setMaxPoolSize(clientConfig.getEurekaServerTotalConnectionsPerHost())
+        .setTryUseCompression(clientConfig.shouldGZipContent())
+        .setKeepAlive(true);
+    if (clientConfig.getProxyHost() != null && clientConfig.getProxyPort() != null) {
+      httpClientOptions.setProxyOptions(new ProxyOptions()
+          .setHost(clientConfig.getProxyHost())
+          .setPort(Integer.parseInt(clientConfig.getProxyPort()))
+          .setUsername(clientConfig.getProxyUserName())
+          .setPassword(clientConfig.getProxyPassword()));
+    }
+    return httpClientOptions;
+  }
+
+  CompletableFuture<Void> start() {
+    return refresh().whenComplete((result, throwable) -> scheduleRefresh());
+  }
+
+  @Override
+  public Application getApplication(String applicationName) {
+    if (fetchMode == RegistryFetchMode.FULL) {
+      return registry.get(applicationName.toUpperCase());
+    }
+    return applications.get(applicationName.toUpperCase());
+  }
+
+  @Override
+  public Collection<Application> getApplications() {
+    if (fetchMode == RegistryFetchMode.FULL) {
+      return registry.values();
+    }
+    return applications.values();
+  }
+
+  @Override
+  public List<EurekaServerStatistics> getServerStatistics() {
+    return serverSelector.getStatistics();
+  }
+
+  @Override
+  public void registerEventListener(EurekaEventListener listener) {
+    listeners.add(listener);
+  }
+
+  @Override
+  public synchronized void watch(Set<String> applicationNames) {
+    Set<String> names = applicationNames.stream().map(String::toUpperCase).collect(Collectors.toSet());
+    Set<String> added = new HashSet<>(names);
+    added.removeAll(watched);
+
+    watched = Collections.unmodifiableSet(names);
+    applications.keySet().retainAll(names);
+
+    if (fetchMode == RegistryFetchMode.FULL && !watchedOnly) {
+      // The whole registry is fetched, watched applications only drive the refresh interval
+      return;
+    }
+
+    // Fetched right away rather than on the next refresh, listeners are notified once done
+    if (!added.isEmpty()) {
+      CompletableFuture<Void> fetch;
+      if (fetchMode == RegistryFetchMode.FULL) {
+        // Only the status of their instances is known so far
+        fetch = fetchRegistryApplications(added);
+      } else {
+        fetch = fetchApplications(added);
+      }
+      fetch.thenRun(() -> fireEvent(new CacheRefreshedEvent()));
+    }
+  }
+
+  @Override
+  public RegistryChanges drainChanges() {
+    if (fetchMode == RegistryFetchMode.FULL) {
+      return changeRecorder.drain();
+    }
+    // Watched applications are fetched as a whole, their listeners have to reconcile
+    return RegistryChanges.reconcile();
+  }
+
+  @Override
+  public boolean isRegistryFetched() {
+    return fetched;
+  }
+
+  @Override
+  public void shutdown() {
+    stopped = true;
+    vertx.cancelTimer(refreshTimer);
+    httpClient.close();
+    if (ownedVertx) {
+      vertx.close();
+    }
+  }
+
+  CompletableFuture<Void> refresh() {
+    CompletableFuture<Void> refreshed;
+    if (fetchMode == RegistryFetchMode.FULL) {
+      refreshed = fetched && !deltaDisabled ? fetchDelta() : fetchRegistry();
+    } else {
+      refreshed = fetchApplications(watched);
+    }
+    return refreshed
+        .thenRun(() -> fireEvent(new CacheRefreshedEvent()))
+        .exceptionally(throwable -> {
+          LOGGER.warn("Unable to refresh the Eureka registry, keeping last known instances: {}", throwable.getMessage());
+          return null;
+        });
+  }
+
+  private void scheduleRefresh() {
+    if (!stopped) {
+      boolean changed = watchedChanged;
+      watchedChanged = false;
+      refreshTimer = vertx.setTimer(refreshInterval.next(changed), id -> {
+        if (!stopped) {
+          refresh().whenComplete((result, throwable) -> scheduleRefresh());
+        }
+      });
+    }
+  }
+
+  private CompletableFuture<Void> fetchRegistry() {
+    return serialize(this::doFetchRegistry);
+  }
+
+  private CompletableFuture<Void> fetchDelta() {
+    return serialize(() -> get("apps/delta", jsonDecoder::decodeApplications).thenCompose(delta -> {
+      if (delta != null && applyDelta(delta)) {
+        changeRecorder.onDelta(delta);
+        return CompletableFuture.completedFuture(null);
+      }
+      LOGGER.debug("Eureka registry out of sync after delta, fetching the whole registry");
+      return doFetchRegistry();
+    }));
+  }
+
+  private CompletableFuture<Void> doFetchRegistry() {
+    return get("apps/", jsonDecoder::decodeApplications).thenAccept(response -> {
+      if (response == null) {
+        throw new IllegalStateException("Eureka registry not found");
+      }
+      registry = index(response);
+      statusCounts = countStatuses(registry.values());
+      fetched = true;
+      watchedChanged = true;
+      changeRecorder.onFullFetch();
+    });
+  }
+
+  private CompletableFuture<Void> fetchRegistryApplications(Collection<String> applicationNames) {
+    return serialize(() -> {
+      Map<String, CompletableFuture<Application>> fetches = new HashMap<>();
+      applicationNames.forEach(name -> fetches.put(name, get("apps/" + name, jsonDecoder::decodeApplication)));
+      return CompletableFuture.allOf(fetches.values().toArray(new CompletableFuture[0]))
+          .handle((ignored, throwable) -> {
+            Map<String, Application> current = new HashMap<>(registry);
+            Map<String, AtomicInteger> counts = copyOf(statusCounts);
+            fetches.forEach((name, fetch) -> {
+              if (fetch.isCompletedExceptionally()) {
+                LOGGER.warn("Unable to fetch application {} from any Eureka server", name);
+                return;
+              }
+              Application application = fetch.join();
+              Application previous = application == null ? current.remove(name) : current.put(name, application);
+              if (previous != null) {
+                previous.getInstancesAsIsFromEureka().forEach(instance -> count(counts, instance, -1));
+              }
+              if (application != null) {
+                application.getInstancesAsIsFromEureka().forEach(instance -> count(counts, instance, 1));
+              }
+              changeRecorder.onApplicationFetch(name);
+            });
+            registry = current;
+            statusCounts = counts;
+            watchedChanged = true;
+            return null;
+          });
+    });
+  }
+
+  // A registry must never be replaced by a response decoded before the last applied one
+  private synchronized CompletableFuture<Void> serialize(Supplier<CompletableFuture<Void>> fetch) {
+    CompletableFuture<Void> next = registryFetch
+        .handle((result, throwable) -> null)
+        .thenCompose(ignored -> fetch.get());
+    registryFetch = next;
+    return next;
+  }
+
+  /**
+   * Applies the delta to copies of the applications it changes, the others being shared.
+   *
+   * @return <code>false</code> if the local registry differs from the one of the Eureka server once applied
+   */
+  private boolean applyDelta(Applications delta) {
+    Map<String, Application> current = new HashMap<>(registry);
+    Map<String, AtomicInteger> counts = copyOf(statusCounts);
+    Set<String> copied = new HashSet<>();
+    boolean changed = false;
+    for (Application deltaApplication : delta.getRegisteredApplications()) {
+      for (InstanceInfo instance : deltaApplication.getInstancesAsIsFromEureka()) {
+        String name = instance.getAppName().toUpperCase();
+        Application application = current.get(name);
+        if (application == null) {
+          if (instance.getActionType() == InstanceInfo.ActionType.DELETED) {
+            continue;
+          }
+          application = new Application(instance.getAppName());
+          current.put(name, application);
+          copied.add(name);
+        } else if (copied.add(name)) {
+          application = copyOf(application);
+          current.put(name, application);
+        }
+        InstanceInfo previous = application.getByInstanceId(instance.getId());
+        if (previous != null) {
+          count(counts, previous, -1);
+        }
+        if (instance.getActionType() == InstanceInfo.ActionType.DELETED) {
+          application.removeInstance(instance);
+        } else {
+          application.addInstance(instance);
+          count(counts, instance, 1);
+        }
+      }
+      if (watched.contains(deltaApplication.getName().toUpperCase())) {
+        changed = true;
+      }
+    }
+    if (!Applications.getReconcileHashCode(counts).equals(delta.getAppsHashCode())) {
+      return false;
+    }
+    registry = current;
+    statusCounts = counts;
+    if (changed) {
+      watchedChanged = true;
+    }
+    return true;
+  }
+
+  private static Map<String, Application> index(Applications applications) {
+    Map<String, Application> index = new HashMap<>();
+    applications.getRegisteredApplications().forEach(application -> index.put(application.getName().toUpperCase(), application));
+    return index;
+  }
+
+  private static Application copyOf(Application application) {
+    Application copy = new Application(application.getName());
+    application.getInstancesAsIsFromEureka().forEach(copy::addInstance);
+    return copy;
+  }
+
+  // Counted as Eureka does to compute the reconcile hash code
+  private static Map<String, AtomicInteger> countStatuses(Collection<Application> applications) {
+    Map<String, AtomicInteger> counts = new TreeMap<>();
+    applications.forEach(application -> application.getInstancesAsIsFromEureka().forEach(instance -> count(counts, instance, 1)));
+    return counts;
+  }
+
+  private static Map<String, AtomicInteger> copyOf(Map<String, AtomicInteger> counts) {
+    Map<String, AtomicInteger> copy = new TreeMap<>();
+    counts.forEach((status, count) -> copy.put(status, new AtomicInteger(count.get())));
+    return copy;
+  }
+
+  private static void count(Map<String, AtomicInteger> counts, InstanceInfo instance, int delta) {
+    String status = instance.getStatus().name();
+    if (counts.computeIfAbsent(status, key -> new AtomicInteger()).addAndGet(delta) <= 0) {
+      counts.remove(status);
+    }
+  }
+
+  private CompletableFuture<Void> fetchApplications(Collection<String> applicationNames) {
+    return CompletableFuture.allOf(applicationNames.stream()
+        .map(this::fetchApplication)
+        .toArray(CompletableFuture[]::new));
+  }
+
+  private CompletableFuture<Void> fetchApplication(String applicationName) {
+    return get("apps/" + applicationName, jsonDecoder::decodeApplication)
+        .thenAccept(application -> {
+          fetched = true;
+          if (application == null) {
+            if (applications.remove(applicationName) != null) {
+              watchedChanged = true;
+            }
+          } else if (watched.contains(applicationName)) {
+            Application previous = applications.put(applicationName, application);
+            if (previous == null || !ApplicationFingerprint.of(previous).equals(ApplicationFingerprint.of(application))) {
+              watchedChanged = true;
+            }
+          }
+        })
+        .exceptionally(throwable -> {
+          LOGGER.warn("Unable to fetch application {} from any Eureka server, keeping last known instances: {}",
+              applicationName, throwable.getMessage());
+          return null;
+        });
+  }
+
+  /**
+   * @return completed with <code>null</code> if not found
+   */
+  private <T> CompletableFuture<T> get(String path, PayloadDecoder<T> decoder) {
+    List<EurekaServer> servers = serverSelector.select(System.currentTimeMillis());
+    if (servers.isEmpty()) {
+      CompletableFuture<T> failed = new CompletableFuture<>();
+      failed.completeExceptionally(new IllegalStateException("No Eureka server URL configured"));
+      return failed;
+    }
+    return get(path, decoder, servers, 0);
+  }
+
+  private <T> CompletableFuture<T> get(String path, PayloadDecoder<T> decoder, List<EurekaServer> servers, int server) {
+    boolean hedged = hedgingPercentile > 0 && server == 0 && servers.size() > 1;
+    int next = hedged ? server + 2 : server + 1;
+    CompletableFuture<Buffer> response = hedged
+        ? sendHedged(servers.get(server), servers.get(server + 1), path)
+        : send(servers.get(server), path);
+    return response
+        .thenCompose(body -> decode(body, decoder))
+        .handle((result, throwable) -> {
+          if (throwable == null) {
+            return CompletableFuture.completedFuture(result);
+          }
+          if (next < servers.size()) {
+            LOGGER.debug("Unable to get {} from {}, trying next Eureka server", path, servers.get(next - 1), throwable);
+            return get(path, decoder, servers, next);
+          }
+          CompletableFuture<T> failed = new CompletableFuture<>();
+          failed.completeExceptionally(throwable);
+          return failed;
+        })
+        .thenCompose(Function.identity());
+  }
+
+  /**
+   * Sends the request to the secondary server as well if the primary one fails or is slower than usual.
+   */
+  private CompletableFuture<Buffer> sendHedged(EurekaServer primary, EurekaServer secondary, String path) {
+    CompletableFuture<Buffer> response = new CompletableFuture<>();
+    CompletableFuture<Buffer> primaryResponse = send(primary, path);
+    AtomicReference<CompletableFuture<Buffer>> secondaryResponse = new AtomicReference<>();
+    AtomicBoolean hedged = new AtomicBoolean();
+    // The first successful answer wins, statistics are updated before the response is completed
+    AtomicBoolean answered = new AtomicBoolean();
+
+    Runnable sendSecondary = () -> {
+      if (secondaryResponse.get() != null) {
+        return;
+      }
+      CompletableFuture<Buffer> hedge = send(secondary, path);
+      if (!secondaryResponse.compareAndSet(null, hedge)) {
+        hedge.cancel(false);
+        return;
+      }
+      hedge.whenComplete((body, throwable) -> {
+        if (throwable == null) {
+          if (answered.compareAndSet(false, true)) {
+            if (hedged.get()) {
+              serverSelector.onHedgeWon(secondary);
+            }
+            response.complete(body);
+            primaryResponse.cancel(false);
+          }
+        } else if (primaryResponse.isCompletedExceptionally()) {
+          response.completeExceptionally(throwable);
+        }
+      });
+    };
+
+    long delay = latencies.computeIfAbsent(kind(path), kind -> new LatencyWindow(LATENCY_WINDOW))
+        .percentile(hedgingPercentile, LATENCY_WINDOW / 10);
+    long timer = delay < 0 ? -1 : vertx.setTimer(Math.max(delay, 1), id -> {
+      if (!response.isDone() && secondary.inFlight.get() < maxConnectionsPerHost && inFlight.get() < maxConnections) {
+        hedged.set(true);
+        serverSelector.onHedge(secondary);
+        sendSecondary.run();
+      }
+    });
+
+    primaryResponse.whenComplete((body, throwable) -> {
+      if (timer != -1) {
+        vertx.cancelTimer(timer);
+      }
+      if (throwable == null) {
+        if (answered.compareAndSet(false, true)) {
+          response.complete(body);
+          CompletableFuture<Buffer> hedge = secondaryResponse.getAndSet(CANCELLED);
+          if (hedge != null) {
+            hedge.cancel(false);
+          }
+        }
+      } else if (throwable instanceof CancellationException) {
+        // The hedged request answered first
+      } else if (secondaryResponse.get() == null) {
+        // Plain failover
+        sendSecondary.run();
+      } else if (secondaryResponse.get().isCompletedExceptionally()) {
+        response.completeExceptionally(throwable);
+      }
+    });
+    return response;
+  }
+
+  // Vert.x 3.6 deprecates every way of handling the response of a request, the replacements only come with 3.7
+  @SuppressWarnings("deprecation")
+  private CompletableFuture<Buffer> send(EurekaServer server, String path) {
+    long start = System.nanoTime();
+    server.inFlight.incrementAndGet();
+    inFlight.incrementAndGet();
+    CompletableFuture<Buffer> response = new CompletableFuture<>();
+    HttpClientRequest request = httpClient.get(server.requestOptions(path))
+        .setTimeout(requestTimeout)
+        .exceptionHandler(response::completeExceptionally)
+        .handler(httpResponse -> {
+          httpResponse.exceptionHandler(response::completeExceptionally);
+          if (httpResponse.statusCode() == 200) {
+            httpResponse.bodyHandler(response::complete);
+          } else if (httpResponse.statusCode() == 404) {
+            httpResponse.bodyHandler(ignored -> response.complete(null));
+          } else {
+            httpResponse.bodyHandler(ignored -> response.completeExceptionally(
+                new IOException("Unexpected status " + httpResponse.statusCode() + " from " + server)));
+          }
+        });
+    request.putHeader(HttpHeaders.ACCEPT, "application/json");
+    if (server.authorization != null) {
+      request.putHeader(HttpHeaders.AUTHORIZATION, server.authorization);
+    }
+    request.end();
+    response.whenComplete((body, throwable) -> {
+      server.inFlight.decrementAndGet();
+      inFlight.decrementAndGet();
+      if (throwable == null) {
+        long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        latencies.computeIfAbsent(kind(path), kind -> new LatencyWindow(LATENCY_WINDOW)).record(latency);
+        serverSelector.onSuccess(server, latency, System.currentTimeMillis());
+      } else if (throwable instanceof CancellationException) {
+        request.reset();
+      } else {
+        serverSelector.onFailure(server, System.currentTimeMillis());
+      }
+    });
+    return response;
+  }
+
+  // A full registry takes much longer to fetch than a delta or a single application
+  private static String kind(String path) {
+    if (path.equals("apps/") || path.equals("apps/delta")) {
+      return path;
+    }
+    return "apps/{application}";
+  }
+
+  private <T> CompletableFuture<T> decode(Buffer body, PayloadDecoder<T> decoder) {
+    CompletableFuture<T> decoded = new CompletableFuture<>();
+    if (body == null) {
+      decoded.complete(null);
+      return decoded;
+    }
+    // Large registries must not be decoded on the event loop
+    vertx.executeBlocking(future -> {
+      try (InputStream input = new ByteBufInputStream(body.getByteBuf())) {
+        decoded.complete(decoder.decode(input));
+      } catch (Exception ex) {
+        decoded.completeExceptionally(ex);
+      } finally {
+        future.complete();
+      }
+    }, false, null);
+    return decoded;
+  }
+
+  private void fireEvent(EurekaEvent event) {
+    for (EurekaEventListener listener : listeners) {
+      listener.onEvent(event);
+    }
+  }
+
+  @FunctionalInterface
+  private interface PayloadDecoder<T> {
+
+    T decode(InputStream input) throws IOException;
+  }
+
+  private static class EurekaServer {
+
+    private final String host;
+    private final int port;
+    private final boolean ssl;
+    private final String path;
+    private final String authorization;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    EurekaServer(String serviceUrl) {
+      try {
+        URL url = new URL(serviceUrl);
+        this.host = url.getHost();
+        this.ssl = "https".equalsIgnoreCase(url.getProtocol());
+        this.port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+        this.path = url.getPath().endsWith("/") ? url.getPath() : url.getPath() + '/';
+        this.authorization = url.getUserInfo() == null ? null
+            : "Basic " + Base64.getEncoder().encodeToString(url.getUserInfo().getBytes(StandardCharsets.UTF_8));
+      } catch (MalformedURLException ex) {
+        throw new IllegalArgumentException("Invalid Eureka service URL: " + serviceUrl, ex);
+      }
+    }
+
+    RequestOptions requestOptions(String relativePath) {
+      return new RequestOptions().setHost(host).setPort(port).setSsl(ssl).setURI(path + relativePath);
+    }
+
+    @Override
+    public String toString() {
+      // Credentials are not logged
+      return ssl ? "https://" + host + ':' + port + path : "http://" + host + ':' + port + path;
+    }
+  }
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.service;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Publishes an endpoint change once the instance has kept its state for the dwell time, so that flapping instances do
+ * not reach the gateway.
+ */
+public class EndpointDamper {
+
+  private final long dwellTime;
+  private final long maxDelay;
+  private final Map<String, EurekaService> published = new HashMap<>();
+  private final Map<String, PendingChange> pending = new LinkedHashMap<>();
+
+  /**
+   * @param maxDelay maximum time in milliseconds a change can be held, <code>0</code> for no bound
+   */
+  public EndpointDamper(long dwellTime, long maxDelay) {
+    this.dwellTime = dwellTime;
+    this.maxDelay = maxDelay <= 0 ? Long.MAX_VALUE : maxDelay;
+  }
+
+  public EurekaServiceDiff.Listener observer(long now) {
+    return new EurekaServiceDiff.Listener() {
+      @Override
+      public void onRegister(EurekaService service) {
+        observe(service.id(), service, now);
+      }
+
+      @Override
+      public void onUnregister(EurekaService service) {
+        observe(service.id(), null, now);
+      }
+
+      @Override
+      public void onUpdate(EurekaService previous, EurekaService service) {
+        observe(service.id(), service, now);
+      }
+    };
+  }
+
+  public void flush(long now, EurekaServiceDiff.Listener listener) {
+    for (Iterator<PendingChange> it = pending.values().iterator(); it.hasNext(); ) {
+      PendingChange change = it.next();
+      if (change.due(dwellTime, maxDelay) <= now) {
+        it.remove();
+        publish(change, listener);
+      }
+    }
+  }
+
+  /**
+   * <code>-1</code> if no change is pending.
+   */
+  public long nextDue() {
+    long next = Long.MAX_VALUE;
+    for (PendingChange change : pending.values()) {
+      next = Math.min(next, change.due(dwellTime, maxDelay));
+    }
+    return next == Long.MAX_VALUE ? -1 : next;
+  }
+
+  public void flushAll(EurekaServiceDiff.Listener listener) {
+    pending.values().forEach(change -> publish(change, listener));
+    pending.clear();
+  }
+
+  public int pending() {
+    return pending.size();
+  }
+
+  private void observe(String id, EurekaService service, long now) {
+    PendingChange change = pending.get(id);
+    if (change == null) {
+      pending.put(id, new PendingChange(id, service, now));
+    } else {
+      change.service = service;
+      change.lastObserved = now;
+    }
+  }
+
+  private void publish(PendingChange change, EurekaServiceDiff.Listener listener) {
+    EurekaService known = published.get(change.id);
+    EurekaService service = change.service;
+    if (service == null) {
+      if (known != null) {
+        published.remove(change.id);
+        listener.onUnregister(known);
+      }
+    } else if (known == null) {
+      published.put(change.id, service);
+      listener.onRegister(service);
+    } else if (!service.isTargetAndWeightEquals(known)) {
+      published.put(change.id, service);
+      listener.onUpdate(known, service);
+    } else {
+      // Back to the published target
+      published.put(change.id, service);
+    }
+  }
+
+  private static class PendingChange {
+
+    private final String id;
+    private final long firstObserved;
+    private EurekaService service;
+    private long lastObserved;
+
+    PendingChange(String id, EurekaService service, long now) {
+      this.id = id;
+      this.service = service;
+      this.firstObserved = now;
+      this.lastObserved = now;
+    }
+
+    long due(long dwellTime, long maxDelay) {
+      long bound = maxDelay == Long.MAX_VALUE ? Long.MAX_VALUE : firstObserved + maxDelay;
+      return Math.min(lastObserved + dwellTime, bound);
+    }
+  }
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.service;
+
+import com.netflix.appinfo.InstanceInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Reads the weight of an endpoint from the metadata of its Eureka instance, the default weight being used unless it is
+ * a positive integer.
+ */
+public class EndpointWeight {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(EndpointWeight.class);
+
+  private final String metadataKey;
+  private final int defaultWeight;
+
+  public EndpointWeight(String metadataKey, int defaultWeight) {
+    Assert.hasText(metadataKey, "Weight metadata key required");
+    Assert.isTrue(defaultWeight > 0, "Default weight must be positive");
+    this.metadataKey = metadataKey;
+    this.defaultWeight = defaultWeight;
+  }
+
+  public EurekaService service(InstanceInfo instance) {
+    return new EurekaService(instance, Collections.emptyList(), of(instance));
+  }
+
+  public int of(InstanceInfo instance) {
+    Map<String, String> metadata = instance.getMetadata();
+    String value = metadata == null ? null : metadata.get(metadataKey);
+    if (value == null) {
+      return defaultWeight;
+    }
+    try {
+      int weight = Integer.parseInt(value.trim());
+      if (weight > 0) {
+        return weight;
+      }
+    } catch (NumberFormatException nfe) {
+      // Fall back to the default weight
+    }
+    LOGGER.debug("Invalid weight '{}' for instance {}, default weight {} used", value, instance.getId(), defaultWeight);
+    return defaultWeight;
+  }
+}
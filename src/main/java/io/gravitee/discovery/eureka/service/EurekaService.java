@@ -15,30 +15,145 @@
  */
 package io.gravitee.discovery.eureka.service;
 
+import com.netflix.appinfo.AmazonInfo;
+import com.netflix.appinfo.DataCenterInfo;
 import com.netflix.appinfo.InstanceInfo;
 import io.gravitee.discovery.api.service.Service;
 import org.springframework.util.Assert;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
 
 import static com.netflix.appinfo.InstanceInfo.PortType.SECURE;
 
+/**
+ * Immutable copy of the fields of a Eureka instance used by the gateway, so that published endpoints do not retain
+ * the {@link InstanceInfo} of old registry generations.
+ */
 public class EurekaService implements Service {
 
+  public final static String WEIGHT_METADATA_KEY = "weight";
+  public final static int DEFAULT_WEIGHT = 1;
+
   private final static String EUREKA_ID_PREFIX = "eureka:";
-  private InstanceInfo instance;
+  private final static String ZONE_METADATA_KEY = "zone";
+
+  private final String id;
+  private final String host;
+  private final String ipAddress;
+  private final int port;
+  private final boolean secure;
+  private final boolean up;
+  private final String zone;
+  private final int weight;
+  private final long upSince;
+  private final String healthCheckUrl;
+  private final Map<String, Object> metadata;
+  private final int hashCode;
 
   public EurekaService(InstanceInfo instance) {
+    this(instance, Collections.emptyList());
+  }
+
+  public EurekaService(InstanceInfo instance, Collection<String> metadataKeys) {
+    this(instance, metadataKeys, 0);
+  }
+
+  /**
+   * @param weight given as the <code>weight</code> metadata, 0 if the endpoint is not weighted
+   */
+  public EurekaService(InstanceInfo instance, Collection<String> metadataKeys, int weight) {
     Assert.notNull(instance, "Service instance required");
-    this.instance = instance;
+    this.id = EUREKA_ID_PREFIX + instance.getId();
+    this.host = instance.getHostName();
+    this.ipAddress = instance.getIPAddr();
+    this.secure = instance.isPortEnabled(SECURE);
+    this.port = secure ? instance.getSecurePort() : instance.getPort();
+    this.up = instance.getStatus() == InstanceInfo.InstanceStatus.UP;
+    this.zone = zone(instance);
+    this.weight = weight > 0 ? weight : DEFAULT_WEIGHT;
+    this.upSince = instance.getLeaseInfo() == null ? 0 : instance.getLeaseInfo().getServiceUpTimestamp();
+    this.healthCheckUrl = secure && instance.getSecureHealthCheckUrl() != null
+        ? instance.getSecureHealthCheckUrl() : instance.getHealthCheckUrl();
+    this.metadata = copyMetadata(instance, metadataKeys, weight);
+    this.hashCode = id.hashCode();
+  }
+
+  private EurekaService(EurekaService service, String host, int weight, Map<String, Object> metadata) {
+    this(service, service.id, host, weight, metadata);
+  }
+
+  private EurekaService(EurekaService service, String id, String host, int weight, Map<String, Object> metadata) {
+    this.id = id;
+    this.host = host;
+    this.ipAddress = service.ipAddress;
+    this.port = service.port;
+    this.secure = service.secure;
+    this.up = service.up;
+    this.zone = service.zone;
+    this.weight = weight;
+    this.upSince = service.upSince;
+    this.healthCheckUrl = service.healthCheckUrl;
+    this.metadata = metadata;
+    this.hashCode = id.hashCode();
   }
 
   public boolean isUp() {
-    return instance.getStatus().equals(InstanceInfo.InstanceStatus.UP);
+    return up;
   }
 
   public boolean isSecure() {
-    return this.instance.isPortEnabled(SECURE);
+    return secure;
+  }
+
+  public String zone() {
+    return zone;
+  }
+
+  public int weight() {
+    return weight;
+  }
+
+  public EurekaService withWeight(int weight) {
+    Assert.isTrue(weight > 0, "Weight must be positive");
+    if (weight == this.weight && metadata.containsKey(WEIGHT_METADATA_KEY)) {
+      return this;
+    }
+    Map<String, Object> weighted = new HashMap<>(metadata);
+    weighted.put(WEIGHT_METADATA_KEY, weight);
+    return new EurekaService(this, host, weight, Collections.unmodifiableMap(weighted));
+  }
+
+  public EurekaService withHost(String host) {
+    Assert.hasText(host, "Host required");
+    return host.equals(this.host) ? this : new EurekaService(this, host, weight, metadata);
+  }
+
+  /**
+   * Eureka instance ids are only unique within an application.
+   */
+  public EurekaService withApplication(String application) {
+    Assert.hasText(application, "Application required");
+    String qualifiedId = EUREKA_ID_PREFIX + application.toUpperCase() + ':' + id.substring(EUREKA_ID_PREFIX.length());
+    return new EurekaService(this, qualifiedId, host, weight, metadata);
+  }
+
+  public String ipAddress() {
+    return ipAddress;
+  }
+
+  /**
+   * Service-up timestamp of the Eureka lease, 0 if unknown.
+   */
+  public long upSince() {
+    return upSince;
+  }
+
+  public String healthCheckUrl() {
+    return healthCheckUrl;
   }
 
   public boolean isTargetEquals(EurekaService o) {
@@ -46,25 +161,31 @@ public class EurekaService implements Service {
       return true;
     if (o == null || getClass() != o.getClass())
       return false;
-    return o.port() == this.port() && o.host().equals(this.host());
+    return o.port == this.port && o.secure == this.secure && Objects.equals(o.host, this.host);
+  }
+
+  public boolean isTargetAndWeightEquals(EurekaService o) {
+    return isTargetEquals(o) && o.weight == this.weight;
   }
 
   @Override
   public String id() {
-    return EUREKA_ID_PREFIX + instance.getId();
+    return id;
   }
 
   @Override
   public String host() {
-    return this.instance.getHostName();
+    return host;
   }
 
   @Override
   public int port() {
-    if (isSecure()) {
-      return this.instance.getSecurePort();
-    }
-    return this.instance.getPort();
+    return port;
+  }
+
+  @Override
+  public Map<String, Object> metadata() {
+    return metadata;
   }
 
   @Override
@@ -74,11 +195,52 @@ public class EurekaService implements Service {
     if (o == null || getClass() != o.getClass())
       return false;
     EurekaService that = (EurekaService) o;
-    return id().equals(that.id());
+    return hashCode == that.hashCode && id.equals(that.id);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(id());
+    return hashCode;
+  }
+
+  @Override
+  public String toString() {
+    return "EurekaService{id='" + id + "', host='" + host + "', port=" + port + '}';
+  }
+
+  /**
+   * The AWS availability zone, or the <code>zone</code> metadata as set by Spring Cloud clients.
+   */
+  static String zone(InstanceInfo instance) {
+    DataCenterInfo dataCenterInfo = instance.getDataCenterInfo();
+    if (dataCenterInfo instanceof AmazonInfo) {
+      String zone = ((AmazonInfo) dataCenterInfo).get(AmazonInfo.MetaDataKey.availabilityZone);
+      if (zone != null) {
+        return zone;
+      }
+    }
+    Map<String, String> instanceMetadata = instance.getMetadata();
+    return instanceMetadata == null ? null : instanceMetadata.get(ZONE_METADATA_KEY);
+  }
+
+  private static Map<String, Object> copyMetadata(InstanceInfo instance, Collection<String> metadataKeys, int weight) {
+    Map<String, String> instanceMetadata = instance.getMetadata();
+    if ((metadataKeys.isEmpty() || instanceMetadata == null) && weight <= 0) {
+      return Collections.emptyMap();
+    }
+
+    Map<String, Object> metadata = new HashMap<>();
+    if (instanceMetadata != null) {
+      for (String key : metadataKeys) {
+        String value = instanceMetadata.get(key);
+        if (value != null) {
+          metadata.put(key, value);
+        }
+      }
+    }
+    if (weight > 0) {
+      metadata.put(WEIGHT_METADATA_KEY, weight);
+    }
+    return metadata.isEmpty() ? Collections.emptyMap() : Collections.unmodifiableMap(metadata);
   }
 }
@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Diff between the services known by a discovery and the services UP in Eureka, indexed by service id.
+ */
+public class EurekaServiceDiff {
+
+  public interface Listener {
+
+    void onRegister(EurekaService service);
+
+    void onUnregister(EurekaService service);
+
+    /**
+     * Called when a known service changes its target or weight, other changes being applied silently.
+     */
+    void onUpdate(EurekaService previous, EurekaService service);
+  }
+
+  private Map<String, EurekaService> services = new HashMap<>();
+
+  /**
+   * The known services are only replaced once the listener has been notified of all the changes.
+   */
+  public void apply(Collection<EurekaService> snapshot, Listener listener) {
+    Map<String, EurekaService> previous = services;
+    Map<String, EurekaService> current = new HashMap<>(capacity(snapshot.size()));
+
+    for (EurekaService service : snapshot) {
+      String id = service.id();
+      if (current.containsKey(id)) {
+        continue;
+      }
+
+      EurekaService known = previous.get(id);
+      if (known == null) {
+        current.put(id, service);
+        listener.onRegister(service);
+      } else if (!service.isTargetAndWeightEquals(known)) {
+        current.put(id, service);
+        listener.onUpdate(known, service);
+      } else {
+        // Nothing changed for the gateway, keep the service it already knows (unless its metadata is outdated)
+        current.put(id, known.metadata().equals(service.metadata()) ? known : service);
+      }
+    }
+
+    // Whatever has not been matched by the new snapshot has disappeared
+    for (EurekaService service : previous.values()) {
+      if (!current.containsKey(service.id())) {
+        listener.onUnregister(service);
+      }
+    }
+
+    services = current;
+  }
+
+  public void put(EurekaService service, Listener listener) {
+    EurekaService known = services.get(service.id());
+    if (known == null) {
+      listener.onRegister(service);
+      services.put(service.id(), service);
+    } else if (!service.isTargetAndWeightEquals(known)) {
+      listener.onUpdate(known, service);
+      services.put(service.id(), service);
+    } else if (!known.metadata().equals(service.metadata())) {
+      services.put(service.id(), service);
+    }
+  }
+
+  public void remove(String id, Listener listener) {
+    EurekaService known = services.get(id);
+    if (known != null) {
+      listener.onUnregister(known);
+      services.remove(id);
+    }
+  }
+
+  public EurekaService get(String id) {
+    return services.get(id);
+  }
+
+  public int size() {
+    return services.size();
+  }
+
+  private static int capacity(int size) {
+    return (int) (size / 0.75f) + 1;
+  }
+}
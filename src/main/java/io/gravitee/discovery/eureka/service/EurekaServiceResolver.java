@@ -16,31 +16,112 @@
 package io.gravitee.discovery.eureka.service;
 
 import com.netflix.appinfo.InstanceInfo;
-import com.netflix.discovery.DiscoveryClient;
 import com.netflix.discovery.shared.Application;
+import io.gravitee.discovery.eureka.registry.RegistryClient;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 public class EurekaServiceResolver {
 
-  private DiscoveryClient discoveryClient;
+  private final Function<String, Application> applications;
+  private final Supplier<Collection<Application>> allApplications;
+  private final LeasePruning leasePruning;
 
-  public EurekaServiceResolver(DiscoveryClient discoveryClient) {
-    this.discoveryClient = discoveryClient;
+  public EurekaServiceResolver(RegistryClient registryClient) {
+    this(registryClient::getApplication, registryClient::getApplications, null);
+  }
+
+  public EurekaServiceResolver(Function<String, Application> applications) {
+    this(applications, null);
+  }
+
+  public EurekaServiceResolver(Function<String, Application> applications, LeasePruning leasePruning) {
+    this(applications, Collections::emptyList, leasePruning);
+  }
+
+  public EurekaServiceResolver(Function<String, Application> applications,
+                               Supplier<Collection<Application>> allApplications, LeasePruning leasePruning) {
+    this.applications = applications;
+    this.allApplications = allApplications;
+    this.leasePruning = leasePruning;
   }
 
   public List<EurekaService> getServicesUpByApplicationName(String applicationName) {
-    List<EurekaService> services = new ArrayList<>();
-    Application application = discoveryClient.getApplication(applicationName);
+    return getServicesUpByApplicationName(applicationName, EurekaService::new);
+  }
+
+  /**
+   * @param factory returns <code>null</code> to skip the instance
+   */
+  public List<EurekaService> getServicesUpByApplicationName(String applicationName,
+                                                            Function<InstanceInfo, EurekaService> factory) {
+    Application application = applications.apply(applicationName);
     if (application == null) {
-      return services;
+      return new ArrayList<>();
     }
-    List<InstanceInfo> instanceInfos = discoveryClient.getApplication(applicationName).getInstances();
-    if (instanceInfos != null) {
-      services = instanceInfos.stream().map(EurekaService::new).filter(EurekaService::isUp).collect(Collectors.toList());
+    return instances(applicationName, application, EurekaServiceResolver::isUp).stream()
+        .map(factory)
+        .filter(Objects::nonNull)
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * @param factory returns <code>null</code> to skip the instance
+   */
+  public List<EurekaService> getServicesUp(InstanceSelector selector, Function<InstanceInfo, EurekaService> factory) {
+    Map<String, EurekaService> services = new LinkedHashMap<>();
+    if (selector.hasVipAddresses()) {
+      for (Application application : allApplications.get()) {
+        addServicesUp(application.getName(), application, selector, factory, services);
+      }
+    } else {
+      for (String applicationName : selector.getApplications()) {
+        Application application = applications.apply(applicationName);
+        if (application != null) {
+          addServicesUp(applicationName, application, selector, factory, services);
+        }
+      }
     }
-    return services;
+    return new ArrayList<>(services.values());
+  }
+
+  private void addServicesUp(String applicationName, Application application, InstanceSelector selector,
+                             Function<InstanceInfo, EurekaService> factory, Map<String, EurekaService> services) {
+    for (InstanceInfo instance : instances(applicationName, application, selector::accepts)) {
+      if (selector.matches(instance)) {
+        EurekaService service = factory.apply(instance);
+        if (service != null) {
+          services.putIfAbsent(service.id(), service);
+        }
+      }
+    }
+  }
+
+  private List<InstanceInfo> instances(String applicationName, Application application,
+                                       Predicate<InstanceInfo> accepted) {
+    // The shuffled instances only hold the UP ones once the client filters them, the filter must see every status
+    List<InstanceInfo> instanceInfos = application.getInstancesAsIsFromEureka();
+    if (instanceInfos == null) {
+      return Collections.emptyList();
+    }
+    List<InstanceInfo> instances = instanceInfos.stream().filter(accepted).collect(Collectors.toList());
+    if (leasePruning != null) {
+      instances = leasePruning.prune(applicationName, instances, System.currentTimeMillis());
+    }
+    return instances;
+  }
+
+  private static boolean isUp(InstanceInfo instance) {
+    return instance.getStatus() == InstanceInfo.InstanceStatus.UP;
   }
 }
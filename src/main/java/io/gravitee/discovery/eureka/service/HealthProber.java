@@ -0,0 +1,207 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.service;
+
+import org.springframework.util.Assert;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Holds back new services until they are probed healthy, and unpublishes those failing consecutive probes.
+ */
+public class HealthProber {
+
+  @FunctionalInterface
+  public interface Probe {
+
+    /**
+     * @return completed with whether the service is healthy, without blocking
+     */
+    CompletableFuture<Boolean> probe(EurekaService service);
+  }
+
+  private final Probe probe;
+  private final int concurrency;
+  private final int unhealthyThreshold;
+  private final Runnable onProbed;
+  private final Map<String, Target> targets = new HashMap<>();
+  private final Deque<Target> queue = new ArrayDeque<>();
+  private int inFlight;
+
+  /**
+   * @param onProbed called after each probe, from the thread completing it
+   */
+  public HealthProber(Probe probe, int concurrency, int unhealthyThreshold, Runnable onProbed) {
+    Assert.isTrue(concurrency > 0, "Probe concurrency must be positive");
+    Assert.isTrue(unhealthyThreshold > 0, "Unhealthy threshold must be positive");
+    this.probe = probe;
+    this.concurrency = concurrency;
+    this.unhealthyThreshold = unhealthyThreshold;
+    this.onProbed = onProbed;
+  }
+
+  public EurekaServiceDiff.Listener gate(EurekaServiceDiff.Listener listener) {
+    return new EurekaServiceDiff.Listener() {
+      @Override
+      public void onRegister(EurekaService service) {
+        synchronized (HealthProber.this) {
+          Target target = new Target(service);
+          Target previous = targets.put(service.id(), target);
+          if (previous != null) {
+            previous.removed = true;
+          }
+          enqueue(target);
+        }
+        start();
+      }
+
+      @Override
+      public void onUnregister(EurekaService service) {
+        Target target;
+        synchronized (HealthProber.this) {
+          target = targets.remove(service.id());
+          if (target == null) {
+            return;
+          }
+          target.removed = true;
+        }
+        if (target.published) {
+          listener.onUnregister(target.service);
+        }
+      }
+
+      @Override
+      public void onUpdate(EurekaService previous, EurekaService service) {
+        Target target;
+        EurekaService published = null;
+        synchronized (HealthProber.this) {
+          target = targets.get(service.id());
+          if (target != null) {
+            published = target.service;
+            target.service = service;
+          }
+        }
+        if (target == null) {
+          onRegister(service);
+          return;
+        }
+        // The new target is checked by the next round of probes
+        if (target.published) {
+          listener.onUpdate(published, service);
+        }
+      }
+    };
+  }
+
+  public void probeAll() {
+    synchronized (this) {
+      targets.values().forEach(this::enqueue);
+    }
+    start();
+  }
+
+  public void drain(EurekaServiceDiff.Listener listener) {
+    List<EurekaService> healthy = new ArrayList<>();
+    List<EurekaService> unhealthy = new ArrayList<>();
+    synchronized (this) {
+      for (Target target : targets.values()) {
+        if (!target.published && target.probed && target.failures == 0) {
+          target.published = true;
+          healthy.add(target.service);
+        } else if (target.published && target.failures >= unhealthyThreshold) {
+          target.published = false;
+          unhealthy.add(target.service);
+        }
+      }
+    }
+    healthy.forEach(listener::onRegister);
+    unhealthy.forEach(listener::onUnregister);
+  }
+
+  public synchronized int pending() {
+    return (int) targets.values().stream().filter(target -> !target.published).count();
+  }
+
+  private void enqueue(Target target) {
+    if (!target.queued && !target.probing) {
+      target.queued = true;
+      queue.add(target);
+    }
+  }
+
+  private void start() {
+    List<Target> started = new ArrayList<>();
+    List<EurekaService> services = new ArrayList<>();
+    synchronized (this) {
+      while (inFlight < concurrency && !queue.isEmpty()) {
+        Target target = queue.poll();
+        target.queued = false;
+        if (target.removed) {
+          continue;
+        }
+        target.probing = true;
+        inFlight++;
+        started.add(target);
+        services.add(target.service);
+      }
+    }
+
+    for (int i = 0; i < started.size(); i++) {
+      Target target = started.get(i);
+      CompletableFuture<Boolean> result;
+      try {
+        result = probe.probe(services.get(i));
+      } catch (RuntimeException ex) {
+        result = CompletableFuture.completedFuture(false);
+      }
+      result.whenComplete((healthy, throwable) -> onResult(target, throwable == null && Boolean.TRUE.equals(healthy)));
+    }
+  }
+
+  private void onResult(Target target, boolean healthy) {
+    synchronized (this) {
+      inFlight--;
+      target.probing = false;
+      target.probed = true;
+      target.failures = healthy ? 0 : target.failures + 1;
+    }
+    if (!target.removed) {
+      onProbed.run();
+    }
+    start();
+  }
+
+  private static class Target {
+
+    private EurekaService service;
+    private boolean published;
+    private boolean probed;
+    private int failures;
+    private boolean queued;
+    private boolean probing;
+    private volatile boolean removed;
+
+    Target(EurekaService service) {
+      this.service = service;
+    }
+  }
+}
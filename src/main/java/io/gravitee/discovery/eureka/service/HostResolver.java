@@ -0,0 +1,144 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Clock;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Cache of the addresses of the discovered host names, resolved in background. The last resolved address is served
+ * until a new one is known.
+ */
+public class HostResolver {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(HostResolver.class);
+
+  public interface Lookup {
+
+    /**
+     * @return the address of the host name, <code>null</code> if it does not resolve
+     */
+    String resolve(String host);
+  }
+
+  static final long NEGATIVE_TTL = 5000;
+
+  private final Executor executor;
+  private final Lookup lookup;
+  private final long ttl;
+  private final Clock clock;
+  private final Runnable onChange;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+  /**
+   * @param ttl time in milliseconds during which a resolved address is used
+   * @param onChange called when the address of a host name has changed, from the thread which resolved it
+   */
+  public HostResolver(Executor executor, Lookup lookup, long ttl, Clock clock, Runnable onChange) {
+    Assert.isTrue(ttl > 0, "Time-to-live must be positive");
+    this.executor = executor;
+    this.lookup = lookup;
+    this.ttl = ttl;
+    this.clock = clock;
+    this.onChange = onChange;
+  }
+
+  /**
+   * @return the last resolved address of the host name, <code>null</code> if it is being resolved or does not resolve
+   */
+  public String address(String host) {
+    long now = clock.millis();
+    Entry entry = entries.computeIfAbsent(host, name -> new Entry());
+    entry.requested = now;
+    if (entry.expiresAt <= now) {
+      resolve(host, entry);
+    }
+    return entry.address;
+  }
+
+  public void refresh() {
+    long now = clock.millis();
+    entries.entrySet().removeIf(entry -> now - entry.getValue().requested > 2 * ttl);
+    entries.forEach((host, entry) -> {
+      if (entry.expiresAt <= now) {
+        resolve(host, entry);
+      }
+    });
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  private void resolve(String host, Entry entry) {
+    synchronized (entry) {
+      if (entry.resolving) {
+        return;
+      }
+      entry.resolving = true;
+    }
+    try {
+      executor.execute(() -> {
+        String resolved = lookup.resolve(host);
+        String previous;
+        String address;
+        synchronized (entry) {
+          previous = entry.address;
+          address = resolved == null ? previous : resolved;
+          entry.address = address;
+          entry.expiresAt = clock.millis() + (resolved == null ? NEGATIVE_TTL : ttl);
+          entry.resolving = false;
+        }
+        if (!Objects.equals(previous, address)) {
+          LOGGER.debug("Host {} resolved to {}", host, address);
+          onChange.run();
+        }
+      });
+    } catch (RejectedExecutionException ex) {
+      // Registry being shut down
+      synchronized (entry) {
+        entry.resolving = false;
+      }
+    }
+  }
+
+  public static String resolve(String host) {
+    try {
+      return InetAddress.getByName(host).getHostAddress();
+    } catch (UnknownHostException ex) {
+      LOGGER.debug("Unable to resolve host {}", host);
+      return null;
+    }
+  }
+
+  private static class Entry {
+
+    private volatile String address;
+    private volatile long expiresAt;
+    private volatile long requested;
+    private boolean resolving;
+  }
+}
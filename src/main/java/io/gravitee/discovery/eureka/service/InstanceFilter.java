@@ -0,0 +1,250 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.service;
+
+import com.netflix.appinfo.InstanceInfo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Filter on the status, zone and metadata of the instances, compiled once from comma separated requirements:
+ * <code>key=value</code>, <code>key!=value</code>, <code>key in (a, b)</code>, <code>key notin (a, b)</code>,
+ * <code>key</code> and <code>!key</code>. Only the instances which are up are accepted unless a status is required.
+ */
+public class InstanceFilter implements Predicate<InstanceInfo> {
+
+  private static final String STATUS_KEY = "status";
+  private static final String ZONE_KEY = "zone";
+
+  private final String expression;
+  private final Set<InstanceInfo.InstanceStatus> statuses;
+  private final Predicate<InstanceInfo>[] requirements;
+
+  private InstanceFilter(String expression, Set<InstanceInfo.InstanceStatus> statuses,
+                         Predicate<InstanceInfo>[] requirements) {
+    this.expression = expression;
+    this.statuses = statuses;
+    this.requirements = requirements;
+  }
+
+  /**
+   * @throws IllegalArgumentException if the expression is invalid
+   */
+  @SuppressWarnings("unchecked")
+  public static InstanceFilter compile(String expression) {
+    Set<InstanceInfo.InstanceStatus> statuses = EnumSet.allOf(InstanceInfo.InstanceStatus.class);
+    boolean statusRequired = false;
+    List<Predicate<InstanceInfo>> requirements = new ArrayList<>();
+
+    for (String requirement : split(expression)) {
+      Requirement parsed = Requirement.parse(requirement, expression);
+      if (STATUS_KEY.equals(parsed.key)) {
+        // Statuses are checked first, against a single set
+        statuses.retainAll(parsed.statuses(expression));
+        statusRequired = true;
+      } else {
+        requirements.add(parsed.compile());
+      }
+    }
+    if (!statusRequired) {
+      statuses = EnumSet.of(InstanceInfo.InstanceStatus.UP);
+    }
+    return new InstanceFilter(expression, statuses, requirements.toArray(new Predicate[0]));
+  }
+
+  @Override
+  public boolean test(InstanceInfo instance) {
+    if (!statuses.contains(instance.getStatus())) {
+      return false;
+    }
+    for (Predicate<InstanceInfo> requirement : requirements) {
+      if (!requirement.test(instance)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return expression;
+  }
+
+  // Commas within a set of values do not separate requirements
+  private static List<String> split(String expression) {
+    List<String> requirements = new ArrayList<>();
+    int depth = 0;
+    int start = 0;
+    for (int i = 0; i < expression.length(); i++) {
+      char c = expression.charAt(i);
+      if (c == '(') {
+        depth++;
+      } else if (c == ')') {
+        depth--;
+      } else if (c == ',' && depth == 0) {
+        requirements.add(expression.substring(start, i));
+        start = i + 1;
+      }
+      if (depth < 0 || depth > 1) {
+        throw invalid(expression, "unbalanced parentheses");
+      }
+    }
+    if (depth != 0) {
+      throw invalid(expression, "unbalanced parentheses");
+    }
+    requirements.add(expression.substring(start));
+    return requirements;
+  }
+
+  private static IllegalArgumentException invalid(String expression, String reason) {
+    return new IllegalArgumentException("Invalid instance filter [" + expression + "]: " + reason);
+  }
+
+  private enum Operator {
+    EQUALS, NOT_EQUALS, IN, NOT_IN, EXISTS, NOT_EXISTS
+  }
+
+  private static final class Requirement {
+
+    private final String key;
+    private final Operator operator;
+    private final Set<String> values;
+
+    private Requirement(String key, Operator operator, Set<String> values) {
+      this.key = key;
+      this.operator = operator;
+      this.values = values;
+    }
+
+    static Requirement parse(String requirement, String expression) {
+      String trimmed = requirement.trim();
+      if (trimmed.isEmpty()) {
+        throw invalid(expression, "empty requirement");
+      }
+
+      int notEquals = trimmed.indexOf("!=");
+      if (notEquals > 0) {
+        return new Requirement(key(trimmed.substring(0, notEquals), expression), Operator.NOT_EQUALS,
+            Collections.singleton(value(trimmed.substring(notEquals + 2), expression)));
+      }
+      int equals = trimmed.indexOf('=');
+      if (equals > 0) {
+        // Also accepts ==
+        int valueStart = trimmed.startsWith("=", equals + 1) ? equals + 2 : equals + 1;
+        return new Requirement(key(trimmed.substring(0, equals), expression), Operator.EQUALS,
+            Collections.singleton(value(trimmed.substring(valueStart), expression)));
+      }
+      int open = trimmed.indexOf('(');
+      if (open > 0) {
+        String[] keyAndOperator = trimmed.substring(0, open).trim().split("\\s+");
+        if (keyAndOperator.length != 2 || !trimmed.endsWith(")")) {
+          throw invalid(expression, "invalid requirement " + trimmed);
+        }
+        Operator operator;
+        if ("in".equals(keyAndOperator[1])) {
+          operator = Operator.IN;
+        } else if ("notin".equals(keyAndOperator[1])) {
+          operator = Operator.NOT_IN;
+        } else {
+          throw invalid(expression, "unknown operator " + keyAndOperator[1]);
+        }
+        Set<String> values = new HashSet<>();
+        for (String value : trimmed.substring(open + 1, trimmed.length() - 1).split(",")) {
+          values.add(value(value, expression));
+        }
+        return new Requirement(key(keyAndOperator[0], expression), operator, values);
+      }
+      if (trimmed.startsWith("!")) {
+        return new Requirement(key(trimmed.substring(1), expression), Operator.NOT_EXISTS, Collections.emptySet());
+      }
+      return new Requirement(key(trimmed, expression), Operator.EXISTS, Collections.emptySet());
+    }
+
+    Set<InstanceInfo.InstanceStatus> statuses(String expression) {
+      Set<InstanceInfo.InstanceStatus> statuses = EnumSet.noneOf(InstanceInfo.InstanceStatus.class);
+      for (String value : values) {
+        try {
+          statuses.add(InstanceInfo.InstanceStatus.valueOf(value.toUpperCase()));
+        } catch (IllegalArgumentException ex) {
+          throw invalid(expression, "unknown status " + value);
+        }
+      }
+      switch (operator) {
+        case EQUALS:
+        case IN:
+          return statuses;
+        case NOT_EQUALS:
+        case NOT_IN:
+          return EnumSet.complementOf((EnumSet<InstanceInfo.InstanceStatus>) statuses);
+        default:
+          throw invalid(expression, "the status of an instance is always set");
+      }
+    }
+
+    Predicate<InstanceInfo> compile() {
+      Function<InstanceInfo, String> attribute = ZONE_KEY.equals(key) ? EurekaService::zone : metadata(key);
+      switch (operator) {
+        case EQUALS: {
+          String value = values.iterator().next();
+          return instance -> value.equals(attribute.apply(instance));
+        }
+        case NOT_EQUALS: {
+          String value = values.iterator().next();
+          return instance -> !value.equals(attribute.apply(instance));
+        }
+        case IN:
+          return instance -> values.contains(attribute.apply(instance));
+        case NOT_IN:
+          return instance -> !values.contains(attribute.apply(instance));
+        case EXISTS:
+          return instance -> attribute.apply(instance) != null;
+        default:
+          return instance -> attribute.apply(instance) == null;
+      }
+    }
+
+    private static Function<InstanceInfo, String> metadata(String key) {
+      return instance -> {
+        Map<String, String> metadata = instance.getMetadata();
+        return metadata == null ? null : metadata.get(key);
+      };
+    }
+
+    private static String key(String key, String expression) {
+      String trimmed = key.trim();
+      if (trimmed.isEmpty() || trimmed.chars().anyMatch(c -> Character.isWhitespace(c) || "!=(),".indexOf(c) >= 0)) {
+        throw invalid(expression, "invalid key [" + trimmed + "]");
+      }
+      return trimmed;
+    }
+
+    private static String value(String value, String expression) {
+      String trimmed = value.trim();
+      if (trimmed.isEmpty() || trimmed.chars().anyMatch(c -> "!=()".indexOf(c) >= 0)) {
+        throw invalid(expression, "invalid value [" + trimmed + "]");
+      }
+      return trimmed;
+    }
+  }
+}
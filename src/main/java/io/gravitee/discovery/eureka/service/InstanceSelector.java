@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.service;
+
+import com.netflix.appinfo.InstanceInfo;
+import org.springframework.util.StringUtils;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.StringJoiner;
+
+/**
+ * Selects the instances of some applications or VIP addresses, accepted by a filter.
+ */
+public class InstanceSelector {
+
+  private final Set<String> applications;
+  private final String vipAddress;
+  private final String secureVipAddress;
+  private final InstanceFilter filter;
+
+  public InstanceSelector(Collection<String> applications, String vipAddress, String secureVipAddress) {
+    this(applications, vipAddress, secureVipAddress, null);
+  }
+
+  /**
+   * @param filter filter of the instances, <code>null</code> to only accept the instances which are up
+   */
+  public InstanceSelector(Collection<String> applications, String vipAddress, String secureVipAddress,
+                          InstanceFilter filter) {
+    Set<String> names = new LinkedHashSet<>();
+    if (applications != null) {
+      applications.stream().filter(StringUtils::hasText).map(InstanceSelector::key).forEach(names::add);
+    }
+    this.applications = Collections.unmodifiableSet(names);
+    this.vipAddress = StringUtils.hasText(vipAddress) ? key(vipAddress) : null;
+    this.secureVipAddress = StringUtils.hasText(secureVipAddress) ? key(secureVipAddress) : null;
+    this.filter = filter;
+  }
+
+  public Set<String> getApplications() {
+    return applications;
+  }
+
+  public boolean hasVipAddresses() {
+    return vipAddress != null || secureVipAddress != null;
+  }
+
+  public boolean isEmpty() {
+    return applications.isEmpty() && !hasVipAddresses();
+  }
+
+  public boolean hasFilter() {
+    return filter != null;
+  }
+
+  public boolean accepts(InstanceInfo instance) {
+    return filter == null ? instance.getStatus() == InstanceInfo.InstanceStatus.UP : filter.test(instance);
+  }
+
+  public boolean matches(InstanceInfo instance) {
+    return (instance.getAppName() != null && applications.contains(key(instance.getAppName())))
+        || (vipAddress != null && contains(instance.getVIPAddress(), vipAddress))
+        || (secureVipAddress != null && contains(instance.getSecureVipAddress(), secureVipAddress));
+  }
+
+  private static boolean contains(String addresses, String address) {
+    if (addresses == null) {
+      return false;
+    }
+    for (String candidate : addresses.split(",")) {
+      if (key(candidate.trim()).equals(address)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String key(String name) {
+    return name.toUpperCase(Locale.ROOT);
+  }
+
+  @Override
+  public String toString() {
+    StringJoiner joiner = new StringJoiner(", ");
+    applications.forEach(joiner::add);
+    if (vipAddress != null) {
+      joiner.add("vip:" + vipAddress);
+    }
+    if (secureVipAddress != null) {
+      joiner.add("svip:" + secureVipAddress);
+    }
+    if (filter != null) {
+      joiner.add("filter:" + filter);
+    }
+    return joiner.toString();
+  }
+}
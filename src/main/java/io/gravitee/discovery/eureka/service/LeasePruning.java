@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.service;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.appinfo.LeaseInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds back the instances which have missed a number of lease renewals, before Eureka evicts them. Nothing is pruned
+ * when too many instances are stale, the gap being most likely on the Eureka side.
+ */
+public class LeasePruning {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(LeasePruning.class);
+
+  private final int missedRenewals;
+  private final int maxPrunedPercent;
+  private final Set<String> capped = ConcurrentHashMap.newKeySet();
+
+  public LeasePruning(int missedRenewals, int maxPrunedPercent) {
+    Assert.isTrue(missedRenewals > 0, "Number of missed renewals must be positive");
+    Assert.isTrue(maxPrunedPercent >= 0 && maxPrunedPercent < 100, "Maximum pruned percentage must be in [0, 100[");
+    this.missedRenewals = missedRenewals;
+    this.maxPrunedPercent = maxPrunedPercent;
+  }
+
+  public List<InstanceInfo> prune(String application, List<InstanceInfo> instances, long now) {
+    List<InstanceInfo> alive = new ArrayList<>(instances.size());
+    for (InstanceInfo instance : instances) {
+      if (!isStale(instance, now)) {
+        alive.add(instance);
+      }
+    }
+
+    int pruned = instances.size() - alive.size();
+    if (pruned == 0) {
+      if (capped.remove(application)) {
+        LOGGER.info("Leases of application {} renewed again", application);
+      }
+      return instances;
+    }
+    if (alive.isEmpty() || pruned * 100L > (long) instances.size() * maxPrunedPercent) {
+      if (capped.add(application)) {
+        LOGGER.warn("{} of the {} instances of application {} missed {} lease renewals, none of them is pruned",
+            pruned, instances.size(), application, missedRenewals);
+      }
+      return instances;
+    }
+    capped.remove(application);
+    LOGGER.debug("{} stale instances of application {} pruned", pruned, application);
+    return alive;
+  }
+
+  boolean isStale(InstanceInfo instance, long now) {
+    LeaseInfo leaseInfo = instance.getLeaseInfo();
+    if (leaseInfo == null || leaseInfo.getRenewalTimestamp() <= 0 || leaseInfo.getRenewalIntervalInSecs() <= 0) {
+      return false;
+    }
+    return now - leaseInfo.getRenewalTimestamp() > missedRenewals * leaseInfo.getRenewalIntervalInSecs() * 1000L;
+  }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the last known good services when the services UP drop under a percentage of them, like during a Eureka
+ * partition, until the shrink has persisted for a while.
+ */
+public class PanicGuard {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(PanicGuard.class);
+
+  private final String name;
+  private final int threshold;
+  private final long duration;
+  private Map<String, EurekaService> lastKnownGood;
+  private long panicSince = -1;
+
+  /**
+   * @param duration time in milliseconds after which a persisting shrink is accepted, 0 for never
+   */
+  public PanicGuard(String name, int threshold, long duration) {
+    this.name = name;
+    this.threshold = threshold;
+    this.duration = duration;
+  }
+
+  public List<EurekaService> guard(Collection<EurekaService> services, long now) {
+    boolean shrunk = lastKnownGood != null && (long) services.size() * 100 < (long) threshold * lastKnownGood.size();
+    if (shrunk && panicSince < 0) {
+      panicSince = now;
+      LOGGER.warn("Panic mode entered for {}: only {} of the {} last known good instances are up, keeping them",
+          name, services.size(), lastKnownGood.size());
+    } else if (shrunk && duration > 0 && now - panicSince >= duration) {
+      LOGGER.warn("Panic mode exited for {}: {} instances up for {} ms, applying the shrink", name, services.size(),
+          now - panicSince);
+      shrunk = false;
+    } else if (!shrunk && panicSince >= 0) {
+      LOGGER.info("Panic mode exited for {}: {} instances up", name, services.size());
+    }
+
+    if (!shrunk) {
+      panicSince = -1;
+      lastKnownGood = new LinkedHashMap<>();
+      services.forEach(service -> lastKnownGood.putIfAbsent(service.id(), service));
+      return new ArrayList<>(services);
+    }
+
+    // New services are published right away, the ones which disappeared are kept until the panic is over
+    Map<String, EurekaService> merged = new LinkedHashMap<>(lastKnownGood);
+    services.forEach(service -> merged.put(service.id(), service));
+    return new ArrayList<>(merged.values());
+  }
+
+  public boolean isPanicking() {
+    return panicSince >= 0;
+  }
+
+  /**
+   * -1 if not panicking or if the shrink is never accepted.
+   */
+  public long deadline() {
+    return panicSince < 0 || duration <= 0 ? -1 : panicSince + duration;
+  }
+}
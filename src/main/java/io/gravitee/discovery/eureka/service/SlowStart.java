@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.service;
+
+import io.gravitee.discovery.eureka.configuration.SlowStartCurve;
+import org.springframework.util.Assert;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Ramps up the weight of newly started instances from a tenth of their weight, from their Eureka service-up time.
+ * Weights are multiplied by {@link #SCALE} so that endpoints of weight 1 can be ramped up too.
+ */
+public class SlowStart {
+
+  public static final int SCALE = 10;
+
+  private static final double MIN_FRACTION = 1.0 / SCALE;
+
+  private final long window;
+  private final SlowStartCurve curve;
+  private final Map<String, Ramp> ramps = new HashMap<>();
+
+  public SlowStart(long window, SlowStartCurve curve) {
+    Assert.isTrue(window > 0, "Slow start window must be positive");
+    this.window = window;
+    this.curve = curve == null ? SlowStartCurve.LINEAR : curve;
+  }
+
+  /**
+   * @param known whether the instances were running before being watched, their unknown start time is then not ramped
+   */
+  public EurekaService weigh(EurekaService service, long now, boolean known) {
+    Ramp ramp = ramps.get(service.id());
+    if (ramp == null) {
+      long start = service.upSince() > 0 ? service.upSince() : (known ? 0 : now);
+      if (start == 0 || now - start >= window) {
+        return service.withWeight(service.weight() * SCALE);
+      }
+      ramp = new Ramp(start);
+      ramps.put(service.id(), ramp);
+    } else if (service.upSince() > 0) {
+      // The instance may have been restarted since
+      ramp.start = service.upSince();
+    }
+    ramp.service = service;
+
+    int weight = weight(service.weight(), now - ramp.start);
+    if (weight == service.weight() * SCALE) {
+      ramps.remove(service.id());
+    }
+    return service.withWeight(weight);
+  }
+
+  public void step(long now, EurekaServiceDiff serviceDiff, EurekaServiceDiff.Listener listener) {
+    Iterator<Map.Entry<String, Ramp>> iterator = ramps.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, Ramp> entry = iterator.next();
+      Ramp ramp = entry.getValue();
+      if (serviceDiff.get(entry.getKey()) == null) {
+        // Down, or not selected, since its last refresh
+        iterator.remove();
+        continue;
+      }
+      int weight = weight(ramp.service.weight(), now - ramp.start);
+      if (weight == ramp.service.weight() * SCALE) {
+        iterator.remove();
+      }
+      serviceDiff.put(ramp.service.withWeight(weight), listener);
+    }
+  }
+
+  public boolean isRamping() {
+    return !ramps.isEmpty();
+  }
+
+  public long stepInterval() {
+    return Math.max(window / SCALE, 1000);
+  }
+
+  int weight(int weight, long elapsed) {
+    double progress = Math.min(Math.max((double) elapsed / window, 0), 1);
+    double fraction = curve == SlowStartCurve.EXPONENTIAL
+        ? Math.pow(MIN_FRACTION, 1 - progress)
+        : MIN_FRACTION + (1 - MIN_FRACTION) * progress;
+    return Math.max(1, (int) Math.round(weight * SCALE * fraction));
+  }
+
+  private static class Ramp {
+
+    private long start;
+    private EurekaService service;
+
+    Ramp(long start) {
+      this.start = start;
+    }
+  }
+}
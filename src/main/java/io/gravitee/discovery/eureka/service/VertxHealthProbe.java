@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.service;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.net.NetClient;
+import io.vertx.core.net.NetClientOptions;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Expects a 2xx status from the health check URL of an instance, or connects to its port when it has none.
+ */
+public class VertxHealthProbe implements HealthProber.Probe, AutoCloseable {
+
+  private final HttpClient httpClient;
+  private final NetClient netClient;
+  private final long timeout;
+
+  /**
+   * @param timeout maximum time in milliseconds to get the answer of a probe
+   */
+  public VertxHealthProbe(Vertx vertx, long timeout, boolean trustAll) {
+    this.timeout = timeout;
+    this.httpClient = vertx.createHttpClient(new HttpClientOptions()
+        .setConnectTimeout((int) timeout)
+        .setKeepAlive(false)
+        .setTrustAll(trustAll)
+        .setVerifyHost(!trustAll));
+    this.netClient = vertx.createNetClient(new NetClientOptions().setConnectTimeout((int) timeout));
+  }
+
+  @Override
+  public CompletableFuture<Boolean> probe(EurekaService service) {
+    return service.healthCheckUrl() == null ? connect(service) : get(service.healthCheckUrl());
+  }
+
+  // Vert.x 3.6 deprecates every way of handling the response of a request, the replacements only come with 3.7
+  @SuppressWarnings("deprecation")
+  private CompletableFuture<Boolean> get(String url) {
+    CompletableFuture<Boolean> healthy = new CompletableFuture<>();
+    HttpClientRequest request = httpClient.getAbs(url)
+        .setTimeout(timeout)
+        .exceptionHandler(throwable -> healthy.complete(false));
+    request.handler(response -> {
+      response.exceptionHandler(throwable -> healthy.complete(false));
+      healthy.complete(response.statusCode() >= 200 && response.statusCode() < 300);
+      // Only the status matters, close the connection rather than reading the body
+      request.reset();
+    });
+    request.end();
+    return healthy;
+  }
+
+  private CompletableFuture<Boolean> connect(EurekaService service) {
+    CompletableFuture<Boolean> healthy = new CompletableFuture<>();
+    netClient.connect(service.port(), service.host(), connection -> {
+      if (connection.succeeded()) {
+        connection.result().close();
+      }
+      healthy.complete(connection.succeeded());
+    });
+    return healthy;
+  }
+
+  @Override
+  public void close() {
+    httpClient.close();
+    netClient.close();
+  }
+}
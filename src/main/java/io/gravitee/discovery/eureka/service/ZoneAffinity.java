@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Selects the services of the gateway zone, and overflows to the other zones when the zone has fewer services UP than
+ * a percentage of the average per zone.
+ */
+public class ZoneAffinity {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ZoneAffinity.class);
+
+  private final String zone;
+  private final double overflowThreshold;
+  private boolean overflowing;
+
+  public ZoneAffinity(String zone, int overflowThreshold) {
+    this.zone = zone;
+    this.overflowThreshold = overflowThreshold / 100.0;
+  }
+
+  public List<EurekaService> select(Collection<EurekaService> services) {
+    if (services.isEmpty()) {
+      return new ArrayList<>();
+    }
+
+    List<EurekaService> local = new ArrayList<>();
+    Set<String> zones = new HashSet<>();
+    for (EurekaService service : services) {
+      zones.add(service.zone());
+      if (zone.equalsIgnoreCase(service.zone())) {
+        local.add(service);
+      }
+    }
+
+    double averageCapacity = (double) services.size() / Math.max(zones.size(), 1);
+    boolean overflow = local.isEmpty() || local.size() < averageCapacity * overflowThreshold;
+    if (overflow != overflowing) {
+      overflowing = overflow;
+      if (overflow) {
+        LOGGER.info("Only {} of {} instances UP in zone {}, overflowing to other zones", local.size(),
+            services.size(), zone);
+      } else {
+        LOGGER.info("{} instances UP in zone {}, no more overflowing to other zones", local.size(), zone);
+      }
+    }
+    return overflow ? new ArrayList<>(services) : local;
+  }
+
+  public boolean isOverflowing() {
+    return overflowing;
+  }
+}
@@ -18,6 +18,8 @@ package io.gravitee.discovery.eureka.spring;
 import com.netflix.appinfo.EurekaAccept;
 import com.netflix.discovery.EurekaClientConfig;
 import com.netflix.discovery.shared.transport.EurekaTransportConfig;
+import io.gravitee.discovery.eureka.registry.RegistryFetchMode;
+import io.gravitee.discovery.eureka.registry.RegistryTransport;
 import org.springframework.core.env.ConfigurableEnvironment;
 
 import java.util.ArrayList;
@@ -71,6 +73,23 @@ public class EurekaClientConfigBean implements EurekaClientConfig {
     private String clientDataAccept;
     private boolean shouldUnregisterOnShutdown;
     private boolean shouldEnforceRegistrationAtInit;
+    private RegistryFetchMode registryFetchMode;
+    private RegistryTransport registryTransport;
+    private long warmupTimeout;
+    private String snapshotPath;
+    private int snapshotIntervalSeconds;
+    private int snapshotMaxAgeSeconds;
+    private int serverQuarantineSeconds;
+    private double serverSlowRatio;
+    private boolean hedgingEnabled;
+    private double hedgingPercentile;
+    private boolean adaptiveRefreshEnabled;
+    private int adaptiveRefreshMinSeconds;
+    private int adaptiveRefreshMaxSeconds;
+    private int adaptiveRefreshIdleRefreshes;
+    private double adaptiveRefreshJitter;
+    private int leasePruningMissedRenewals;
+    private int leasePruningMaxPrunedPercent;
 
     public EurekaClientConfigBean(ConfigurableEnvironment environment, EurekaTransportConfig eurekaTransportConfigBean) {
         this.environment = environment;
@@ -115,6 +134,23 @@ public class EurekaClientConfigBean implements EurekaClientConfig {
         this.clientDataAccept = environment.getProperty("service-discovery.eureka.clientDataAccept");
         this.shouldUnregisterOnShutdown = Boolean.parseBoolean(environment.getProperty("service-discovery.eureka.shouldUnregisterOnShutdown", "true"));
         this.shouldEnforceRegistrationAtInit = Boolean.parseBoolean(environment.getProperty("service-discovery.eureka.shouldEnforceRegistrationAtInit", "false"));
+        this.registryFetchMode = RegistryFetchMode.fromValue(environment.getProperty("service-discovery.eureka.client.fetchMode", "full"));
+        this.registryTransport = RegistryTransport.fromValue(environment.getProperty("service-discovery.eureka.client.transport", "jersey"));
+        this.warmupTimeout = Long.parseLong(environment.getProperty("service-discovery.eureka.client.warmupTimeout", "2000"));
+        this.snapshotPath = environment.getProperty("service-discovery.eureka.client.snapshot.path");
+        this.snapshotIntervalSeconds = Integer.parseInt(environment.getProperty("service-discovery.eureka.client.snapshot.interval", "30"));
+        this.snapshotMaxAgeSeconds = Integer.parseInt(environment.getProperty("service-discovery.eureka.client.snapshot.maxAge", "86400"));
+        this.serverQuarantineSeconds = Integer.parseInt(environment.getProperty("service-discovery.eureka.client.serverSelection.quarantine", "60"));
+        this.serverSlowRatio = Double.parseDouble(environment.getProperty("service-discovery.eureka.client.serverSelection.slowRatio", "3"));
+        this.hedgingEnabled = Boolean.parseBoolean(environment.getProperty("service-discovery.eureka.client.hedging.enabled", "false"));
+        this.hedgingPercentile = Double.parseDouble(environment.getProperty("service-discovery.eureka.client.hedging.percentile", "95"));
+        this.adaptiveRefreshEnabled = Boolean.parseBoolean(environment.getProperty("service-discovery.eureka.client.refresh.adaptive.enabled", "false"));
+        this.adaptiveRefreshMinSeconds = Integer.parseInt(environment.getProperty("service-discovery.eureka.client.refresh.adaptive.min", "5"));
+        this.adaptiveRefreshMaxSeconds = Integer.parseInt(environment.getProperty("service-discovery.eureka.client.refresh.adaptive.max", "120"));
+        this.adaptiveRefreshIdleRefreshes = Integer.parseInt(environment.getProperty("service-discovery.eureka.client.refresh.adaptive.idleRefreshes", "10"));
+        this.adaptiveRefreshJitter = Double.parseDouble(environment.getProperty("service-discovery.eureka.client.refresh.adaptive.jitter", "0.1"));
+        this.leasePruningMissedRenewals = Integer.parseInt(environment.getProperty("service-discovery.eureka.client.leasePruning.missedRenewals", "0"));
+        this.leasePruningMaxPrunedPercent = Integer.parseInt(environment.getProperty("service-discovery.eureka.client.leasePruning.maxPrunedPercent", "50"));
     }
 
     public int getRegistryFetchIntervalSeconds() {
@@ -221,6 +257,18 @@ public class EurekaClientConfigBean implements EurekaClientConfig {
         return region;
     }
 
+    /**
+     * The availability zone of the gateway: the configured one, or the first availability zone of its region.
+     */
+    public String getZone() {
+        String zone = environment.getProperty("service-discovery.eureka.client.zone");
+        if (zone != null) {
+            return zone;
+        }
+        String[] zones = getAvailabilityZones(getRegion());
+        return zones.length > 0 ? zones[0].trim() : null;
+    }
+
     public String[] getAvailabilityZones(String region) {
         String availabilityZones = this.environment.getProperty("service-discovery.eureka."+region + ".availabilityZones");
         if (availabilityZones != null) {
@@ -304,4 +352,72 @@ public class EurekaClientConfigBean implements EurekaClientConfig {
     public EurekaTransportConfig getTransportConfig() {
         return this.transportConfig;
     }
+
+    public RegistryFetchMode getRegistryFetchMode() {
+        return registryFetchMode;
+    }
+
+    public RegistryTransport getRegistryTransport() {
+        return registryTransport;
+    }
+
+    public long getWarmupTimeout() {
+        return warmupTimeout;
+    }
+
+    public String getSnapshotPath() {
+        return snapshotPath;
+    }
+
+    public int getSnapshotIntervalSeconds() {
+        return snapshotIntervalSeconds;
+    }
+
+    public int getSnapshotMaxAgeSeconds() {
+        return snapshotMaxAgeSeconds;
+    }
+
+    public int getServerQuarantineSeconds() {
+        return serverQuarantineSeconds;
+    }
+
+    public double getServerSlowRatio() {
+        return serverSlowRatio;
+    }
+
+    public boolean isHedgingEnabled() {
+        return hedgingEnabled;
+    }
+
+    public double getHedgingPercentile() {
+        return hedgingPercentile;
+    }
+
+    public boolean isAdaptiveRefreshEnabled() {
+        return adaptiveRefreshEnabled;
+    }
+
+    public int getAdaptiveRefreshMinSeconds() {
+        return adaptiveRefreshMinSeconds;
+    }
+
+    public int getAdaptiveRefreshMaxSeconds() {
+        return adaptiveRefreshMaxSeconds;
+    }
+
+    public int getAdaptiveRefreshIdleRefreshes() {
+        return adaptiveRefreshIdleRefreshes;
+    }
+
+    public double getAdaptiveRefreshJitter() {
+        return adaptiveRefreshJitter;
+    }
+
+    public int getLeasePruningMissedRenewals() {
+        return leasePruningMissedRenewals;
+    }
+
+    public int getLeasePruningMaxPrunedPercent() {
+        return leasePruningMaxPrunedPercent;
+    }
 }
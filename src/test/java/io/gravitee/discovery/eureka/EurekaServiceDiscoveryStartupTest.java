@@ -0,0 +1,208 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka;
+
+import io.gravitee.discovery.api.event.Event;
+import io.gravitee.discovery.api.event.EventType;
+import io.gravitee.discovery.eureka.configuration.EurekaServiceDiscoveryConfiguration;
+import io.vertx.core.Vertx;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Deploys an API against a local Eureka server to check that the deployment is not held by the registry fetch.
+ */
+public class EurekaServiceDiscoveryStartupTest {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(EurekaServiceDiscoveryStartupTest.class);
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private StubEurekaServer server;
+  private EurekaServiceDiscovery discovery;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new StubEurekaServer();
+    server.addInstance("APP", "1", "host1", 8080);
+    server.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (discovery != null) {
+      discovery.stop();
+    }
+    server.stop();
+  }
+
+  @Test(timeout = 30000)
+  public void shouldNotHoldDeploymentWhileEurekaIsSlow() throws Exception {
+    long eurekaLatency = 3000;
+    server.setDelay(eurekaLatency);
+    discovery = discovery("200");
+    CountDownLatch registered = new CountDownLatch(1);
+
+    long start = System.nanoTime();
+    discovery.afterPropertiesSet();
+    discovery.listen(event -> registered.countDown());
+    long deploymentLatency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    LOGGER.info("API deployed in {} ms while Eureka answers in {} ms", deploymentLatency, eurekaLatency);
+    assertThat(deploymentLatency).isLessThan(eurekaLatency);
+    assertThat(registered.getCount()).isEqualTo(1);
+
+    // Initial endpoints are published once the first fetch completes
+    assertThat(registered.await(20, TimeUnit.SECONDS)).isTrue();
+  }
+
+  @Test(timeout = 30000)
+  public void shouldPublishInitialEndpointsOnDeploymentWhenFetchedWithinWarmup() throws Exception {
+    discovery = discovery("20000");
+    List<Event> events = new CopyOnWriteArrayList<>();
+
+    discovery.afterPropertiesSet();
+    discovery.listen(events::add);
+
+    assertThat(events).hasSize(1);
+    assertThat(events.get(0).type()).isEqualTo(EventType.REGISTER);
+    assertThat(events.get(0).service().host()).isEqualTo("host1");
+  }
+
+  @Test(timeout = 60000)
+  public void shouldRestoreEndpointsFromSnapshotWhileEurekaIsUnreachable() throws Exception {
+    Path snapshot = folder.getRoot().toPath().resolve("registry.snapshot");
+    discovery = discovery("20000", new MockEnvironment()
+        .withProperty("service-discovery.eureka.client.refresh.interval", "1")
+        .withProperty("service-discovery.eureka.client.snapshot.path", snapshot.toString())
+        .withProperty("service-discovery.eureka.client.snapshot.interval", "0"));
+    discovery.afterPropertiesSet();
+    discovery.listen(event -> {});
+    while (!Files.exists(snapshot)) {
+      Thread.sleep(100);
+    }
+    discovery.stop();
+    discovery = null;
+    server.stop();
+
+    // Gateway restarted while Eureka is down
+    discovery = discovery("20000", new MockEnvironment()
+        .withProperty("service-discovery.eureka.client.snapshot.path", snapshot.toString()));
+    List<Event> events = new CopyOnWriteArrayList<>();
+
+    long start = System.nanoTime();
+    discovery.afterPropertiesSet();
+    discovery.listen(events::add);
+    long deploymentLatency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    LOGGER.info("API deployed with restored endpoints in {} ms", deploymentLatency);
+    assertThat(events).hasSize(1);
+    assertThat(events.get(0).service().host()).isEqualTo("host1");
+  }
+
+  @Test(timeout = 30000)
+  public void shouldDiscoverEndpointsWithVertxTransport() throws Exception {
+    Vertx vertx = Vertx.vertx();
+    try {
+      discovery = discovery("20000", new MockEnvironment()
+          .withProperty("service-discovery.eureka.client.transport", "vertx"));
+      ReflectionTestUtils.setField(discovery, "vertx", vertx);
+      List<Event> events = new CopyOnWriteArrayList<>();
+
+      discovery.afterPropertiesSet();
+      discovery.listen(events::add);
+
+      assertThat(events).hasSize(1);
+      assertThat(events.get(0).service().host()).isEqualTo("host1");
+    } finally {
+      discovery.stop();
+      discovery = null;
+      vertx.close();
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void shouldStartFewerThreadsWithVertxTransport() throws Exception {
+    Vertx vertx = Vertx.vertx();
+    try {
+      // Event loop and worker threads of the gateway are started beforehand
+      vertx.executeBlocking(future -> future.complete(), null);
+      int jerseyThreads = threadsStartedBy(new MockEnvironment(), null);
+      int vertxThreads = threadsStartedBy(new MockEnvironment()
+          .withProperty("service-discovery.eureka.client.transport", "vertx"), vertx);
+
+      LOGGER.info("Threads started by the Eureka client: {} with Jersey, {} with Vert.x", jerseyThreads, vertxThreads);
+      assertThat(vertxThreads).isLessThan(jerseyThreads);
+    } finally {
+      vertx.close();
+    }
+  }
+
+  private int threadsStartedBy(MockEnvironment environment, Vertx vertx) throws Exception {
+    Set<Thread> threads = new HashSet<>(Thread.getAllStackTraces().keySet());
+    discovery = discovery("20000", environment);
+    ReflectionTestUtils.setField(discovery, "vertx", vertx);
+    discovery.afterPropertiesSet();
+    discovery.listen(event -> {});
+
+    // Threads of the gateway Vert.x instance, started on demand, are not owned by the plugin
+    List<String> started = Thread.getAllStackTraces().keySet().stream()
+        .filter(thread -> !threads.contains(thread))
+        .filter(thread -> !thread.getName().startsWith("vert.x-") && !thread.getName().startsWith("stub-eureka"))
+        .map(Thread::getName)
+        .collect(Collectors.toList());
+    LOGGER.info("Threads started: {}", started);
+    discovery.stop();
+    discovery = null;
+    return started.size();
+  }
+
+  private EurekaServiceDiscovery discovery(String warmupTimeout) {
+    return discovery(warmupTimeout, new MockEnvironment());
+  }
+
+  private EurekaServiceDiscovery discovery(String warmupTimeout, MockEnvironment environment) {
+    environment
+        .withProperty("service-discovery.eureka.serviceUrl.default", server.serviceUrl())
+        .withProperty("service-discovery.eureka.client.warmupTimeout", warmupTimeout);
+    EurekaServiceDiscoveryConfiguration configuration = new EurekaServiceDiscoveryConfiguration();
+    configuration.setApplication("APP");
+
+    EurekaServiceDiscovery eurekaServiceDiscovery = new EurekaServiceDiscovery(configuration);
+    ReflectionTestUtils.setField(eurekaServiceDiscovery, "env", environment);
+    return eurekaServiceDiscovery;
+  }
+}
@@ -16,15 +16,26 @@
 package io.gravitee.discovery.eureka;
 
 import com.netflix.appinfo.InstanceInfo;
-import com.netflix.discovery.CacheRefreshedEvent;
-import com.netflix.discovery.DiscoveryClient;
-import com.netflix.discovery.EurekaEvent;
-import com.netflix.discovery.EurekaEventListener;
+import com.netflix.appinfo.LeaseInfo;
+import com.netflix.discovery.shared.Application;
 import io.gravitee.discovery.api.event.Event;
 import io.gravitee.discovery.api.event.EventType;
 import io.gravitee.discovery.eureka.configuration.EurekaServiceDiscoveryConfiguration;
+import io.gravitee.discovery.eureka.configuration.HostResolution;
+import io.gravitee.discovery.eureka.event.ChangeSetHandler;
+import io.gravitee.discovery.eureka.event.EndpointChangeSet;
+import io.gravitee.discovery.eureka.event.EndpointUpdateEvent;
+import io.gravitee.discovery.eureka.event.EndpointUpdateHandler;
+import io.gravitee.discovery.eureka.registry.ApplicationChangeSet;
+import io.gravitee.discovery.eureka.registry.ApplicationFingerprint;
+import io.gravitee.discovery.eureka.registry.ApplicationListener;
+import io.gravitee.discovery.eureka.registry.EurekaRegistry;
+import io.gravitee.discovery.eureka.registry.RegistryStatistics;
 import io.gravitee.discovery.eureka.service.EurekaService;
 import io.gravitee.discovery.eureka.service.EurekaServiceResolver;
+import io.gravitee.discovery.eureka.service.InstanceSelector;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServer;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
@@ -32,26 +43,47 @@ import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.net.InetAddress;
+import java.time.Clock;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.fail;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.mockito.Mockito.*;
 
 public class EurekaServiceDiscoveryTest {
 
   @Mock
-  private DiscoveryClient discoveryClient;
+  private EurekaRegistry eurekaRegistry;
 
   @Mock
   private EurekaServiceResolver eurekaServiceResolver;
 
+  @Spy
+  private RegistryStatistics statistics = new RegistryStatistics();
+
+  @Mock
+  private Clock clock;
+
   @Captor
-  ArgumentCaptor<EurekaEventListener> argCaptor;
+  ArgumentCaptor<ApplicationListener> argCaptor;
 
   @InjectMocks
   private EurekaServiceDiscovery eurekaServiceDiscovery;
@@ -64,13 +96,96 @@ public class EurekaServiceDiscoveryTest {
     configuration.setApplication("APP");
     eurekaServiceDiscovery = new EurekaServiceDiscovery(configuration);
     MockitoAnnotations.initMocks(this);
+    when(eurekaRegistry.awaitStarted()).thenReturn(true);
   }
 
   @Test
-  public void shouldFireEventOnlyWhenCacheRefreshEventIsFired() {
+  public void shouldNotFireEventWhenNothingChanged() {
     eurekaServiceDiscovery.listen(event -> fail("no Event must be Fired"));
-    verify(discoveryClient).registerEventListener(argCaptor.capture());
-    argCaptor.getValue().onEvent(new EurekaEvent() {});
+    verify(eurekaRegistry).subscribe(eq("APP"), argCaptor.capture());
+    argCaptor.getValue().onApplicationRefreshed("APP", null, ApplicationChangeSet.RECONCILE);
+  }
+
+  @Test
+  public void shouldUnsubscribeAndReleaseRegistryOnStop() throws Exception {
+    eurekaServiceDiscovery.listen(event -> {});
+    verify(eurekaRegistry).subscribe(eq("APP"), argCaptor.capture());
+
+    eurekaServiceDiscovery.stop();
+
+    verify(eurekaRegistry).unsubscribe("APP", argCaptor.getValue());
+    verify(eurekaRegistry).release();
+  }
+
+  @Test
+  public void shouldReleaseRegistryOnceWhenStoppedTwice() throws Exception {
+    eurekaServiceDiscovery.listen(event -> {});
+
+    eurekaServiceDiscovery.stop();
+    eurekaServiceDiscovery.stop();
+
+    verify(eurekaRegistry).release();
+  }
+
+  @Test
+  public void shouldMergeInstancesOfSeveralApplications() throws Exception {
+    configuration.setApplications(Arrays.asList("blue", "green"));
+    InstanceInfo blue = vipInstance("BLUE", "1", "host1", null);
+    InstanceInfo green = vipInstance("GREEN", "1", "host2", null);
+    when(eurekaServiceResolver.getServicesUp(any(InstanceSelector.class), any())).thenAnswer(invocation -> {
+      @SuppressWarnings("unchecked")
+      Function<InstanceInfo, EurekaService> factory = (Function<InstanceInfo, EurekaService>) invocation.getArguments()[1];
+      return Arrays.asList(factory.apply(blue), factory.apply(green));
+    });
+    List<Event> events = new ArrayList<>();
+
+    eurekaServiceDiscovery.listen(events::add);
+    verify(eurekaRegistry).subscribe(eq("APP"), argCaptor.capture());
+    verify(eurekaRegistry).subscribe("BLUE", argCaptor.getValue());
+    verify(eurekaRegistry).subscribe("GREEN", argCaptor.getValue());
+    eurekaServiceDiscovery.stop();
+
+    assertThat(events).extracting(event -> event.service().id(), event -> event.service().host())
+        .containsExactly(tuple("eureka:BLUE:1", "host1"), tuple("eureka:GREEN:1", "host2"));
+    verify(eurekaRegistry).unsubscribe("BLUE", argCaptor.getValue());
+    verify(eurekaRegistry).unsubscribe("GREEN", argCaptor.getValue());
+  }
+
+  @Test
+  public void shouldDiscoverInstancesByVipAddress() throws Exception {
+    configuration.setVipAddress("orders");
+    List<Event> events = new ArrayList<>();
+
+    eurekaServiceDiscovery.listen(events::add);
+    verify(eurekaRegistry).subscribeAll(argCaptor.capture());
+    verify(eurekaRegistry, never()).subscribe(anyString(), eq(argCaptor.getValue()));
+    InstanceInfo other = vipInstance("OTHER", "1", "host1", "payments,orders");
+    InstanceInfo unrelated = vipInstance("UNRELATED", "2", "host2", "payments");
+    argCaptor.getValue().onApplicationRefreshed(null, null, ApplicationChangeSet.of(Arrays.asList(other, unrelated)));
+    eurekaServiceDiscovery.stop();
+
+    assertThat(events).extracting(Event::type, event -> event.service().id())
+        .containsExactly(tuple(EventType.REGISTER, "eureka:OTHER:1"));
+    verify(eurekaServiceResolver).getServicesUp(any(InstanceSelector.class), any());
+    verify(eurekaRegistry).unsubscribeAll(argCaptor.getValue());
+  }
+
+  @Test
+  public void shouldOnlyPublishInstancesAcceptedByFilter() {
+    configuration.setInstanceFilter("!canary, status in (UP, STARTING)");
+    List<Event> events = new ArrayList<>();
+
+    eurekaServiceDiscovery.listen(events::add);
+    verify(eurekaRegistry).subscribe(eq("APP"), argCaptor.capture());
+    InstanceInfo starting = instance("1", "host1", InstanceInfo.InstanceStatus.STARTING, InstanceInfo.ActionType.ADDED);
+    InstanceInfo canary = instance("2", "host2", InstanceInfo.InstanceStatus.UP, InstanceInfo.ActionType.ADDED);
+    canary.getMetadata().put("canary", "true");
+    InstanceInfo down = instance("3", "host3", InstanceInfo.InstanceStatus.DOWN, InstanceInfo.ActionType.ADDED);
+    argCaptor.getValue().onApplicationRefreshed("APP", null,
+        ApplicationChangeSet.of(Arrays.asList(starting, canary, down)));
+
+    assertThat(events).extracting(event -> event.service().host()).containsExactly("host1");
+    verify(eurekaServiceResolver).getServicesUp(any(InstanceSelector.class), any());
   }
 
   @Test
@@ -85,8 +200,8 @@ public class EurekaServiceDiscoveryTest {
       assertThat(event.service()).isEqualTo(serviceMock1);
     });
 
-    verify(discoveryClient).registerEventListener(argCaptor.capture());
-    argCaptor.getValue().onEvent(new CacheRefreshedEvent());
+    verify(eurekaRegistry).subscribe(eq("APP"), argCaptor.capture());
+    argCaptor.getValue().onApplicationRefreshed("APP", null, ApplicationChangeSet.RECONCILE);
   }
 
   @Test
@@ -98,10 +213,10 @@ public class EurekaServiceDiscoveryTest {
     List<Event> events = new ArrayList<>();
     when(eurekaServiceResolver.getServicesUpByApplicationName(configuration.getApplication())).thenReturn(services);
     eurekaServiceDiscovery.listen(e -> events.add(e));
-    verify(discoveryClient).registerEventListener(argCaptor.capture());
+    verify(eurekaRegistry).subscribe(eq("APP"), argCaptor.capture());
 
     when(eurekaServiceResolver.getServicesUpByApplicationName(configuration.getApplication())).thenReturn(Collections.emptyList());
-    argCaptor.getValue().onEvent(new CacheRefreshedEvent());
+    argCaptor.getValue().onApplicationRefreshed("APP", null, ApplicationChangeSet.RECONCILE);
 
     assertThat(events.get(1).type()).isEqualTo(EventType.UNREGISTER);
     assertThat(events.get(1).service()).isEqualTo(serviceMock1);
@@ -111,29 +226,626 @@ public class EurekaServiceDiscoveryTest {
   public void shouldFireUnRegisterAndRegisterForTargetHostUpdate() {
     List<EurekaService> services = new ArrayList<>();
     InstanceInfo instanceInfo = mock(InstanceInfo.class);
-    EurekaService eurekaService1 = new EurekaService(instanceInfo);
-    services.add(eurekaService1);
     when(instanceInfo.getId()).thenReturn("1");
     when(instanceInfo.getHostName()).thenReturn("host1");
+    EurekaService eurekaService1 = new EurekaService(instanceInfo);
+    services.add(eurekaService1);
 
     when(eurekaServiceResolver.getServicesUpByApplicationName(configuration.getApplication())).thenReturn(services);
     List<Event> events = new ArrayList<>();
     eurekaServiceDiscovery.listen(event -> events.add(event));
-    verify(discoveryClient).registerEventListener(argCaptor.capture());
+    verify(eurekaRegistry).subscribe(eq("APP"), argCaptor.capture());
 
     services = new ArrayList<>();
     InstanceInfo instanceInfo2 = mock(InstanceInfo.class);
-    EurekaService eurekaService2 = new EurekaService(instanceInfo2);
-    services.add(eurekaService2);
     when(instanceInfo2.getId()).thenReturn("1");
     when(instanceInfo2.getHostName()).thenReturn("host2");
+    EurekaService eurekaService2 = new EurekaService(instanceInfo2);
+    services.add(eurekaService2);
 
     when(eurekaServiceResolver.getServicesUpByApplicationName(configuration.getApplication())).thenReturn(services);
-    argCaptor.getValue().onEvent(new CacheRefreshedEvent());
+    argCaptor.getValue().onApplicationRefreshed("APP", null, ApplicationChangeSet.RECONCILE);
 
     assertThat(events.get(1).type()).isEqualTo(EventType.UNREGISTER);
     assertThat(events.get(1).service().host()).isEqualTo("host1");
     assertThat(events.get(2).type()).isEqualTo(EventType.REGISTER);
     assertThat(events.get(2).service().host()).isEqualTo("host2");
   }
-}
\ No newline at end of file
+
+  @Test
+  public void shouldSkipRefreshWhenApplicationFingerprintIsUnchanged() {
+    ApplicationFingerprint fingerprint = ApplicationFingerprint.EMPTY;
+    when(eurekaRegistry.fingerprint("APP")).thenReturn(fingerprint);
+    when(eurekaServiceResolver.getServicesUpByApplicationName(configuration.getApplication())).thenReturn(Collections.emptyList());
+
+    eurekaServiceDiscovery.listen(event -> fail("no Event must be Fired"));
+    verify(eurekaRegistry).subscribe(eq("APP"), argCaptor.capture());
+    argCaptor.getValue().onApplicationRefreshed("APP", fingerprint, ApplicationChangeSet.RECONCILE);
+    argCaptor.getValue().onApplicationRefreshed("APP", fingerprint, ApplicationChangeSet.RECONCILE);
+
+    verify(eurekaServiceResolver, times(1)).getServicesUpByApplicationName(configuration.getApplication());
+    assertThat(statistics.getProcessedRefreshes()).isEqualTo(1);
+    assertThat(statistics.getSkippedRefreshes()).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldProcessRefreshWhenApplicationFingerprintChanges() {
+    List<EurekaService> services = new ArrayList<>();
+    EurekaService serviceMock1 = mock(EurekaService.class);
+    services.add(serviceMock1);
+    when(eurekaRegistry.fingerprint("APP")).thenReturn(ApplicationFingerprint.EMPTY);
+    when(eurekaServiceResolver.getServicesUpByApplicationName(configuration.getApplication())).thenReturn(Collections.emptyList(), services);
+
+    List<Event> events = new ArrayList<>();
+    eurekaServiceDiscovery.listen(events::add);
+    verify(eurekaRegistry).subscribe(eq("APP"), argCaptor.capture());
+    Application application = new Application("APP");
+    application.addInstance(InstanceInfo.Builder.newBuilder().setAppName("APP").setInstanceId("1").setHostName("host1").build());
+    argCaptor.getValue().onApplicationRefreshed("APP", ApplicationFingerprint.of(application), ApplicationChangeSet.RECONCILE);
+
+    assertThat(events).hasSize(1);
+    assertThat(statistics.getProcessedRefreshes()).isEqualTo(2);
+    assertThat(statistics.getSkippedRefreshes()).isZero();
+  }
+
+  @Test
+  public void shouldApplyDeltaChangesWithoutResolvingApplication() {
+    when(eurekaServiceResolver.getServicesUpByApplicationName(configuration.getApplication())).thenReturn(
+        Arrays.asList(new EurekaService(instance("1", "host1", InstanceInfo.InstanceStatus.UP, InstanceInfo.ActionType.ADDED)),
+            new EurekaService(instance("2", "host2", InstanceInfo.InstanceStatus.UP, InstanceInfo.ActionType.ADDED)),
+            new EurekaService(instance("3", "host3", InstanceInfo.InstanceStatus.UP, InstanceInfo.ActionType.ADDED))));
+
+    List<Event> events = new ArrayList<>();
+    eurekaServiceDiscovery.listen(events::add);
+    verify(eurekaRegistry).subscribe(eq("APP"), argCaptor.capture());
+    events.clear();
+
+    argCaptor.getValue().onApplicationRefreshed("APP", null, ApplicationChangeSet.of(Arrays.asList(
+        instance("1", "moved1", InstanceInfo.InstanceStatus.UP, InstanceInfo.ActionType.MODIFIED),
+        instance("2", "host2", InstanceInfo.InstanceStatus.DOWN, InstanceInfo.ActionType.MODIFIED),
+        instance("3", "host3", InstanceInfo.InstanceStatus.UP, InstanceInfo.ActionType.DELETED),
+        instance("4", "host4", InstanceInfo.InstanceStatus.UP, InstanceInfo.ActionType.ADDED),
+        instance("5", "host5", InstanceInfo.InstanceStatus.UP, InstanceInfo.ActionType.DELETED))));
+
+    verify(eurekaServiceResolver, times(1)).getServicesUpByApplicationName(configuration.getApplication());
+    assertThat(events).hasSize(5);
+    assertThat(events.get(0).type()).isEqualTo(EventType.UNREGISTER);
+    assertThat(events.get(0).service().host()).isEqualTo("host1");
+    assertThat(events.get(1).type()).isEqualTo(EventType.REGISTER);
+    assertThat(events.get(1).service().host()).isEqualTo("moved1");
+    assertThat(events.get(2).type()).isEqualTo(EventType.UNREGISTER);
+    assertThat(events.get(2).service().host()).isEqualTo("host2");
+    assertThat(events.get(3).type()).isEqualTo(EventType.UNREGISTER);
+    assertThat(events.get(3).service().host()).isEqualTo("host3");
+    assertThat(events.get(4).type()).isEqualTo(EventType.REGISTER);
+    assertThat(events.get(4).service().host()).isEqualTo("host4");
+  }
+
+  @Test
+  public void shouldPublishWeightedEndpoints() {
+    configuration.setWeightMetadataKey("weight");
+    configuration.setDefaultWeight(2);
+    InstanceInfo heavy = instance("1", "host1", InstanceInfo.InstanceStatus.UP, InstanceInfo.ActionType.ADDED);
+    heavy.getMetadata().put("weight", "8");
+    InstanceInfo light = instance("2", "host2", InstanceInfo.InstanceStatus.UP, InstanceInfo.ActionType.ADDED);
+    when(eurekaServiceResolver.getServicesUpByApplicationName(eq(configuration.getApplication()), any()))
+        .thenAnswer(invocation -> {
+          @SuppressWarnings("unchecked")
+          Function<InstanceInfo, EurekaService> factory = (Function<InstanceInfo, EurekaService>) invocation.getArguments()[1];
+          return Arrays.asList(factory.apply(heavy), factory.apply(light));
+        });
+
+    List<Event> events = new ArrayList<>();
+    eurekaServiceDiscovery.listen(events::add);
+    verify(eurekaRegistry).subscribe(eq("APP"), argCaptor.capture());
+
+    assertThat(events).extracting(event -> ((EurekaService) event.service()).weight()).containsExactly(8, 2);
+
+    // The weight of an instance changed: its endpoint is replaced
+    InstanceInfo reweighted = instance("2", "host2", InstanceInfo.InstanceStatus.UP, InstanceInfo.ActionType.MODIFIED);
+    reweighted.getMetadata().put("weight", "4");
+    argCaptor.getValue().onApplicationRefreshed("APP", null, ApplicationChangeSet.of(Collections.singletonList(reweighted)));
+
+    assertThat(events).extracting(Event::type)
+        .containsExactly(EventType.REGISTER, EventType.REGISTER, EventType.UNREGISTER, EventType.REGISTER);
+    assertThat(events.get(3).service().metadata()).containsEntry(EurekaService.WEIGHT_METADATA_KEY, 4);
+  }
+
+  @Test
+  public void shouldGiveNewWeightOfRegisteredInstanceToPlainHandler() {
+    configuration.setWeightMetadataKey("weight");
+    InstanceInfo instance = instance("1", "host1", InstanceInfo.InstanceStatus.UP, InstanceInfo.ActionType.ADDED);
+    instance.getMetadata().put("weight", "2");
+    when(eurekaServiceResolver.getServicesUpByApplicationName(eq(configuration.getApplication()), any()))
+        .thenAnswer(invocation -> {
+          @SuppressWarnings("unchecked")
+          Function<InstanceInfo, EurekaService> factory = (Function<InstanceInfo, EurekaService>) invocation.getArguments()[1];
+          return Collections.singletonList(factory.apply(instance));
+        });
+    List<Event> events = new ArrayList<>();
+    eurekaServiceDiscovery.listen(events::add);
+    verify(eurekaRegistry).subscribe(eq("APP"), argCaptor.capture());
+
+    instance.getMetadata().put("weight", "6");
+    argCaptor.getValue().onApplicationRefreshed("APP", null, ApplicationChangeSet.RECONCILE);
+
+    assertThat(events).extracting(Event::type).containsExactly(EventType.REGISTER, EventType.UNREGISTER, EventType.REGISTER);
+    assertThat(events).extracting(event -> event.service().metadata().get(EurekaService.WEIGHT_METADATA_KEY))
+        .containsExactly(2, 2, 6);
+  }
+
+  @Test
+  public void shouldOnlyPublishGatewayZoneWithZoneAffinity() {
+    configuration.setZoneAffinity(true);
+    when(eurekaRegistry.getZone()).thenReturn("zone-a");
+    EurekaService local = service("1", "host1", "zone-a");
+    EurekaService remote = service("2", "host2", "zone-b");
+    when(eurekaServiceResolver.getServicesUpByApplicationName(configuration.getApplication()))
+        .thenReturn(Arrays.asList(local, remote));
+
+    List<Event> events = new ArrayList<>();
+    eurekaServiceDiscovery.listen(events::add);
+    verify(eurekaRegistry).subscribe(eq("APP"), argCaptor.capture());
+
+    assertThat(events).extracting(Event::service).containsExactly(local);
+
+    // The local instance goes down: the delta is reconciled against the whole application
+    when(eurekaServiceResolver.getServicesUpByApplicationName(configuration.getApplication()))
+        .thenReturn(Collections.singletonList(remote));
+    argCaptor.getValue().onApplicationRefreshed("APP", null, ApplicationChangeSet.of(Collections.singletonList(
+        instance("1", "host1", InstanceInfo.InstanceStatus.DOWN, InstanceInfo.ActionType.MODIFIED))));
+
+    // No local instance left: overflow to the other zones
+    assertThat(events).hasSize(3);
+    assertThat(events.subList(1, 3)).extracting(Event::type, Event::service)
+        .containsExactlyInAnyOrder(tuple(EventType.REGISTER, remote), tuple(EventType.UNREGISTER, local));
+  }
+
+  @Test
+  public void shouldReconcileAfterDeltaEvenIfFingerprintWasAlreadyProcessed() {
+    when(eurekaRegistry.fingerprint("APP")).thenReturn(ApplicationFingerprint.EMPTY);
+    when(eurekaServiceResolver.getServicesUpByApplicationName(configuration.getApplication())).thenReturn(Collections.emptyList());
+
+    eurekaServiceDiscovery.listen(event -> {});
+    verify(eurekaRegistry).subscribe(eq("APP"), argCaptor.capture());
+    argCaptor.getValue().onApplicationRefreshed("APP", null, ApplicationChangeSet.of(Collections.singletonList(
+        instance("1", "host1", InstanceInfo.InstanceStatus.UP, InstanceInfo.ActionType.ADDED))));
+    argCaptor.getValue().onApplicationRefreshed("APP", ApplicationFingerprint.EMPTY, ApplicationChangeSet.RECONCILE);
+
+    verify(eurekaServiceResolver, times(2)).getServicesUpByApplicationName(configuration.getApplication());
+  }
+
+  @Test
+  public void shouldPublishRefreshAsSingleChangeSet() {
+    configuration.setBatchEvents(true);
+    when(eurekaServiceResolver.getServicesUpByApplicationName(configuration.getApplication())).thenReturn(
+        Arrays.asList(service("1", "host1"), service("2", "host2")),
+        Arrays.asList(service("2", "moved2"), service("3", "host3")));
+    List<EndpointChangeSet> changeSets = new ArrayList<>();
+
+    eurekaServiceDiscovery.listen(new ChangeSetHandler() {
+      @Override
+      public void handleChangeSet(EndpointChangeSet changeSet) {
+        changeSets.add(changeSet);
+      }
+
+      @Override
+      public void handle(Event event) {
+        fail("Events must be batched");
+      }
+    });
+    verify(eurekaRegistry).subscribe(eq("APP"), argCaptor.capture());
+    argCaptor.getValue().onApplicationRefreshed("APP", null, ApplicationChangeSet.RECONCILE);
+
+    assertThat(changeSets).hasSize(2);
+    assertThat(changeSets.get(0).size()).isEqualTo(2);
+    // New endpoints first, then replaced and finally removed ones
+    List<Event> events = changeSets.get(1).getEvents();
+    assertThat(events).extracting(Event::type).containsExactly(EventType.REGISTER, EventType.UNREGISTER, EventType.REGISTER, EventType.UNREGISTER);
+    assertThat(events).extracting(event -> event.service().host()).containsExactly("host3", "host2", "moved2", "host1");
+  }
+
+  @Test
+  public void shouldPublishBatchedEventsInOrderToPlainHandler() {
+    configuration.setBatchEvents(true);
+    when(eurekaServiceResolver.getServicesUpByApplicationName(configuration.getApplication())).thenReturn(
+        Collections.singletonList(service("1", "host1")),
+        Collections.singletonList(service("2", "host2")),
+        Collections.singletonList(service("2", "host2")));
+    List<Event> events = new ArrayList<>();
+
+    eurekaServiceDiscovery.listen(events::add);
+    verify(eurekaRegistry).subscribe(eq("APP"), argCaptor.capture());
+    argCaptor.getValue().onApplicationRefreshed("APP", null, ApplicationChangeSet.RECONCILE);
+    argCaptor.getValue().onApplicationRefreshed("APP", null, ApplicationChangeSet.RECONCILE);
+
+    assertThat(events).extracting(Event::type).containsExactly(EventType.REGISTER, EventType.REGISTER, EventType.UNREGISTER);
+    assertThat(events).extracting(event -> event.service().host()).containsExactly("host1", "host2", "host1");
+  }
+
+  @Test
+  public void shouldUpdateEndpointInPlaceWhenHostChanges() {
+    List<EndpointUpdateEvent> updates = listenForUpdates(target("host1", 8080, false), target("host2", 8080, false));
+
+    assertThat(updates).hasSize(1);
+    assertThat(updates.get(0).type()).isEqualTo(EventType.REGISTER);
+    assertThat(updates.get(0).previous().host()).isEqualTo("host1");
+    assertThat(updates.get(0).service().host()).isEqualTo("host2");
+    assertThat(eurekaServiceDiscovery.getServices(service -> true)).extracting(EurekaService::host).containsExactly("host2");
+  }
+
+  @Test
+  public void shouldUpdateEndpointInPlaceWhenPortChanges() {
+    List<EndpointUpdateEvent> updates = listenForUpdates(target("host1", 8080, false), target("host1", 8081, false));
+
+    assertThat(updates).hasSize(1);
+    assertThat(updates.get(0).previous().port()).isEqualTo(8080);
+    assertThat(updates.get(0).service().port()).isEqualTo(8081);
+  }
+
+  @Test
+  public void shouldUpdateEndpointInPlaceWhenSecureFlagFlips() {
+    List<EndpointUpdateEvent> updates = listenForUpdates(target("host1", 8443, false), target("host1", 8443, true));
+
+    assertThat(updates).hasSize(1);
+    assertThat(((EurekaService) updates.get(0).previous()).isSecure()).isFalse();
+    assertThat(((EurekaService) updates.get(0).service()).isSecure()).isTrue();
+  }
+
+  @Test
+  public void shouldNotChurnWhenOnlyMetadataChanges() {
+    InstanceInfo previous = target("host1", 8080, false);
+    previous.getMetadata().put("weight", "1");
+    InstanceInfo next = target("host1", 8080, false);
+    next.getMetadata().put("weight", "5");
+
+    List<EndpointUpdateEvent> updates = listenForUpdates(previous, next);
+
+    assertThat(updates).isEmpty();
+  }
+
+  @Test
+  public void shouldBatchInPlaceUpdates() {
+    configuration.setBatchEvents(true);
+    when(eurekaServiceResolver.getServicesUpByApplicationName(configuration.getApplication())).thenReturn(
+        Collections.singletonList(new EurekaService(target("host1", 8080, false))),
+        Collections.singletonList(new EurekaService(target("host2", 8080, false))));
+    List<EndpointChangeSet> changeSets = new ArrayList<>();
+
+    eurekaServiceDiscovery.listen(new UpdateRecordingHandler() {
+      @Override
+      public void handleChangeSet(EndpointChangeSet changeSet) {
+        changeSets.add(changeSet);
+      }
+    });
+    verify(eurekaRegistry).subscribe(eq("APP"), argCaptor.capture());
+    argCaptor.getValue().onApplicationRefreshed("APP", null, ApplicationChangeSet.RECONCILE);
+
+    assertThat(changeSets.get(1).getEvents()).hasSize(1);
+    assertThat(changeSets.get(1).getEvents().get(0)).isInstanceOf(EndpointUpdateEvent.class);
+  }
+
+  @Test
+  public void shouldDampFlappingInstances() {
+    configuration.setFlapDwellTime(1000);
+    ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+    when(eurekaRegistry.getScheduler()).thenReturn(scheduler);
+    when(clock.millis()).thenReturn(0L, 500L, 800L, 1800L);
+    when(eurekaServiceResolver.getServicesUpByApplicationName(configuration.getApplication())).thenReturn(
+        Collections.singletonList(service("1", "host1")),
+        Collections.emptyList(),
+        Collections.singletonList(service("1", "host1")),
+        Arrays.asList(service("1", "host1"), service("2", "host2")));
+    List<Event> events = new ArrayList<>();
+
+    eurekaServiceDiscovery.listen(events::add);
+    verify(eurekaRegistry).subscribe(eq("APP"), argCaptor.capture());
+    // Instance 1 flaps down and up within the dwell time
+    argCaptor.getValue().onApplicationRefreshed("APP", null, ApplicationChangeSet.RECONCILE);
+    argCaptor.getValue().onApplicationRefreshed("APP", null, ApplicationChangeSet.RECONCILE);
+    // Instance 2 appears
+    argCaptor.getValue().onApplicationRefreshed("APP", null, ApplicationChangeSet.RECONCILE);
+
+    assertThat(events).extracting(event -> event.service().host()).containsExactly("host1");
+
+    ArgumentCaptor<Runnable> flush = ArgumentCaptor.forClass(Runnable.class);
+    verify(scheduler, atLeastOnce()).schedule(flush.capture(), eq(1000L), eq(TimeUnit.MILLISECONDS));
+    when(clock.millis()).thenReturn(2800L);
+    flush.getValue().run();
+
+    assertThat(events).extracting(Event::type).containsExactly(EventType.REGISTER, EventType.REGISTER);
+    assertThat(events).extracting(event -> event.service().host()).containsExactly("host1", "host2");
+  }
+
+  @Test
+  public void shouldRampUpWeightOfNewInstances() {
+    configuration.setSlowStartWindow(10000);
+    ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+    when(eurekaRegistry.getScheduler()).thenReturn(scheduler);
+    when(clock.millis()).thenReturn(100000L);
+    List<Event> events = new ArrayList<>();
+
+    eurekaServiceDiscovery.listen(events::add);
+    verify(eurekaRegistry).subscribe(eq("APP"), argCaptor.capture());
+    InstanceInfo started = instance("1", "host1", InstanceInfo.InstanceStatus.UP, InstanceInfo.ActionType.ADDED);
+    started.setLeaseInfo(LeaseInfo.Builder.newBuilder().setServiceUpTimestamp(100000L).build());
+    argCaptor.getValue().onApplicationRefreshed("APP", null, ApplicationChangeSet.of(Collections.singletonList(started)));
+
+    ArgumentCaptor<Runnable> ramp = ArgumentCaptor.forClass(Runnable.class);
+    verify(scheduler).schedule(ramp.capture(), eq(1000L), eq(TimeUnit.MILLISECONDS));
+    when(clock.millis()).thenReturn(105000L);
+    ramp.getValue().run();
+    when(clock.millis()).thenReturn(110000L);
+    ramp.getValue().run();
+
+    // Plain handlers are given each step as the endpoint registered again with its new weight
+    assertThat(events).extracting(Event::type)
+        .containsExactly(EventType.REGISTER, EventType.UNREGISTER, EventType.REGISTER, EventType.UNREGISTER, EventType.REGISTER);
+    assertThat(events).filteredOn(event -> event.type() == EventType.REGISTER)
+        .extracting(event -> ((EurekaService) event.service()).weight()).containsExactly(1, 6, 10);
+    verify(scheduler, times(2)).schedule(any(Runnable.class), eq(1000L), eq(TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void shouldUpdateWeightInPlaceWhileRampingUp() {
+    configuration.setSlowStartWindow(10000);
+    ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+    when(eurekaRegistry.getScheduler()).thenReturn(scheduler);
+    when(clock.millis()).thenReturn(100000L);
+    UpdateRecordingHandler handler = new UpdateRecordingHandler();
+
+    eurekaServiceDiscovery.listen(handler);
+    verify(eurekaRegistry).subscribe(eq("APP"), argCaptor.capture());
+    InstanceInfo started = instance("1", "host1", InstanceInfo.InstanceStatus.UP, InstanceInfo.ActionType.ADDED);
+    started.setLeaseInfo(LeaseInfo.Builder.newBuilder().setServiceUpTimestamp(100000L).build());
+    argCaptor.getValue().onApplicationRefreshed("APP", null, ApplicationChangeSet.of(Collections.singletonList(started)));
+
+    ArgumentCaptor<Runnable> ramp = ArgumentCaptor.forClass(Runnable.class);
+    verify(scheduler).schedule(ramp.capture(), eq(1000L), eq(TimeUnit.MILLISECONDS));
+    when(clock.millis()).thenReturn(105000L);
+    ramp.getValue().run();
+    when(clock.millis()).thenReturn(110000L);
+    ramp.getValue().run();
+
+    assertThat(handler.events).extracting(Event::type).containsExactly(EventType.REGISTER);
+    assertThat(handler.updates).extracting(event -> ((EurekaService) event.service()).weight()).containsExactly(6, 10);
+    assertThat(handler.updates).extracting(event -> event.service().host()).containsOnly("host1");
+  }
+
+  @Test
+  public void shouldKeepLastKnownGoodEndpointsInPanic() throws Exception {
+    configuration.setPanicThreshold(50);
+    configuration.setPanicDuration(60000);
+    ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+    when(eurekaRegistry.getScheduler()).thenReturn(scheduler);
+    doReturn(mock(ScheduledFuture.class)).when(scheduler).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    when(clock.millis()).thenReturn(100000L);
+    when(eurekaServiceResolver.getServicesUpByApplicationName(configuration.getApplication())).thenReturn(
+        Arrays.asList(service("1", "host1"), service("2", "host2"), service("3", "host3")), Collections.emptyList());
+    List<Event> events = new ArrayList<>();
+
+    eurekaServiceDiscovery.listen(events::add);
+    verify(eurekaRegistry).subscribe(eq("APP"), argCaptor.capture());
+    // Deltas are reconciled against the whole application
+    InstanceInfo deleted = instance("1", "host1", InstanceInfo.InstanceStatus.UP, InstanceInfo.ActionType.DELETED);
+    argCaptor.getValue().onApplicationRefreshed("APP", null, ApplicationChangeSet.of(Collections.singletonList(deleted)));
+
+    assertThat(events).extracting(Event::type).containsOnly(EventType.REGISTER).hasSize(3);
+    assertThat(statistics.getPanics()).isEqualTo(1);
+    assertThat(statistics.getPanicking()).isEqualTo(1);
+
+    ArgumentCaptor<Runnable> check = ArgumentCaptor.forClass(Runnable.class);
+    verify(scheduler).schedule(check.capture(), eq(60000L), eq(TimeUnit.MILLISECONDS));
+    when(clock.millis()).thenReturn(160000L);
+    check.getValue().run();
+
+    assertThat(events).extracting(Event::type).filteredOn(type -> type == EventType.UNREGISTER).hasSize(3);
+    assertThat(statistics.getPanicking()).isZero();
+    eurekaServiceDiscovery.stop();
+    assertThat(statistics.getPanicking()).isZero();
+  }
+
+  @Test(timeout = 10000)
+  public void shouldOnlyPublishInstancesProbedHealthy() throws Exception {
+    Vertx vertx = Vertx.vertx();
+    ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    try {
+      CompletableFuture<HttpServer> started = new CompletableFuture<>();
+      vertx.createHttpServer()
+          .requestHandler(request -> request.response().setStatusCode(request.path().equals("/health") ? 200 : 503).end())
+          .listen(0, "localhost", result -> started.complete(result.result()));
+      String healthCheckUrl = "http://localhost:" + started.join().actualPort();
+      configuration.setHealthCheck(true);
+      ReflectionTestUtils.setField(eurekaServiceDiscovery, "vertx", vertx);
+      when(eurekaRegistry.getScheduler()).thenReturn(scheduler);
+      when(eurekaServiceResolver.getServicesUpByApplicationName(configuration.getApplication())).thenReturn(Arrays.asList(
+          healthChecked("1", healthCheckUrl + "/health"), healthChecked("2", healthCheckUrl + "/down")));
+      List<Event> events = new CopyOnWriteArrayList<>();
+
+      eurekaServiceDiscovery.listen(events::add);
+
+      while (events.isEmpty()) {
+        Thread.sleep(10);
+      }
+      // Let the probe of the unhealthy instance complete too
+      Thread.sleep(200);
+      assertThat(events).extracting(Event::type, event -> event.service().host())
+          .containsExactly(tuple(EventType.REGISTER, "host1"));
+      eurekaServiceDiscovery.stop();
+    } finally {
+      scheduler.shutdownNow();
+      vertx.close();
+    }
+  }
+
+  @Test
+  public void shouldPublishIpAddressOfInstances() {
+    configuration.setHostResolution(HostResolution.IP_ADDRESS);
+
+    assertThat(publishedHosts()).containsExactly("10.0.0.1");
+  }
+
+  @Test
+  public void shouldPublishIpAddressOfInstancesWhenGatewayUsesIpAddresses() {
+    when(eurekaRegistry.isUseIpAddress()).thenReturn(true);
+
+    assertThat(publishedHosts()).containsExactly("10.0.0.1");
+  }
+
+  @Test
+  public void shouldPreferHostResolutionOfApiOverGatewaySetting() {
+    when(eurekaRegistry.isUseIpAddress()).thenReturn(true);
+    configuration.setHostResolution(HostResolution.HOSTNAME);
+
+    assertThat(publishedHosts()).containsExactly("host1");
+  }
+
+  private List<String> publishedHosts() {
+    InstanceInfo instance = InstanceInfo.Builder.newBuilder()
+        .setAppName("APP")
+        .setInstanceId("1")
+        .setHostName("host1")
+        .setIPAddr("10.0.0.1")
+        .setStatus(InstanceInfo.InstanceStatus.UP)
+        .build();
+    when(eurekaServiceResolver.getServicesUpByApplicationName(configuration.getApplication()))
+        .thenReturn(Collections.singletonList(new EurekaService(instance)));
+    when(eurekaServiceResolver.getServicesUpByApplicationName(eq(configuration.getApplication()), any()))
+        .thenAnswer(invocation -> {
+          @SuppressWarnings("unchecked")
+          Function<InstanceInfo, EurekaService> factory = (Function<InstanceInfo, EurekaService>) invocation.getArguments()[1];
+          return Collections.singletonList(factory.apply(instance));
+        });
+    List<Event> events = new ArrayList<>();
+
+    eurekaServiceDiscovery.listen(events::add);
+
+    return events.stream().map(event -> event.service().host()).collect(Collectors.toList());
+  }
+
+  @Test(timeout = 10000)
+  public void shouldPublishInstancesOnceTheirHostIsResolved() throws Exception {
+    configuration.setHostResolution(HostResolution.RESOLVED);
+    ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    ExecutorService lookupExecutor = Executors.newSingleThreadExecutor();
+    try {
+      when(eurekaRegistry.getScheduler()).thenReturn(scheduler);
+      when(eurekaRegistry.getLookupExecutor()).thenReturn(lookupExecutor);
+      InstanceInfo instance = instance("1", "localhost", InstanceInfo.InstanceStatus.UP, InstanceInfo.ActionType.ADDED);
+      when(eurekaServiceResolver.getServicesUpByApplicationName(eq(configuration.getApplication()), any()))
+          .thenAnswer(invocation -> {
+            @SuppressWarnings("unchecked")
+            Function<InstanceInfo, EurekaService> factory = (Function<InstanceInfo, EurekaService>) invocation.getArguments()[1];
+            EurekaService service = factory.apply(instance);
+            return service == null ? Collections.emptyList() : Collections.singletonList(service);
+          });
+      List<Event> events = new CopyOnWriteArrayList<>();
+
+      eurekaServiceDiscovery.listen(events::add);
+      while (events.isEmpty()) {
+        Thread.sleep(10);
+      }
+
+      assertThat(events).extracting(Event::type, event -> event.service().host())
+          .containsExactly(tuple(EventType.REGISTER, InetAddress.getByName("localhost").getHostAddress()));
+      eurekaServiceDiscovery.stop();
+    } finally {
+      lookupExecutor.shutdownNow();
+      scheduler.shutdownNow();
+    }
+  }
+
+  private List<EndpointUpdateEvent> listenForUpdates(InstanceInfo previous, InstanceInfo next) {
+    List<String> metadataKeys = Collections.singletonList("weight");
+    when(eurekaServiceResolver.getServicesUpByApplicationName(configuration.getApplication())).thenReturn(
+        Collections.singletonList(new EurekaService(previous, metadataKeys)),
+        Collections.singletonList(new EurekaService(next, metadataKeys)));
+    UpdateRecordingHandler handler = new UpdateRecordingHandler();
+
+    eurekaServiceDiscovery.listen(handler);
+    verify(eurekaRegistry).subscribe(eq("APP"), argCaptor.capture());
+    argCaptor.getValue().onApplicationRefreshed("APP", null, ApplicationChangeSet.RECONCILE);
+
+    // Only the initial registration
+    assertThat(handler.events).hasSize(1);
+    return handler.updates;
+  }
+
+  private static InstanceInfo target(String host, int port, boolean secure) {
+    return InstanceInfo.Builder.newBuilder()
+        .setAppName("APP")
+        .setInstanceId("1")
+        .setHostName(host)
+        .setPort(port)
+        .setSecurePort(port)
+        .enablePort(InstanceInfo.PortType.SECURE, secure)
+        .setStatus(InstanceInfo.InstanceStatus.UP)
+        .build();
+  }
+
+  private static class UpdateRecordingHandler implements EndpointUpdateHandler, ChangeSetHandler {
+
+    private final List<Event> events = new ArrayList<>();
+    private final List<EndpointUpdateEvent> updates = new ArrayList<>();
+
+    @Override
+    public void handle(Event event) {
+      events.add(event);
+    }
+
+    @Override
+    public void handleUpdate(EndpointUpdateEvent event) {
+      updates.add(event);
+    }
+
+    @Override
+    public void handleChangeSet(EndpointChangeSet changeSet) {
+      fail("Events must not be batched");
+    }
+  }
+
+  private static EurekaService service(String id, String host) {
+    return new EurekaService(instance(id, host, InstanceInfo.InstanceStatus.UP, InstanceInfo.ActionType.ADDED));
+  }
+
+  private static EurekaService service(String id, String host, String zone) {
+    InstanceInfo instance = instance(id, host, InstanceInfo.InstanceStatus.UP, InstanceInfo.ActionType.ADDED);
+    instance.getMetadata().put("zone", zone);
+    return new EurekaService(instance);
+  }
+
+  private static EurekaService healthChecked(String id, String healthCheckUrl) {
+    return new EurekaService(InstanceInfo.Builder.newBuilder()
+        .setAppName("APP")
+        .setInstanceId(id)
+        .setHostName("host" + id)
+        .setPort(8080)
+        .setHealthCheckUrls(null, healthCheckUrl, null)
+        .setStatus(InstanceInfo.InstanceStatus.UP)
+        .build());
+  }
+
+  private static InstanceInfo vipInstance(String application, String id, String host, String vipAddress) {
+    InstanceInfo instance = InstanceInfo.Builder.newBuilder()
+        .setAppName(application)
+        .setInstanceId(id)
+        .setHostName(host)
+        .setVIPAddress(vipAddress)
+        .setStatus(InstanceInfo.InstanceStatus.UP)
+        .build();
+    instance.setActionType(InstanceInfo.ActionType.ADDED);
+    return instance;
+  }
+
+  private static InstanceInfo instance(String id, String host, InstanceInfo.InstanceStatus status, InstanceInfo.ActionType actionType) {
+    InstanceInfo instance = InstanceInfo.Builder.newBuilder()
+        .setAppName("APP")
+        .setInstanceId(id)
+        .setHostName(host)
+        .setPort(8080)
+        .setStatus(status)
+        .build();
+    instance.setActionType(actionType);
+    return instance;
+  }
+}
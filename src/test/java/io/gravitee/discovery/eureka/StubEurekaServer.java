@@ -0,0 +1,177 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.converters.wrappers.CodecWrappers;
+import com.netflix.discovery.converters.wrappers.EncoderWrapper;
+import com.netflix.discovery.shared.Application;
+import com.netflix.discovery.shared.Applications;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Minimal Eureka server answering the registry queries from an in-memory registry, with a configurable latency.
+ */
+public class StubEurekaServer {
+
+  private static final EncoderWrapper ENCODER = CodecWrappers.getEncoder(CodecWrappers.JacksonJson.class);
+
+  private final Applications applications = new Applications();
+  private final List<InstanceInfo> delta = new ArrayList<>();
+  private final List<String> requests = new CopyOnWriteArrayList<>();
+  private HttpServer server;
+  private ExecutorService executor;
+  private volatile long delay;
+  private String serviceUrl;
+
+  public void start() throws IOException {
+    // Instances added before the start are part of the initial registry only
+    dropDelta();
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    executor = Executors.newCachedThreadPool(runnable -> {
+      Thread thread = new Thread(runnable, "stub-eureka-server");
+      thread.setDaemon(true);
+      return thread;
+    });
+    server.setExecutor(executor);
+    server.createContext("/eureka/apps", this::handle);
+    server.start();
+    serviceUrl = "http://localhost:" + server.getAddress().getPort() + "/eureka/";
+  }
+
+  public void stop() {
+    if (server != null) {
+      server.stop(0);
+      executor.shutdownNow();
+      server = null;
+    }
+  }
+
+  /**
+   * Base URL of the server, still returned once stopped to simulate an unreachable Eureka.
+   */
+  public String serviceUrl() {
+    return serviceUrl;
+  }
+
+  /**
+   * Time in milliseconds taken to answer each request.
+   */
+  public void setDelay(long delay) {
+    this.delay = delay;
+  }
+
+  /**
+   * Paths of the requests received so far, relative to <code>/eureka/</code>.
+   */
+  public List<String> requests() {
+    return requests;
+  }
+
+  public synchronized void addInstance(String applicationName, String id, String host, int port) {
+    Application application = applications.getRegisteredApplications(applicationName);
+    if (application == null) {
+      application = new Application(applicationName);
+      applications.addApplication(application);
+    }
+    InstanceInfo instance = InstanceInfo.Builder.newBuilder()
+        .setAppName(applicationName)
+        .setInstanceId(id)
+        .setHostName(host)
+        .setIPAddr("127.0.0.1")
+        .setPort(port)
+        .setStatus(InstanceInfo.InstanceStatus.UP)
+        .build();
+    application.addInstance(instance);
+    applications.setAppsHashCode(applications.getReconcileHashCode());
+    recordDelta(instance, InstanceInfo.ActionType.ADDED);
+  }
+
+  public synchronized void removeInstance(String applicationName, String id) {
+    Application application = applications.getRegisteredApplications(applicationName);
+    InstanceInfo instance = application.getByInstanceId(id);
+    application.removeInstance(instance);
+    applications.setAppsHashCode(applications.getReconcileHashCode());
+    recordDelta(instance, InstanceInfo.ActionType.DELETED);
+  }
+
+  /**
+   * Forgets the changes not returned by a delta yet, so that the next delta leaves clients out of sync.
+   */
+  public synchronized void dropDelta() {
+    delta.clear();
+  }
+
+  private void recordDelta(InstanceInfo instance, InstanceInfo.ActionType actionType) {
+    InstanceInfo change = new InstanceInfo(instance);
+    change.setActionType(actionType);
+    delta.add(change);
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    requests.add(exchange.getRequestURI().getPath().substring("/eureka/".length()));
+    try {
+      if (delay > 0) {
+        Thread.sleep(delay);
+      }
+      String path = exchange.getRequestURI().getPath().substring("/eureka/apps".length()).replace("/", "");
+      Object entity;
+      synchronized (this) {
+        if (path.isEmpty()) {
+          entity = applications;
+        } else if ("delta".equals(path)) {
+          Applications changes = new Applications();
+          for (InstanceInfo instance : delta) {
+            Application application = changes.getRegisteredApplications(instance.getAppName());
+            if (application == null) {
+              application = new Application(instance.getAppName());
+              changes.addApplication(application);
+            }
+            application.addInstance(instance);
+          }
+          changes.setAppsHashCode(applications.getReconcileHashCode());
+          delta.clear();
+          entity = changes;
+        } else {
+          entity = applications.getRegisteredApplications(path);
+        }
+      }
+      // The body is always given so that the connection can be kept alive
+      byte[] body = entity == null ? "{}".getBytes(StandardCharsets.UTF_8)
+          : ENCODER.encode(entity).getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().add("Content-Type", "application/json");
+      exchange.sendResponseHeaders(entity == null ? 404 : 200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } finally {
+      exchange.close();
+    }
+  }
+}
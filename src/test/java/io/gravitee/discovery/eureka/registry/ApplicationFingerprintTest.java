@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.registry;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.shared.Application;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static com.netflix.appinfo.InstanceInfo.InstanceStatus.DOWN;
+import static com.netflix.appinfo.InstanceInfo.InstanceStatus.UP;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ApplicationFingerprintTest {
+
+  @Test
+  public void shouldBeEmptyForUnknownApplication() {
+    assertThat(ApplicationFingerprint.of(null)).isEqualTo(ApplicationFingerprint.EMPTY);
+    assertThat(ApplicationFingerprint.of(new Application("APP"))).isEqualTo(ApplicationFingerprint.EMPTY);
+  }
+
+  @Test
+  public void shouldNotDependOnInstancesOrder() {
+    InstanceInfo instance1 = instance("1", "host1", 8080, UP);
+    InstanceInfo instance2 = instance("2", "host2", 8080, UP);
+
+    assertThat(ApplicationFingerprint.of(new Application("APP", Arrays.asList(instance1, instance2))))
+        .isEqualTo(ApplicationFingerprint.of(new Application("APP", Arrays.asList(instance2, instance1))));
+  }
+
+  @Test
+  public void shouldChangeWhenStatusChanges() {
+    assertThat(fingerprint(instance("1", "host1", 8080, UP)))
+        .isNotEqualTo(fingerprint(instance("1", "host1", 8080, DOWN)));
+  }
+
+  @Test
+  public void shouldChangeWhenHostChanges() {
+    assertThat(fingerprint(instance("1", "host1", 8080, UP)))
+        .isNotEqualTo(fingerprint(instance("1", "host2", 8080, UP)));
+  }
+
+  @Test
+  public void shouldChangeWhenPortChanges() {
+    assertThat(fingerprint(instance("1", "host1", 8080, UP)))
+        .isNotEqualTo(fingerprint(instance("1", "host1", 8081, UP)));
+  }
+
+  @Test
+  public void shouldChangeWhenIpAddressChanges() {
+    InstanceInfo moved = new InstanceInfo.Builder(instance("1", "host1", 8080, UP)).setIPAddr("10.0.0.2").build();
+
+    assertThat(fingerprint(instance("1", "host1", 8080, UP))).isNotEqualTo(fingerprint(moved));
+  }
+
+  @Test
+  public void shouldChangeWhenMetadataChanges() {
+    InstanceInfo weighted = instance("1", "host1", 8080, UP);
+    weighted.getMetadata().put("weight", "10");
+
+    assertThat(fingerprint(instance("1", "host1", 8080, UP))).isNotEqualTo(fingerprint(weighted));
+  }
+
+  @Test
+  public void shouldChangeWhenInstanceIsReplaced() {
+    assertThat(fingerprint(instance("1", "host1", 8080, UP)))
+        .isNotEqualTo(fingerprint(instance("2", "host1", 8080, UP)));
+  }
+
+  @Test
+  public void shouldBeEqualForSameInstances() {
+    assertThat(fingerprint(instance("1", "host1", 8080, UP)))
+        .isEqualTo(fingerprint(instance("1", "host1", 8080, UP)));
+  }
+
+  private static ApplicationFingerprint fingerprint(InstanceInfo... instances) {
+    return ApplicationFingerprint.of(new Application("APP", Arrays.asList(instances)));
+  }
+
+  private static InstanceInfo instance(String id, String host, int port, InstanceInfo.InstanceStatus status) {
+    return InstanceInfo.Builder.newBuilder()
+        .setAppName("APP")
+        .setInstanceId(id)
+        .setHostName(host)
+        .setPort(port)
+        .setStatus(status)
+        .setLastDirtyTimestamp(1L)
+        .build();
+  }
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.registry;
+
+import com.netflix.discovery.CacheRefreshedEvent;
+import com.netflix.discovery.EurekaEvent;
+import com.netflix.discovery.shared.Application;
+import com.netflix.discovery.shared.transport.EurekaHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.netflix.discovery.shared.transport.EurekaHttpResponse.anEurekaHttpResponse;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+public class ApplicationsRegistryClientTest {
+
+  private EurekaHttpClient server1;
+  private EurekaHttpClient server2;
+  private ApplicationsRegistryClient client;
+  private BlockingQueue<EurekaEvent> refreshes;
+
+  @Before
+  public void setUp() {
+    server1 = mock(EurekaHttpClient.class);
+    server2 = mock(EurekaHttpClient.class);
+    client = new ApplicationsRegistryClient(null, Arrays.asList(server1, server2), RefreshInterval.fixed(3600000), 2);
+    refreshes = new LinkedBlockingQueue<>();
+    client.registerEventListener(refreshes::add);
+  }
+
+  @After
+  public void tearDown() {
+    client.shutdown();
+  }
+
+  @Test
+  public void shouldFetchOnlyWatchedApplications() {
+    Application app1 = new Application("APP1");
+    Application app2 = new Application("APP2");
+    when(server1.getApplication("APP1")).thenReturn(anEurekaHttpResponse(200, app1).build());
+    when(server1.getApplication("APP2")).thenReturn(anEurekaHttpResponse(200, app2).build());
+
+    client.watch(new HashSet<>(Arrays.asList("app1", "app2")));
+    awaitRefresh();
+
+    assertThat(client.getApplication("app1")).isSameAs(app1);
+    assertThat(client.getApplication("APP2")).isSameAs(app2);
+    verify(server1, never()).getApplications();
+    verify(server1, never()).getDelta();
+  }
+
+  @Test
+  public void shouldFetchOnlyNewlyWatchedApplications() {
+    when(server1.getApplication(anyString())).thenReturn(anEurekaHttpResponse(200, new Application("APP")).build());
+
+    client.watch(Collections.singleton("APP1"));
+    awaitRefresh();
+    client.watch(new HashSet<>(Arrays.asList("APP1", "APP2")));
+    awaitRefresh();
+
+    verify(server1, times(1)).getApplication("APP1");
+    verify(server1, times(1)).getApplication("APP2");
+  }
+
+  @Test
+  public void shouldForgetUnwatchedApplications() {
+    when(server1.getApplication("APP1")).thenReturn(anEurekaHttpResponse(200, new Application("APP1")).build());
+    client.watch(Collections.singleton("APP1"));
+    awaitRefresh();
+
+    client.watch(Collections.emptySet());
+
+    assertThat(client.getApplication("APP1")).isNull();
+  }
+
+  @Test
+  public void shouldFailoverToNextServer() {
+    Application app1 = new Application("APP1");
+    when(server1.getApplication("APP1")).thenThrow(new RuntimeException("connection refused"));
+    when(server2.getApplication("APP1")).thenReturn(anEurekaHttpResponse(200, app1).build());
+
+    client.watch(Collections.singleton("APP1"));
+    awaitRefresh();
+
+    assertThat(client.getApplication("APP1")).isSameAs(app1);
+  }
+
+  @Test
+  public void shouldKeepLastKnownApplicationWhenNoServerAnswers() {
+    Application app1 = new Application("APP1");
+    when(server1.getApplication("APP1")).thenReturn(anEurekaHttpResponse(200, app1).build());
+    client.watch(Collections.singleton("APP1"));
+    awaitRefresh();
+
+    when(server1.getApplication("APP1")).thenReturn(anEurekaHttpResponse(500, Application.class).build());
+    when(server2.getApplication("APP1")).thenThrow(new RuntimeException("connection refused"));
+    client.refresh();
+
+    assertThat(client.getApplication("APP1")).isSameAs(app1);
+  }
+
+  @Test
+  public void shouldRemoveUnknownApplication() {
+    when(server1.getApplication("APP1")).thenReturn(anEurekaHttpResponse(200, new Application("APP1")).build());
+    client.watch(Collections.singleton("APP1"));
+    awaitRefresh();
+
+    when(server1.getApplication("APP1")).thenReturn(anEurekaHttpResponse(404, Application.class).build());
+    client.refresh();
+
+    assertThat(client.getApplication("APP1")).isNull();
+  }
+
+  @Test
+  public void shouldNotBlockWhileFetchingNewlyWatchedApplications() throws InterruptedException {
+    Application app1 = new Application("APP1");
+    CountDownLatch answer = new CountDownLatch(1);
+    when(server1.getApplication("APP1")).thenAnswer(invocation -> {
+      answer.await(5, TimeUnit.SECONDS);
+      return anEurekaHttpResponse(200, app1).build();
+    });
+
+    client.watch(Collections.singleton("APP1"));
+
+    assertThat(client.getApplication("APP1")).isNull();
+    assertThat(refreshes).isEmpty();
+
+    answer.countDown();
+    awaitRefresh();
+
+    assertThat(client.getApplication("APP1")).isSameAs(app1);
+  }
+
+  @Test
+  public void shouldFireCacheRefreshedEventAfterRefresh() {
+    List<Object> events = new ArrayList<>();
+    client.registerEventListener(events::add);
+
+    client.refresh();
+
+    assertThat(events).hasSize(1);
+    assertThat(events.get(0)).isInstanceOf(CacheRefreshedEvent.class);
+  }
+
+  private void awaitRefresh() {
+    try {
+      assertThat(refreshes.poll(5, TimeUnit.SECONDS)).isInstanceOf(CacheRefreshedEvent.class);
+    } catch (InterruptedException ex) {
+      throw new AssertionError(ex);
+    }
+  }
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.registry;
+
+import com.netflix.appinfo.AmazonInfo;
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.appinfo.LeaseInfo;
+import com.netflix.discovery.converters.wrappers.CodecWrappers;
+import com.netflix.discovery.converters.wrappers.EncoderWrapper;
+import com.netflix.discovery.shared.Application;
+import com.netflix.discovery.shared.Applications;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EurekaJsonDecoderTest {
+
+  private static final EncoderWrapper ENCODER = CodecWrappers.getEncoder(CodecWrappers.JacksonJson.class);
+
+  @Test
+  public void shouldDecodeApplicationsEncodedByEurekaCodec() throws IOException {
+    Applications applications = new Applications();
+    Application app1 = new Application("APP1");
+    app1.addInstance(instance("APP1", "1", "host1"));
+    app1.addInstance(instance("APP1", "2", "host2"));
+    applications.addApplication(app1);
+    Application app2 = new Application("APP2");
+    app2.addInstance(instance("APP2", "3", "host3"));
+    applications.addApplication(app2);
+    applications.setAppsHashCode(applications.getReconcileHashCode());
+    applications.setVersion(3L);
+
+    Applications decoded = EurekaJsonDecoder.ALL_APPLICATIONS.decodeApplications(encode(applications));
+
+    assertThat(decoded.getAppsHashCode()).isEqualTo(applications.getAppsHashCode());
+    assertThat(decoded.getVersion()).isEqualTo(3L);
+    assertThat(decoded.getRegisteredApplications()).extracting(Application::getName).containsOnly("APP1", "APP2");
+    assertThat(decoded.getRegisteredApplications("APP1").getInstances()).hasSize(2);
+    assertThat(decoded.getReconcileHashCode()).isEqualTo(applications.getReconcileHashCode());
+
+    InstanceInfo expected = app1.getByInstanceId("1");
+    InstanceInfo instance = decoded.getRegisteredApplications("APP1").getByInstanceId("1");
+    assertThat(instance.getAppName()).isEqualTo("APP1");
+    assertThat(instance.getHostName()).isEqualTo("host1");
+    assertThat(instance.getIPAddr()).isEqualTo(expected.getIPAddr());
+    assertThat(instance.getStatus()).isEqualTo(InstanceInfo.InstanceStatus.UP);
+    assertThat(instance.getPort()).isEqualTo(8080);
+    assertThat(instance.isPortEnabled(InstanceInfo.PortType.UNSECURE)).isTrue();
+    assertThat(instance.getSecurePort()).isEqualTo(8443);
+    assertThat(instance.isPortEnabled(InstanceInfo.PortType.SECURE)).isTrue();
+    assertThat(instance.getVIPAddress()).isEqualTo("app-vip");
+    assertThat(instance.getSecureVipAddress()).isEqualTo("app-secure-vip");
+    assertThat(instance.getHealthCheckUrl()).isEqualTo("http://host1:8080/health");
+    assertThat(instance.getMetadata()).containsEntry("weight", "5");
+    assertThat(instance.getLeaseInfo().getRenewalIntervalInSecs()).isEqualTo(10);
+    assertThat(instance.getLeaseInfo().getServiceUpTimestamp()).isEqualTo(1234L);
+    assertThat(instance.getLastDirtyTimestamp()).isEqualTo(expected.getLastDirtyTimestamp());
+    assertThat(((AmazonInfo) instance.getDataCenterInfo()).get(AmazonInfo.MetaDataKey.availabilityZone))
+        .isEqualTo("eu-west-1a");
+  }
+
+  @Test
+  public void shouldDecodeDeltaActionTypes() throws IOException {
+    Applications delta = new Applications();
+    Application application = new Application("APP1");
+    InstanceInfo added = instance("APP1", "1", "host1");
+    added.setActionType(InstanceInfo.ActionType.ADDED);
+    InstanceInfo deleted = instance("APP1", "2", "host2");
+    deleted.setActionType(InstanceInfo.ActionType.DELETED);
+    application.addInstance(added);
+    application.addInstance(deleted);
+    delta.addApplication(application);
+
+    Applications decoded = EurekaJsonDecoder.ALL_APPLICATIONS.decodeApplications(encode(delta));
+
+    Application decodedApplication = decoded.getRegisteredApplications("APP1");
+    assertThat(decodedApplication.getByInstanceId("1").getActionType()).isEqualTo(InstanceInfo.ActionType.ADDED);
+    assertThat(decodedApplication.getByInstanceId("2").getActionType()).isEqualTo(InstanceInfo.ActionType.DELETED);
+  }
+
+  @Test
+  public void shouldDecodeSingleApplication() throws IOException {
+    Application application = new Application("APP1");
+    application.addInstance(instance("APP1", "1", "host1"));
+
+    Application decoded = EurekaJsonDecoder.ALL_APPLICATIONS.decodeApplication(encode(application));
+
+    assertThat(decoded.getName()).isEqualTo("APP1");
+    assertThat(decoded.getByInstanceId("1").getHostName()).isEqualTo("host1");
+  }
+
+  @Test
+  public void shouldDecodeSingleInstanceGivenAsObjectAndSkipUnknownFields() throws IOException {
+    String json = "{\"application\":{\"name\":\"APP1\",\"unknown\":{\"nested\":[1,2,{\"a\":null}]},"
+        + "\"instance\":{\"instanceId\":\"1\",\"app\":\"APP1\",\"hostName\":\"host1\",\"status\":\"DOWN\","
+        + "\"port\":8081,\"securePort\":{\"$\":\"8443\",\"@enabled\":\"false\"},\"countryId\":1,"
+        + "\"metadata\":{\"@class\":\"java.util.Collections$EmptyMap\"},"
+        + "\"dataCenterInfo\":{\"@class\":\"com.netflix.appinfo.InstanceInfo$DefaultDataCenterInfo\",\"name\":\"MyOwn\"},"
+        + "\"lastDirtyTimestamp\":\"1500\",\"homePageUrl\":\"http://host1:8081/\"}}}";
+
+    Application decoded = EurekaJsonDecoder.ALL_APPLICATIONS.decodeApplication(
+        new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+
+    InstanceInfo instance = decoded.getByInstanceId("1");
+    assertThat(instance.getStatus()).isEqualTo(InstanceInfo.InstanceStatus.DOWN);
+    assertThat(instance.getPort()).isEqualTo(8081);
+    assertThat(instance.getSecurePort()).isEqualTo(8443);
+    assertThat(instance.isPortEnabled(InstanceInfo.PortType.SECURE)).isFalse();
+    assertThat(instance.getMetadata()).isEmpty();
+    assertThat(instance.getLastDirtyTimestamp()).isEqualTo(1500L);
+  }
+
+  @Test
+  public void shouldOnlyKeepStatusOfFilteredOutApplications() throws IOException {
+    Applications applications = new Applications();
+    Application app1 = new Application("APP1");
+    app1.addInstance(instance("APP1", "1", "host1"));
+    applications.addApplication(app1);
+    Application app2 = new Application("APP2");
+    app2.addInstance(instance("APP2", "2", "host2"));
+    applications.addApplication(app2);
+
+    Applications decoded = new EurekaJsonDecoder("APP1"::equals).decodeApplications(encode(applications));
+
+    assertThat(decoded.getReconcileHashCode()).isEqualTo(applications.getReconcileHashCode());
+    assertThat(decoded.getRegisteredApplications("APP1").getByInstanceId("1").getHostName()).isEqualTo("host1");
+    InstanceInfo filtered = decoded.getRegisteredApplications("APP2").getByInstanceId("2");
+    assertThat(filtered.getStatus()).isEqualTo(InstanceInfo.InstanceStatus.UP);
+    assertThat(filtered.getHostName()).isNull();
+    assertThat(filtered.getMetadata()).isEmpty();
+  }
+
+  private static InstanceInfo instance(String application, String id, String host) {
+    return InstanceInfo.Builder.newBuilder()
+        .setAppName(application)
+        .setInstanceId(id)
+        .setHostName(host)
+        .setIPAddr("10.0.0." + id)
+        .setPort(8080)
+        .setSecurePort(8443)
+        .enablePort(InstanceInfo.PortType.SECURE, true)
+        .setVIPAddress("app-vip")
+        .setSecureVIPAddress("app-secure-vip")
+        .setHealthCheckUrls(null, "http://" + host + ":8080/health", null)
+        .setStatus(InstanceInfo.InstanceStatus.UP)
+        .setMetadata(Collections.singletonMap("weight", "5"))
+        .setLeaseInfo(LeaseInfo.Builder.newBuilder().setRenewalIntervalInSecs(10).setServiceUpTimestamp(1234L).build())
+        .setDataCenterInfo(AmazonInfo.Builder.newBuilder()
+            .addMetadata(AmazonInfo.MetaDataKey.availabilityZone, "eu-west-1a")
+            .addMetadata(AmazonInfo.MetaDataKey.instanceId, "i-" + id)
+            .build())
+        .build();
+  }
+
+  private static InputStream encode(Object entity) throws IOException {
+    return new ByteArrayInputStream(ENCODER.encode(entity).getBytes(StandardCharsets.UTF_8));
+  }
+}
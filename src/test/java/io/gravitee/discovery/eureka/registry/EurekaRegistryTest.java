@@ -0,0 +1,361 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.registry;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.CacheRefreshedEvent;
+import com.netflix.discovery.EurekaEvent;
+import com.netflix.discovery.EurekaEventListener;
+import com.netflix.discovery.shared.Application;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+public class EurekaRegistryTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private RegistryClient registryClient;
+  private EurekaEventListener eventListener;
+  private AtomicInteger created;
+  private EurekaRegistry registry;
+
+  @Before
+  public void setUp() {
+    registryClient = mock(RegistryClient.class);
+    when(registryClient.drainChanges()).thenReturn(RegistryChanges.reconcile());
+    created = new AtomicInteger();
+    registry = acquire();
+
+    ArgumentCaptor<EurekaEventListener> captor = ArgumentCaptor.forClass(EurekaEventListener.class);
+    verify(registryClient).registerEventListener(captor.capture());
+    eventListener = captor.getValue();
+  }
+
+  @After
+  public void tearDown() {
+    while (EurekaRegistry.references() > 0) {
+      registry.release();
+    }
+  }
+
+  @Test
+  public void shouldShareSingleClientAcrossUsers() {
+    EurekaRegistry other = acquire();
+
+    assertThat(other).isSameAs(registry);
+    assertThat(created.get()).isEqualTo(1);
+    assertThat(EurekaRegistry.references()).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldShutdownClientOnlyWhenLastUserReleases() {
+    acquire();
+
+    registry.release();
+    verify(registryClient, never()).shutdown();
+
+    registry.release();
+    verify(registryClient).shutdown();
+    assertThat(EurekaRegistry.references()).isZero();
+  }
+
+  @Test
+  public void shouldCreateNewClientAfterLastRelease() {
+    registry.release();
+
+    EurekaRegistry other = acquire();
+
+    assertThat(other).isNotSameAs(registry);
+    assertThat(created.get()).isEqualTo(2);
+    other.release();
+  }
+
+  @Test
+  public void shouldNotifyOnlySubscribersOfRefreshedApplication() {
+    List<String> notified = new ArrayList<>();
+    registry.subscribe("app1", (application, fingerprint, changes) -> notified.add(application));
+    registry.subscribe("APP2", (application, fingerprint, changes) -> notified.add(application));
+
+    eventListener.onEvent(new CacheRefreshedEvent());
+
+    assertThat(notified).containsOnly("APP1", "APP2");
+  }
+
+  @Test
+  public void shouldNotNotifyForOtherEurekaEvents() {
+    registry.subscribe("app1", (application, fingerprint, changes) -> {
+      throw new AssertionError("no refresh expected");
+    });
+
+    eventListener.onEvent(new EurekaEvent() {});
+  }
+
+  @Test
+  public void shouldNotNotifyUnsubscribedListener() {
+    List<String> notified = new ArrayList<>();
+    ApplicationListener listener = (application, fingerprint, changes) -> notified.add(application);
+    registry.subscribe("app1", listener);
+    registry.unsubscribe("app1", listener);
+
+    eventListener.onEvent(new CacheRefreshedEvent());
+
+    assertThat(notified).isEmpty();
+  }
+
+  @Test
+  public void shouldWatchSubscribedApplications() {
+    ApplicationListener listener1 = (application, fingerprint, changes) -> {};
+    ApplicationListener listener2 = (application, fingerprint, changes) -> {};
+
+    registry.subscribe("app1", listener1);
+    verify(registryClient).watch(Collections.singleton("APP1"));
+
+    registry.subscribe("app2", listener2);
+    verify(registryClient).watch(new HashSet<>(Arrays.asList("APP1", "APP2")));
+
+    registry.subscribe("APP2", (application, fingerprint, changes) -> {});
+    registry.unsubscribe("app1", listener1);
+    verify(registryClient).watch(Collections.singleton("APP2"));
+    verify(registryClient, times(3)).watch(anySetOf(String.class));
+  }
+
+  @Test
+  public void shouldGiveApplicationFingerprintToListeners() {
+    Application application = new Application("APP1");
+    application.addInstance(InstanceInfo.Builder.newBuilder().setAppName("APP1").setInstanceId("1").setHostName("host1").build());
+    when(registryClient.getApplication("APP1")).thenReturn(application);
+    List<ApplicationFingerprint> fingerprints = new ArrayList<>();
+    registry.subscribe("app1", (app, fingerprint, changes) -> fingerprints.add(fingerprint));
+
+    eventListener.onEvent(new CacheRefreshedEvent());
+
+    assertThat(fingerprints).containsExactly(ApplicationFingerprint.of(application));
+    assertThat(registry.fingerprint("app1")).isEqualTo(ApplicationFingerprint.of(application));
+  }
+
+  @Test
+  public void shouldNotifyOnlyApplicationsChangedByDelta() {
+    InstanceInfo instance = InstanceInfo.Builder.newBuilder().setAppName("APP1").setInstanceId("1").setHostName("host1").build();
+    instance.setActionType(InstanceInfo.ActionType.ADDED);
+    ApplicationChangeSet changeSet = ApplicationChangeSet.of(Collections.singletonList(instance));
+    when(registryClient.drainChanges()).thenReturn(RegistryChanges.of(Collections.singletonMap("APP1", changeSet)));
+    List<ApplicationChangeSet> notified = new ArrayList<>();
+    registry.subscribe("app1", (application, fingerprint, changes) -> notified.add(changes));
+    registry.subscribe("app2", (application, fingerprint, changes) -> {
+      throw new AssertionError("no refresh expected");
+    });
+
+    eventListener.onEvent(new CacheRefreshedEvent());
+
+    assertThat(notified).containsExactly(changeSet);
+    assertThat(registry.getStatistics().getSkippedRefreshes()).isEqualTo(1);
+    // Only the delta is applied, the application does not have to be read
+    verify(registryClient, never()).getApplication(anyString());
+  }
+
+  @Test
+  public void shouldNotifyRegistryWideSubscribersOnceWithAllChanges() {
+    InstanceInfo instance1 = InstanceInfo.Builder.newBuilder().setAppName("APP1").setInstanceId("1").setHostName("host1").build();
+    InstanceInfo instance2 = InstanceInfo.Builder.newBuilder().setAppName("APP2").setInstanceId("2").setHostName("host2").build();
+    Map<String, ApplicationChangeSet> changeSets = new LinkedHashMap<>();
+    changeSets.put("APP1", ApplicationChangeSet.of(Collections.singletonList(instance1)));
+    changeSets.put("APP2", ApplicationChangeSet.of(Collections.singletonList(instance2)));
+    when(registryClient.drainChanges()).thenReturn(RegistryChanges.of(changeSets),
+        RegistryChanges.of(Collections.singletonMap("APP1", ApplicationChangeSet.RECONCILE)),
+        RegistryChanges.of(Collections.emptyMap()));
+    List<ApplicationChangeSet> notified = new ArrayList<>();
+    ApplicationListener listener = (application, fingerprint, changes) -> {
+      assertThat(application).isNull();
+      notified.add(changes);
+    };
+    registry.subscribeAll(listener);
+
+    eventListener.onEvent(new CacheRefreshedEvent());
+    eventListener.onEvent(new CacheRefreshedEvent());
+    eventListener.onEvent(new CacheRefreshedEvent());
+    registry.unsubscribeAll(listener);
+    eventListener.onEvent(new CacheRefreshedEvent());
+
+    assertThat(notified).hasSize(2);
+    assertThat(notified.get(0).getInstances()).containsExactly(instance1, instance2);
+    assertThat(notified.get(1).isReconcile()).isTrue();
+    assertThat(registry.getStatistics().getSkippedRefreshes()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldWatchAndReconcileSubscribersOnceClientIsStarted() {
+    RegistryClient startingClient = mock(RegistryClient.class);
+    when(startingClient.drainChanges()).thenReturn(RegistryChanges.reconcile());
+    CompletableFuture<RegistryClient> starting = new CompletableFuture<>();
+    EurekaRegistry startingRegistry = new EurekaRegistry(starting, 0);
+    List<String> notified = new ArrayList<>();
+    startingRegistry.subscribe("app1", (application, fingerprint, changes) -> notified.add(application));
+
+    assertThat(startingRegistry.awaitStarted()).isFalse();
+    assertThat(startingRegistry.getApplication("APP1")).isNull();
+    assertThat(notified).isEmpty();
+
+    starting.complete(startingClient);
+
+    assertThat(startingRegistry.awaitStarted()).isTrue();
+    verify(startingClient).registerEventListener(any(EurekaEventListener.class));
+    verify(startingClient).watch(Collections.singleton("APP1"));
+    assertThat(notified).containsExactly("APP1");
+  }
+
+  @Test
+  public void shouldShutdownClientStartedAfterRelease() {
+    RegistryClient startingClient = mock(RegistryClient.class);
+    CompletableFuture<RegistryClient> starting = new CompletableFuture<>();
+    EurekaRegistry startingRegistry = new EurekaRegistry(starting, 0);
+
+    startingRegistry.shutdown();
+    starting.complete(startingClient);
+
+    verify(startingClient).shutdown();
+    verify(startingClient, never()).registerEventListener(any(EurekaEventListener.class));
+  }
+
+  @Test
+  public void shouldRetryFailedStartOnNextAcquire() {
+    registry.release();
+    RegistryClient startedClient = mock(RegistryClient.class);
+    when(startedClient.drainChanges()).thenReturn(RegistryChanges.reconcile());
+    CompletableFuture<RegistryClient> failed = new CompletableFuture<>();
+    failed.completeExceptionally(new IllegalStateException("No Eureka server"));
+    AtomicInteger starts = new AtomicInteger();
+    EurekaRegistry failing = EurekaRegistry.acquire(() -> new EurekaRegistry(
+        () -> starts.getAndIncrement() == 0 ? failed : CompletableFuture.completedFuture(startedClient),
+        0, null, null));
+    registry = failing;
+
+    assertThat(failing.awaitStarted()).isFalse();
+    assertThat(EurekaRegistry.acquire(() -> null)).isSameAs(failing);
+
+    assertThat(starts.get()).isEqualTo(2);
+    assertThat(failing.awaitStarted()).isTrue();
+    verify(startedClient).registerEventListener(any(EurekaEventListener.class));
+  }
+
+  @Test
+  public void shouldNotCreateExecutorsAfterShutdown() {
+    EurekaRegistry stoppedRegistry = new EurekaRegistry(registryClient);
+    stoppedRegistry.shutdown();
+
+    assertThatThrownBy(stoppedRegistry::getScheduler).isInstanceOf(RejectedExecutionException.class);
+    assertThatThrownBy(stoppedRegistry::getLookupExecutor).isInstanceOf(RejectedExecutionException.class);
+  }
+
+  @Test(timeout = 5000)
+  public void shouldWaitForClientUntilWarmupDeadline() {
+    EurekaRegistry startingRegistry = new EurekaRegistry(new CompletableFuture<>(), 100);
+
+    long start = System.currentTimeMillis();
+    assertThat(startingRegistry.awaitStarted()).isFalse();
+
+    assertThat(System.currentTimeMillis() - start).isGreaterThanOrEqualTo(50);
+  }
+
+  @Test
+  public void shouldUseRestoredApplicationsUntilRegistryIsFetched() throws Exception {
+    Application restored = new Application("APP1");
+    restored.addInstance(InstanceInfo.Builder.newBuilder().setAppName("APP1").setInstanceId("1").setHostName("host1").build());
+    RegistrySnapshot snapshot = new RegistrySnapshot(folder.getRoot().toPath().resolve("registry.snapshot"), 0, 0);
+    snapshot.write(Collections.singletonList(restored));
+    Application fetched = new Application("APP1");
+    RegistryClient startingClient = mock(RegistryClient.class);
+    when(startingClient.getApplication("APP1")).thenReturn(fetched);
+    when(startingClient.drainChanges()).thenReturn(RegistryChanges.of(Collections.emptyMap()));
+    CompletableFuture<RegistryClient> starting = new CompletableFuture<>();
+    EurekaRegistry restoredRegistry = new EurekaRegistry(starting, 60000, snapshot);
+    List<ApplicationChangeSet> notified = new ArrayList<>();
+    restoredRegistry.subscribe("app1", (application, fingerprint, changes) -> notified.add(changes));
+
+    // Restored applications are available right away, there is no need to wait for the client
+    assertThat(restoredRegistry.awaitStarted()).isFalse();
+    assertThat(restoredRegistry.getApplication("app1").getByInstanceId("1").getHostName()).isEqualTo("host1");
+
+    // Eureka is unreachable, the client is started without registry
+    starting.complete(startingClient);
+    assertThat(restoredRegistry.getApplication("app1").getInstances()).hasSize(1);
+
+    when(startingClient.isRegistryFetched()).thenReturn(true);
+    ArgumentCaptor<EurekaEventListener> captor = ArgumentCaptor.forClass(EurekaEventListener.class);
+    verify(startingClient).registerEventListener(captor.capture());
+    notified.clear();
+    captor.getValue().onEvent(new CacheRefreshedEvent());
+
+    assertThat(restoredRegistry.getApplication("APP1")).isSameAs(fetched);
+    // Listeners have to reconcile even if the fetched registry looks unchanged
+    assertThat(notified).containsExactly(ApplicationChangeSet.RECONCILE);
+    restoredRegistry.shutdown();
+  }
+
+  @Test(timeout = 5000)
+  public void shouldWriteWatchedApplicationsToSnapshotOnceFetched() throws Exception {
+    Application application = new Application("APP1");
+    application.addInstance(InstanceInfo.Builder.newBuilder().setAppName("APP1").setInstanceId("1").setHostName("host1").build());
+    when(registryClient.getApplication("APP1")).thenReturn(application);
+    Path file = folder.getRoot().toPath().resolve("registry.snapshot");
+    RegistryClient fetchingClient = registryClient;
+    EurekaRegistry snapshotRegistry = new EurekaRegistry(CompletableFuture.completedFuture(fetchingClient), 0,
+        new RegistrySnapshot(file, 0, 0));
+    snapshotRegistry.subscribe("app1", (app, fingerprint, changes) -> {});
+    ArgumentCaptor<EurekaEventListener> captor = ArgumentCaptor.forClass(EurekaEventListener.class);
+    verify(fetchingClient, times(2)).registerEventListener(captor.capture());
+
+    captor.getValue().onEvent(new CacheRefreshedEvent());
+    assertThat(file).doesNotExist();
+
+    when(fetchingClient.isRegistryFetched()).thenReturn(true);
+    captor.getValue().onEvent(new CacheRefreshedEvent());
+    while (!Files.exists(file)) {
+      Thread.sleep(10);
+    }
+
+    assertThat(new RegistrySnapshot(file, 0, 0).load()).containsOnlyKeys("APP1");
+    snapshotRegistry.shutdown();
+  }
+
+  private EurekaRegistry acquire() {
+    return EurekaRegistry.acquire(() -> {
+      created.incrementAndGet();
+      return new EurekaRegistry(registryClient);
+    });
+  }
+}
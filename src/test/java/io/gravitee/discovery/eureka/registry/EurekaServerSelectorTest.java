@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.registry;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EurekaServerSelectorTest {
+
+  private EurekaServerSelector<String> selector;
+
+  @Before
+  public void setUp() {
+    selector = new EurekaServerSelector<>(Arrays.asList("a", "b", "c"), Function.identity(), 1000, 3, 0.66);
+  }
+
+  @Test
+  public void shouldTryEachServerOnceThenPreferFastest() {
+    assertThat(selector.select(0)).containsExactly("a", "b", "c");
+
+    selector.onSuccess("a", 50, 0);
+    assertThat(selector.select(0)).containsExactly("b", "c", "a");
+
+    selector.onSuccess("b", 20, 0);
+    selector.onSuccess("c", 40, 0);
+    assertThat(selector.select(0)).containsExactly("b", "c", "a");
+    assertThat(selector.getStatistics()).extracting(EurekaServerStatistics::getLatency).containsExactly(50d, 20d, 40d);
+  }
+
+  @Test
+  public void shouldAverageLatency() {
+    selector.onSuccess("a", 100, 0);
+    selector.onSuccess("a", 200, 0);
+
+    assertThat(selector.getStatistics().get(0).getLatency()).isEqualTo(130d);
+    assertThat(selector.getStatistics().get(0).getRequests()).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldQuarantineFailingServerUntilDelayExpires() {
+    selector.onSuccess("a", 10, 0);
+    selector.onSuccess("b", 10, 0);
+    selector.onSuccess("c", 10, 0);
+
+    selector.onFailure("a", 0);
+
+    EurekaServerStatistics statistics = selector.getStatistics().get(0);
+    assertThat(statistics.getFailures()).isEqualTo(1);
+    assertThat(statistics.getErrorRate()).isEqualTo(EurekaServerStatistics.ALPHA);
+    assertThat(selector.select(500)).containsExactly("b", "c", "a");
+    assertThat(selector.select(1000)).containsExactly("b", "c", "a");
+    assertThat(statistics.isQuarantined(1000)).isFalse();
+  }
+
+  @Test
+  public void shouldNotQuarantineServersWhenOnlyQuarantinedServerSucceeds() {
+    selector.onFailure("a", 0);
+    selector.onSuccess("a", 10, 0);
+
+    assertThat(selector.getStatistics()).extracting(statistics -> statistics.isQuarantined(0))
+        .containsExactly(true, false, false);
+  }
+
+  @Test
+  public void shouldQuarantineSlowServer() {
+    selector.onSuccess("a", 10, 0);
+    selector.onSuccess("b", 100, 0);
+    selector.onSuccess("c", 20, 0);
+
+    assertThat(selector.getStatistics()).extracting(statistics -> statistics.isQuarantined(0))
+        .containsExactly(false, true, false);
+  }
+
+  @Test
+  public void shouldMeasureSlowServerAgainOnceReleased() {
+    selector.onSuccess("a", 500, 0);
+    selector.onSuccess("b", 20, 0);
+    selector.onSuccess("c", 20, 0);
+    assertThat(selector.getStatistics().get(0).isQuarantined(0)).isTrue();
+    assertThat(selector.select(0)).containsExactly("b", "c", "a");
+
+    assertThat(selector.select(1000)).containsExactly("a", "b", "c");
+    selector.onSuccess("a", 10, 1000);
+
+    assertThat(selector.select(1000)).containsExactly("a", "b", "c");
+  }
+
+  @Test
+  public void shouldLiftQuarantineWhenMostServersAreQuarantined() {
+    selector.onFailure("a", 0);
+    assertThat(selector.select(0)).containsExactly("b", "c", "a");
+
+    selector.onFailure("b", 0);
+    assertThat(selector.select(0)).containsExactly("c", "a", "b");
+    assertThat(selector.getStatistics()).allMatch(statistics -> !statistics.isQuarantined(0));
+  }
+}
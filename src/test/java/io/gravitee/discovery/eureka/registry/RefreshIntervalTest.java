@@ -0,0 +1,73 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.registry;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RefreshIntervalTest {
+
+  @Test
+  public void shouldAlwaysUseFixedInterval() {
+    RefreshInterval interval = RefreshInterval.fixed(30000);
+
+    assertThat(interval.next(true)).isEqualTo(30000);
+    for (int i = 0; i < 20; i++) {
+      assertThat(interval.next(false)).isEqualTo(30000);
+    }
+  }
+
+  @Test
+  public void shouldShortenIntervalWhileWatchedApplicationsChange() {
+    RefreshInterval interval = new RefreshInterval(30000, 5000, 120000, 3, 0);
+
+    assertThat(interval.next(true)).isEqualTo(15000);
+    assertThat(interval.next(true)).isEqualTo(7500);
+    assertThat(interval.next(true)).isEqualTo(5000);
+    assertThat(interval.next(true)).isEqualTo(5000);
+  }
+
+  @Test
+  public void shouldBackOffAfterIdleRefreshes() {
+    RefreshInterval interval = new RefreshInterval(30000, 5000, 120000, 3, 0);
+
+    assertThat(interval.next(false)).isEqualTo(30000);
+    assertThat(interval.next(false)).isEqualTo(30000);
+    assertThat(interval.next(false)).isEqualTo(60000);
+    assertThat(interval.next(true)).isEqualTo(30000);
+    for (int i = 0; i < 12; i++) {
+      interval.next(false);
+    }
+    assertThat(interval.current()).isEqualTo(120000);
+  }
+
+  @Test
+  public void shouldApplyJitter() {
+    RefreshInterval interval = new RefreshInterval(30000, 5000, 120000, 1000, 0.1);
+
+    long min = Long.MAX_VALUE;
+    long max = Long.MIN_VALUE;
+    for (int i = 0; i < 200; i++) {
+      long next = interval.next(false);
+      min = Math.min(min, next);
+      max = Math.max(max, next);
+    }
+
+    assertThat(min).isBetween(27000L, 29500L);
+    assertThat(max).isBetween(30500L, 33000L);
+  }
+}
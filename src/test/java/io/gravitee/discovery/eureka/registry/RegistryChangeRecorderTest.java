@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.registry;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.shared.Application;
+import com.netflix.discovery.shared.Applications;
+import com.netflix.discovery.shared.transport.EurekaHttpClient;
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.netflix.discovery.shared.transport.EurekaHttpResponse.anEurekaHttpResponse;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+public class RegistryChangeRecorderTest {
+
+  private RegistryChangeRecorder recorder;
+  private EurekaHttpClient server;
+  private EurekaHttpClient client;
+
+  @Before
+  public void setUp() {
+    recorder = new RegistryChangeRecorder();
+    server = mock(EurekaHttpClient.class);
+    client = recorder.decorate(server);
+  }
+
+  @Test
+  public void shouldReconcileBeforeFirstDelta() {
+    assertThat(recorder.drain().isReconcile()).isTrue();
+    assertThat(recorder.drain().isReconcile()).isFalse();
+  }
+
+  @Test
+  public void shouldRecordDeltaPerApplication() {
+    recorder.drain();
+    when(server.getDelta()).thenReturn(anEurekaHttpResponse(200, delta(
+        instance("APP1", "1", InstanceInfo.ActionType.ADDED),
+        instance("APP1", "2", InstanceInfo.ActionType.DELETED),
+        instance("app2", "3", InstanceInfo.ActionType.MODIFIED))).build());
+
+    client.getDelta();
+    RegistryChanges changes = recorder.drain();
+
+    assertThat(changes.isReconcile()).isFalse();
+    assertThat(changes.get("APP1").getInstances()).extracting(InstanceInfo::getId).containsExactly("1", "2");
+    assertThat(changes.get("APP2").getInstances()).extracting(InstanceInfo::getActionType)
+        .containsExactly(InstanceInfo.ActionType.MODIFIED);
+    assertThat(changes.get("APP3")).isNull();
+    assertThat(recorder.drain().get("APP1")).isNull();
+  }
+
+  @Test
+  public void shouldReconcileApplicationFetchedOnItsOwn() {
+    recorder.drain();
+    when(server.getDelta()).thenReturn(anEurekaHttpResponse(200, delta(instance("APP1", "1", InstanceInfo.ActionType.ADDED))).build());
+
+    client.getDelta();
+    recorder.onApplicationFetch("app1");
+    RegistryChanges changes = recorder.drain();
+
+    assertThat(changes.isReconcile()).isFalse();
+    assertThat(changes.get("APP1").isReconcile()).isTrue();
+    assertThat(changes.get("APP2")).isNull();
+  }
+
+  @Test
+  public void shouldReconcileAfterFullFetch() {
+    recorder.drain();
+    when(server.getDelta()).thenReturn(anEurekaHttpResponse(200, delta(instance("APP1", "1", InstanceInfo.ActionType.ADDED))).build());
+    when(server.getApplications()).thenReturn(anEurekaHttpResponse(200, new Applications()).build());
+
+    // Hash mismatch: the delta is followed by a full fetch
+    client.getDelta();
+    client.getApplications();
+    RegistryChanges changes = recorder.drain();
+
+    assertThat(changes.isReconcile()).isTrue();
+    assertThat(changes.get("APP2").isReconcile()).isTrue();
+  }
+
+  @Test
+  public void shouldIgnoreFailedResponses() {
+    recorder.drain();
+    when(server.getApplications()).thenReturn(anEurekaHttpResponse(500, Applications.class).build());
+
+    client.getApplications();
+
+    assertThat(recorder.drain().isReconcile()).isFalse();
+  }
+
+  private static Applications delta(InstanceInfo... instances) {
+    Applications applications = new Applications();
+    for (InstanceInfo instance : instances) {
+      Application application = applications.getRegisteredApplications(instance.getAppName());
+      if (application == null) {
+        application = new Application(instance.getAppName());
+        applications.addApplication(application);
+      }
+      application.addInstance(instance);
+    }
+    return applications;
+  }
+
+  private static InstanceInfo instance(String application, String id, InstanceInfo.ActionType actionType) {
+    InstanceInfo instance = InstanceInfo.Builder.newBuilder().setAppName(application).setInstanceId(id).setHostName("host" + id).build();
+    instance.setActionType(actionType);
+    return instance;
+  }
+}
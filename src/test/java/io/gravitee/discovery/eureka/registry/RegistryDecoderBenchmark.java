@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.registry;
+
+import com.netflix.appinfo.AmazonInfo;
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.appinfo.LeaseInfo;
+import com.netflix.discovery.converters.wrappers.CodecWrapper;
+import com.netflix.discovery.converters.wrappers.CodecWrappers;
+import com.netflix.discovery.shared.Application;
+import com.netflix.discovery.shared.Applications;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the default Eureka codec and the streaming decoder on a registry of 2500 applications of 20 instances.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class RegistryDecoderBenchmark {
+
+  private static final int INSTANCES_PER_APPLICATION = 20;
+
+  @Param("2500")
+  private int applications;
+
+  private byte[] payload;
+  private CodecWrapper jacksonCodec;
+  private EurekaJsonDecoder watchedDecoder;
+
+  @Setup
+  public void setUp() throws IOException {
+    Applications registry = new Applications();
+    for (int i = 0; i < applications; i++) {
+      Application application = new Application("APP" + i);
+      for (int j = 0; j < INSTANCES_PER_APPLICATION; j++) {
+        application.addInstance(instance(application.getName(), i + "-" + j));
+      }
+      registry.addApplication(application);
+    }
+    registry.setAppsHashCode(registry.getReconcileHashCode());
+
+    jacksonCodec = CodecWrappers.getCodec(CodecWrappers.JacksonJson.class);
+    payload = jacksonCodec.encode(registry).getBytes(StandardCharsets.UTF_8);
+    // A gateway usually watches a handful of the registered applications
+    watchedDecoder = new EurekaJsonDecoder(name -> name.equals("APP1") || name.equals("APP2"));
+  }
+
+  @Benchmark
+  public Applications jacksonCodec() throws IOException {
+    return jacksonCodec.decode(new ByteArrayInputStream(payload), Applications.class);
+  }
+
+  @Benchmark
+  public Applications streamingAllApplications() throws IOException {
+    return EurekaJsonDecoder.ALL_APPLICATIONS.decodeApplications(new ByteArrayInputStream(payload));
+  }
+
+  @Benchmark
+  public Applications streamingWatchedApplications() throws IOException {
+    return watchedDecoder.decodeApplications(new ByteArrayInputStream(payload));
+  }
+
+  private static InstanceInfo instance(String application, String id) {
+    Map<String, String> metadata = new HashMap<>();
+    metadata.put("weight", "5");
+    metadata.put("zone", "eu-west-1a");
+    metadata.put("management.port", "8081");
+    return InstanceInfo.Builder.newBuilder()
+        .setAppName(application)
+        .setInstanceId(id)
+        .setHostName("host-" + id + ".eu-west-1.compute.internal")
+        .setIPAddr("10.0.0.1")
+        .setPort(8080)
+        .setSecurePort(8443)
+        .setVIPAddress(application.toLowerCase())
+        .setSecureVIPAddress(application.toLowerCase())
+        .setHomePageUrl(null, "http://host-" + id + ":8080/")
+        .setStatusPageUrl(null, "http://host-" + id + ":8080/info")
+        .setHealthCheckUrls(null, "http://host-" + id + ":8080/health", null)
+        .setStatus(InstanceInfo.InstanceStatus.UP)
+        .setMetadata(metadata)
+        .setLeaseInfo(LeaseInfo.Builder.newBuilder().setRenewalIntervalInSecs(30).build())
+        .setDataCenterInfo(AmazonInfo.Builder.newBuilder()
+            .addMetadata(AmazonInfo.MetaDataKey.availabilityZone, "eu-west-1a")
+            .addMetadata(AmazonInfo.MetaDataKey.instanceId, "i-" + id)
+            .addMetadata(AmazonInfo.MetaDataKey.localIpv4, "10.0.0.1")
+            .addMetadata(AmazonInfo.MetaDataKey.publicHostname, "ec2-" + id + ".compute.amazonaws.com")
+            .build())
+        .build();
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(RegistryDecoderBenchmark.class.getSimpleName()).build()).run();
+  }
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.registry;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.appinfo.LeaseInfo;
+import com.netflix.discovery.shared.Application;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RegistrySnapshotTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path file;
+
+  @Before
+  public void setUp() {
+    file = folder.getRoot().toPath().resolve("snapshots").resolve("registry.snapshot");
+  }
+
+  @Test
+  public void shouldRestoreWrittenApplications() throws IOException {
+    Application app1 = new Application("app1");
+    InstanceInfo instance = InstanceInfo.Builder.newBuilder()
+        .setAppName("app1")
+        .setInstanceId("1")
+        .setHostName("host1")
+        .setIPAddr("10.0.0.1")
+        .setVIPAddress("app1-vip")
+        .setPort(8080)
+        .setSecurePort(8443)
+        .enablePort(InstanceInfo.PortType.SECURE, true)
+        .setStatus(InstanceInfo.InstanceStatus.UP)
+        .setLeaseInfo(LeaseInfo.Builder.newBuilder().setServiceUpTimestamp(1234L).build())
+        .setMetadata(Collections.singletonMap("weight", "5"))
+        .build();
+    app1.addInstance(instance);
+    Application app2 = new Application("APP2");
+    app2.addInstance(InstanceInfo.Builder.newBuilder().setAppName("APP2").setInstanceId("2").setHostName("host2")
+        .setStatus(InstanceInfo.InstanceStatus.DOWN).build());
+
+    snapshot(0).write(Arrays.asList(app1, app2));
+    Map<String, Application> applications = snapshot(0).load();
+
+    assertThat(applications).containsOnlyKeys("APP1", "APP2");
+    InstanceInfo restored = applications.get("APP1").getByInstanceId("1");
+    assertThat(restored.getHostName()).isEqualTo("host1");
+    assertThat(restored.getIPAddr()).isEqualTo("10.0.0.1");
+    assertThat(restored.getVIPAddress()).isEqualTo("app1-vip");
+    assertThat(restored.getPort()).isEqualTo(8080);
+    assertThat(restored.getSecurePort()).isEqualTo(8443);
+    assertThat(restored.isPortEnabled(InstanceInfo.PortType.SECURE)).isTrue();
+    assertThat(restored.getStatus()).isEqualTo(InstanceInfo.InstanceStatus.UP);
+    assertThat(restored.getLeaseInfo().getServiceUpTimestamp()).isEqualTo(1234L);
+    assertThat(restored.getMetadata()).containsEntry("weight", "5");
+    assertThat(applications.get("APP2").getByInstanceId("2").getStatus()).isEqualTo(InstanceInfo.InstanceStatus.DOWN);
+  }
+
+  @Test
+  public void shouldReplacePreviousSnapshot() throws IOException {
+    snapshot(0).write(Collections.singletonList(new Application("APP1")));
+    snapshot(0).write(Collections.singletonList(new Application("APP2")));
+
+    assertThat(snapshot(0).load()).containsOnlyKeys("APP2");
+    assertThat(Files.list(file.getParent())).containsOnly(file);
+  }
+
+  @Test
+  public void shouldIgnoreMissingSnapshot() {
+    assertThat(snapshot(0).load()).isEmpty();
+  }
+
+  @Test
+  public void shouldIgnoreStaleSnapshot() throws Exception {
+    snapshot(0).write(Collections.singletonList(new Application("APP1")));
+    Thread.sleep(20);
+
+    assertThat(snapshot(10).load()).isEmpty();
+    assertThat(snapshot(60000).load()).containsOnlyKeys("APP1");
+  }
+
+  @Test
+  public void shouldIgnoreSnapshotOfAnotherVersion() throws IOException {
+    snapshot(0).write(Collections.singletonList(new Application("APP1")));
+    byte[] bytes = Files.readAllBytes(file);
+    bytes[7] = (byte) (RegistrySnapshot.VERSION + 1);
+    Files.write(file, bytes);
+
+    assertThat(snapshot(0).load()).isEmpty();
+  }
+
+  @Test
+  public void shouldIgnoreTruncatedSnapshot() throws IOException {
+    Files.createDirectories(file.getParent());
+    try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+      out.writeInt(0x47524553);
+      out.writeInt(RegistrySnapshot.VERSION);
+      out.writeLong(System.currentTimeMillis());
+      out.writeInt(3);
+    }
+
+    assertThat(snapshot(0).load()).isEmpty();
+  }
+
+  @Test
+  public void shouldIgnoreSnapshotWithInvalidStringLength() throws IOException {
+    for (int length : new int[] {Integer.MAX_VALUE, 1000, -2}) {
+      Files.createDirectories(file.getParent());
+      try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+        out.writeInt(0x47524553);
+        out.writeInt(RegistrySnapshot.VERSION);
+        out.writeLong(System.currentTimeMillis());
+        out.writeInt(1);
+        // Length of the application name, beyond the end of the snapshot or negative
+        out.writeInt(length);
+        out.writeBytes("APP1");
+      }
+
+      assertThat(snapshot(0).load()).isEmpty();
+    }
+  }
+
+  @Test
+  public void shouldIgnoreSnapshotWithoutApplicationName() throws IOException {
+    Files.createDirectories(file.getParent());
+    try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+      out.writeInt(0x47524553);
+      out.writeInt(RegistrySnapshot.VERSION);
+      out.writeLong(System.currentTimeMillis());
+      out.writeInt(1);
+      out.writeInt(-1);
+      out.writeInt(0);
+    }
+
+    assertThat(snapshot(0).load()).isEmpty();
+  }
+
+  private RegistrySnapshot snapshot(long maxAge) {
+    return new RegistrySnapshot(file, 0, maxAge);
+  }
+}
@@ -0,0 +1,312 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.registry;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.CacheRefreshedEvent;
+import com.netflix.discovery.EurekaEvent;
+import com.netflix.discovery.shared.Application;
+import io.gravitee.discovery.eureka.StubEurekaServer;
+import io.gravitee.discovery.eureka.spring.EurekaClientConfigBean;
+import io.gravitee.discovery.eureka.spring.EurekaTransportConfigBean;
+import io.vertx.core.Vertx;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class VertxRegistryClientTest {
+
+  private StubEurekaServer server;
+  private Vertx vertx;
+  private VertxRegistryClient client;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new StubEurekaServer();
+    server.addInstance("APP1", "1", "host1", 8080);
+    server.addInstance("APP2", "2", "host2", 8080);
+    server.start();
+    vertx = Vertx.vertx();
+  }
+
+  @After
+  public void tearDown() {
+    if (client != null) {
+      client.shutdown();
+    }
+    vertx.close();
+    server.stop();
+  }
+
+  @Test(timeout = 10000)
+  public void shouldFetchWholeRegistryThenApplyDeltas() {
+    client = start(RegistryFetchMode.FULL, server.serviceUrl());
+    AtomicInteger refreshes = new AtomicInteger();
+    client.registerEventListener(event -> refreshes.incrementAndGet());
+
+    assertThat(client.isRegistryFetched()).isTrue();
+    assertThat(client.getApplication("APP1").getByInstanceId("1").getHostName()).isEqualTo("host1");
+    assertThat(client.drainChanges().isReconcile()).isTrue();
+
+    server.addInstance("APP1", "3", "host3", 8080);
+    server.removeInstance("APP2", "2");
+    client.refresh().join();
+
+    assertThat(refreshes.get()).isEqualTo(1);
+    assertThat(client.getApplication("APP1").getInstances()).hasSize(2);
+    assertThat(client.getApplication("APP2").getInstances()).isEmpty();
+    RegistryChanges changes = client.drainChanges();
+    assertThat(changes.isReconcile()).isFalse();
+    assertThat(changes.get("APP1").getInstances()).hasSize(1);
+    assertThat(changes.get("APP2").getInstances()).hasSize(1);
+    assertThat(server.requests()).containsExactly("apps/", "apps/delta");
+  }
+
+  @Test(timeout = 10000)
+  public void shouldFetchWholeRegistryWhenOutOfSyncAfterDelta() {
+    client = start(RegistryFetchMode.FULL, server.serviceUrl());
+
+    server.addInstance("APP1", "3", "host3", 8080);
+    server.dropDelta();
+    client.refresh().join();
+
+    assertThat(client.getApplication("APP1").getInstances()).hasSize(2);
+    assertThat(client.drainChanges().isReconcile()).isTrue();
+    assertThat(server.requests()).containsExactly("apps/", "apps/delta", "apps/");
+  }
+
+  @Test(timeout = 10000)
+  public void shouldNotUpdateKnownRegistryInPlaceWithDelta() {
+    client = start(RegistryFetchMode.FULL, server.serviceUrl());
+    Application known = client.getApplication("APP1");
+
+    server.addInstance("APP1", "3", "host3", 8080);
+    server.dropDelta();
+    server.addInstance("APP1", "4", "host4", 8080);
+    client.refresh().join();
+
+    // The delta only holds the last instance, the registry out of sync is never exposed
+    assertThat(known.getInstances()).extracting(InstanceInfo::getId).containsExactly("1");
+    assertThat(client.getApplication("APP1").getInstances()).hasSize(3);
+    assertThat(server.requests()).containsExactly("apps/", "apps/delta", "apps/");
+  }
+
+  @Test(timeout = 10000)
+  public void shouldOnlyCopyApplicationsChangedByDelta() {
+    client = start(RegistryFetchMode.FULL, server.serviceUrl());
+    Application app1 = client.getApplication("APP1");
+    Application app2 = client.getApplication("APP2");
+
+    server.addInstance("APP1", "3", "host3", 8080);
+    client.refresh().join();
+
+    assertThat(client.getApplication("APP1")).isNotSameAs(app1);
+    assertThat(client.getApplication("APP1").getInstances()).hasSize(2);
+    assertThat(client.getApplication("APP2")).isSameAs(app2);
+    assertThat(server.requests()).containsExactly("apps/", "apps/delta");
+  }
+
+  @Test(timeout = 10000)
+  public void shouldNotBlockWhileFetchingNewlyWatchedApplications() {
+    client = start(RegistryFetchMode.APPLICATIONS, server.serviceUrl());
+    CompletableFuture<EurekaEvent> refreshed = new CompletableFuture<>();
+    client.registerEventListener(refreshed::complete);
+    server.setDelay(500);
+
+    client.watch(Collections.singleton("app1"));
+
+    assertThat(client.getApplication("APP1")).isNull();
+    assertThat(refreshed.join()).isInstanceOf(CacheRefreshedEvent.class);
+    assertThat(client.getApplication("APP1").getByInstanceId("1").getHostName()).isEqualTo("host1");
+  }
+
+  @Test(timeout = 10000)
+  public void shouldDecodeOnlyWatchedApplicationsOfWholeRegistry() {
+    client = start(RegistryFetchMode.FULL,
+        new MockEnvironment().withProperty("service-discovery.eureka.decoderName", EurekaJsonDecoder.NAME),
+        server.serviceUrl());
+    assertThat(client.getApplication("APP1").getByInstanceId("1").getHostName()).isNull();
+
+    watchAndWait("app1");
+
+    assertThat(client.getApplication("APP1").getByInstanceId("1").getHostName()).isEqualTo("host1");
+    assertThat(client.getApplication("APP2").getByInstanceId("2").getHostName()).isNull();
+
+    server.addInstance("APP1", "3", "host3", 8080);
+    server.addInstance("APP2", "4", "host4", 8080);
+    client.refresh().join();
+
+    assertThat(client.getApplication("APP1").getByInstanceId("3").getHostName()).isEqualTo("host3");
+    assertThat(client.getApplication("APP2").getByInstanceId("4").getHostName()).isNull();
+    assertThat(server.requests()).containsExactly("apps/", "apps/APP1", "apps/delta");
+  }
+
+  @Test(timeout = 10000)
+  public void shouldFetchOnlyWatchedApplications() {
+    client = start(RegistryFetchMode.APPLICATIONS, server.serviceUrl());
+    assertThat(client.isRegistryFetched()).isFalse();
+
+    watchAndWait("app1");
+
+    assertThat(client.isRegistryFetched()).isTrue();
+    assertThat(client.getApplication("app1").getByInstanceId("1").getHostName()).isEqualTo("host1");
+    assertThat(client.getApplication("APP2")).isNull();
+    assertThat(client.drainChanges().isReconcile()).isTrue();
+    assertThat(server.requests()).containsExactly("apps/APP1");
+
+    watchAndWait("UNKNOWN");
+    client.refresh().join();
+
+    assertThat(client.getApplication("APP1")).isNull();
+    assertThat(client.getApplication("UNKNOWN")).isNull();
+    assertThat(server.requests()).containsExactly("apps/APP1", "apps/UNKNOWN", "apps/UNKNOWN");
+  }
+
+  @Test(timeout = 10000)
+  public void shouldTryNextServerWhenUnreachable() throws Exception {
+    StubEurekaServer unreachable = new StubEurekaServer();
+    unreachable.start();
+    unreachable.stop();
+
+    client = start(RegistryFetchMode.FULL, unreachable.serviceUrl(), server.serviceUrl());
+
+    assertThat(client.getApplication("APP1")).isNotNull();
+
+    client.refresh().join();
+
+    assertThat(server.requests()).containsExactly("apps/", "apps/delta");
+    assertThat(client.getServerStatistics()).extracting(EurekaServerStatistics::getFailures).containsExactly(1L, 0L);
+    assertThat(client.getServerStatistics().get(0).isQuarantined()).isTrue();
+    assertThat(client.getServerStatistics().get(1).getLatency()).isNotNegative();
+  }
+
+  @Test(timeout = 10000)
+  public void shouldHedgeRequestWhenPrimaryServerIsSlowerThanUsual() throws Exception {
+    StubEurekaServer peer = peer(0);
+    try {
+      client = start(RegistryFetchMode.FULL,
+          new MockEnvironment().withProperty("service-discovery.eureka.client.hedging.enabled", "true"),
+          server.serviceUrl(), peer.serviceUrl());
+      for (int i = 0; i < 12; i++) {
+        client.refresh().join();
+      }
+      // The primary server is the best scored one which is not quarantined, as ordered by the server selector
+      List<EurekaServerStatistics> statistics = client.getServerStatistics();
+      long now = System.currentTimeMillis();
+      int primary = statistics.get(0).isQuarantined(now) != statistics.get(1).isQuarantined(now)
+          ? (statistics.get(0).isQuarantined(now) ? 1 : 0)
+          : (statistics.get(1).score() < statistics.get(0).score() ? 1 : 0);
+      (primary == 0 ? server : peer).setDelay(2000);
+
+      long start = System.nanoTime();
+      client.refresh().join();
+
+      assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(1000);
+      assertThat(statistics.get(1 - primary).getHedgeWins()).isPositive();
+      assertThat(statistics.get(primary).getFailures()).isZero();
+    } finally {
+      peer.stop();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void shouldNotHedgeRequestBeyondConnectionLimit() throws Exception {
+    StubEurekaServer peer = peer(0);
+    try {
+      client = start(RegistryFetchMode.FULL, new MockEnvironment()
+              .withProperty("service-discovery.eureka.client.hedging.enabled", "true")
+              .withProperty("service-discovery.eureka.eurekaServer.maxTotalConnections", "1"),
+          server.serviceUrl(), peer.serviceUrl());
+      for (int i = 0; i < 12; i++) {
+        client.refresh().join();
+      }
+      server.setDelay(200);
+      peer.setDelay(200);
+
+      client.refresh().join();
+
+      assertThat(client.getServerStatistics()).extracting(EurekaServerStatistics::getHedges).containsOnly(0L);
+    } finally {
+      peer.stop();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void shouldKeepLastKnownRegistryWhenNoServerAnswers() {
+    client = start(RegistryFetchMode.FULL, server.serviceUrl());
+    AtomicInteger refreshes = new AtomicInteger();
+    client.registerEventListener(event -> {
+      if (event instanceof CacheRefreshedEvent) {
+        refreshes.incrementAndGet();
+      }
+    });
+    server.stop();
+
+    client.refresh().join();
+
+    assertThat(refreshes.get()).isZero();
+    assertThat(client.getApplication("APP1").getInstances()).hasSize(1);
+  }
+
+  private void watchAndWait(String applicationName) {
+    CompletableFuture<EurekaEvent> refreshed = new CompletableFuture<>();
+    client.registerEventListener(refreshed::complete);
+    client.watch(Collections.singleton(applicationName));
+    refreshed.join();
+  }
+
+  @Test(timeout = 10000)
+  public void shouldNotFetchWithoutServer() {
+    client = start(RegistryFetchMode.FULL);
+
+    assertThat(client.isRegistryFetched()).isFalse();
+    assertThat(client.getApplications()).isEmpty();
+  }
+
+  private StubEurekaServer peer(long delay) throws Exception {
+    StubEurekaServer peer = new StubEurekaServer();
+    peer.addInstance("APP1", "1", "host1", 8080);
+    peer.addInstance("APP2", "2", "host2", 8080);
+    peer.setDelay(delay);
+    peer.start();
+    return peer;
+  }
+
+  private VertxRegistryClient start(RegistryFetchMode fetchMode, String... serviceUrls) {
+    return start(fetchMode, new MockEnvironment(), serviceUrls);
+  }
+
+  private VertxRegistryClient start(RegistryFetchMode fetchMode, MockEnvironment environment, String... serviceUrls) {
+    environment.setProperty("service-discovery.eureka.client.refresh.interval", "60");
+    environment.setProperty("service-discovery.eureka.eurekaServer.readTimeout", "2");
+    EurekaClientConfigBean clientConfig = new EurekaClientConfigBean(environment,
+        new EurekaTransportConfigBean(environment));
+    VertxRegistryClient registryClient = new VertxRegistryClient(vertx, false, Arrays.asList(serviceUrls), fetchMode,
+        clientConfig);
+    registryClient.start().join();
+    return registryClient;
+  }
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.service;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.gravitee.discovery.eureka.service.EurekaServiceDiffTest.service;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EndpointDamperTest {
+
+  private static final long DWELL_TIME = 1000;
+  private static final long MAX_DELAY = 5000;
+
+  private EndpointDamper damper;
+  private List<String> published;
+  private EurekaServiceDiff.Listener listener;
+
+  @Before
+  public void setUp() {
+    damper = new EndpointDamper(DWELL_TIME, MAX_DELAY);
+    published = new ArrayList<>();
+    listener = new EurekaServiceDiff.Listener() {
+      @Override
+      public void onRegister(EurekaService service) {
+        published.add("register:" + service.host());
+      }
+
+      @Override
+      public void onUnregister(EurekaService service) {
+        published.add("unregister:" + service.host());
+      }
+
+      @Override
+      public void onUpdate(EurekaService previous, EurekaService service) {
+        published.add("update:" + previous.host() + "->" + service.host());
+      }
+    };
+  }
+
+  @Test
+  public void shouldPublishChangeAfterDwellTime() {
+    damper.observer(0).onRegister(service("1", "host1", 8080));
+
+    damper.flush(DWELL_TIME - 1, listener);
+    assertThat(published).isEmpty();
+    assertThat(damper.nextDue()).isEqualTo(DWELL_TIME);
+
+    damper.flush(DWELL_TIME, listener);
+    assertThat(published).containsExactly("register:host1");
+    assertThat(damper.nextDue()).isEqualTo(-1);
+  }
+
+  @Test
+  public void shouldSuppressFlapShorterThanDwellTime() {
+    EurekaService service = service("1", "host1", 8080);
+    damper.observer(0).onRegister(service);
+    damper.flushAll(listener);
+    published.clear();
+
+    damper.observer(100).onUnregister(service);
+    damper.observer(600).onRegister(service("1", "host1", 8080));
+    damper.flush(2000, listener);
+
+    assertThat(published).isEmpty();
+    assertThat(damper.pending()).isZero();
+  }
+
+  @Test
+  public void shouldRestartDwellTimeOnEachObservation() {
+    EurekaService service = service("1", "host1", 8080);
+    damper.observer(0).onRegister(service);
+    damper.observer(800).onUnregister(service);
+    damper.observer(1600).onRegister(service);
+
+    damper.flush(2000, listener);
+    assertThat(published).isEmpty();
+
+    damper.flush(2600, listener);
+    assertThat(published).containsExactly("register:host1");
+  }
+
+  @Test
+  public void shouldNotHoldFlappingInstanceLongerThanMaxDelay() {
+    EurekaService service = service("1", "host1", 8080);
+    List<Long> publishedAt = new ArrayList<>();
+    for (long now = 0; now <= 6000; now += 500) {
+      if ((now / 500) % 2 == 0) {
+        damper.observer(now).onRegister(service);
+      } else {
+        damper.observer(now).onUnregister(service);
+      }
+      int before = published.size();
+      damper.flush(now, listener);
+      if (published.size() > before) {
+        publishedAt.add(now);
+      }
+    }
+
+    // Flapping every 500ms never satisfies the dwell time, the state is published once the max delay is reached
+    assertThat(published).containsExactly("register:host1");
+    assertThat(publishedAt).containsExactly(MAX_DELAY);
+  }
+
+  @Test
+  public void shouldPublishTargetUpdate() {
+    damper.observer(0).onRegister(service("1", "host1", 8080));
+    damper.flushAll(listener);
+
+    damper.observer(0).onUpdate(service("1", "host1", 8080), service("1", "host2", 8080));
+    damper.flush(DWELL_TIME, listener);
+
+    assertThat(published).containsExactly("register:host1", "update:host1->host2");
+  }
+}
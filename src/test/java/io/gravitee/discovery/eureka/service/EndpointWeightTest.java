@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.service;
+
+import com.netflix.appinfo.InstanceInfo;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+public class EndpointWeightTest {
+
+  private final EndpointWeight endpointWeight = new EndpointWeight("capacity", 2);
+
+  @Test
+  public void shouldReadWeightFromMetadata() {
+    EurekaService service = endpointWeight.service(instance(" 8 "));
+
+    assertThat(service.weight()).isEqualTo(8);
+    assertThat(service.metadata()).containsOnly(entry(EurekaService.WEIGHT_METADATA_KEY, 8));
+  }
+
+  @Test
+  public void shouldUseDefaultWeightIfMissingOrInvalid() {
+    assertThat(endpointWeight.of(instance(null))).isEqualTo(2);
+    assertThat(endpointWeight.of(instance("heavy"))).isEqualTo(2);
+    assertThat(endpointWeight.of(instance("0"))).isEqualTo(2);
+    assertThat(endpointWeight.of(instance("-3"))).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldNotWeightServicesByDefault() {
+    EurekaService service = new EurekaService(instance("8"));
+
+    assertThat(service.weight()).isEqualTo(EurekaService.DEFAULT_WEIGHT);
+    assertThat(service.metadata()).isEmpty();
+  }
+
+  private static InstanceInfo instance(String capacity) {
+    InstanceInfo instance = InstanceInfo.Builder.newBuilder()
+        .setAppName("APP")
+        .setInstanceId("1")
+        .setHostName("host1")
+        .setStatus(InstanceInfo.InstanceStatus.UP)
+        .build();
+    if (capacity != null) {
+      instance.getMetadata().put("capacity", capacity);
+    }
+    return instance;
+  }
+}
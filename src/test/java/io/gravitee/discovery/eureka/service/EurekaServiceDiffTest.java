@@ -0,0 +1,269 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.service;
+
+import com.netflix.appinfo.InstanceInfo;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class EurekaServiceDiffTest {
+
+  private EurekaServiceDiff diff;
+  private RecordingListener listener;
+
+  @Before
+  public void setUp() {
+    diff = new EurekaServiceDiff();
+    listener = new RecordingListener();
+  }
+
+  @Test
+  public void shouldRegisterNewServices() {
+    EurekaService service1 = service("1", "host1", 8080);
+    EurekaService service2 = service("2", "host2", 8080);
+
+    diff.apply(Arrays.asList(service1, service2), listener);
+
+    assertThat(listener.registered).containsExactly(service1, service2);
+    assertThat(listener.unregistered).isEmpty();
+    assertThat(listener.updated).isEmpty();
+    assertThat(diff.size()).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldUnregisterMissingServices() {
+    EurekaService service1 = service("1", "host1", 8080);
+    EurekaService service2 = service("2", "host2", 8080);
+    diff.apply(Arrays.asList(service1, service2), new RecordingListener());
+
+    diff.apply(Collections.singletonList(service("1", "host1", 8080)), listener);
+
+    assertThat(listener.registered).isEmpty();
+    assertThat(listener.unregistered).containsExactly(service2);
+    assertThat(diff.get(service2.id())).isNull();
+  }
+
+  @Test
+  public void shouldUpdateServiceWhenTargetChanges() {
+    EurekaService service1 = service("1", "host1", 8080);
+    diff.apply(Collections.singletonList(service1), new RecordingListener());
+
+    EurekaService moved = service("1", "host2", 8080);
+    diff.apply(Collections.singletonList(moved), listener);
+
+    assertThat(listener.updated).containsExactly(service1);
+    assertThat(listener.registered).isEmpty();
+    assertThat(listener.unregistered).isEmpty();
+    assertThat(diff.get(moved.id()).host()).isEqualTo("host2");
+  }
+
+  @Test
+  public void shouldKeepKnownServiceWhenTargetIsUnchanged() {
+    EurekaService service1 = service("1", "host1", 8080);
+    diff.apply(Collections.singletonList(service1), new RecordingListener());
+
+    diff.apply(Collections.singletonList(service("1", "host1", 8080)), listener);
+
+    assertThat(listener.events()).isZero();
+    assertThat(diff.get(service1.id())).isSameAs(service1);
+  }
+
+  @Test
+  public void shouldRefreshMetadataWithoutNotifying() {
+    EurekaService service1 = service("1", "host1", 8080, "1");
+    diff.apply(Collections.singletonList(service1), new RecordingListener());
+
+    EurekaService reweighted = service("1", "host1", 8080, "5");
+    diff.apply(Collections.singletonList(reweighted), listener);
+    diff.put(service("1", "host1", 8080, "10"), listener);
+
+    assertThat(listener.events()).isZero();
+    assertThat(diff.get(service1.id()).metadata()).containsEntry("weight", "10");
+  }
+
+  @Test
+  public void shouldUpdateServiceWhenWeightChanges() {
+    EurekaService service1 = weighted("1", 1);
+    diff.apply(Collections.singletonList(service1), new RecordingListener());
+
+    diff.apply(Collections.singletonList(weighted("1", 4)), listener);
+    diff.put(weighted("1", 4), listener);
+
+    assertThat(listener.updated).containsExactly(service1);
+    assertThat(diff.get(service1.id()).weight()).isEqualTo(4);
+  }
+
+  @Test
+  public void shouldIgnoreDuplicatedInstances() {
+    diff.apply(Arrays.asList(service("1", "host1", 8080), service("1", "host1", 8080)), listener);
+
+    assertThat(listener.registered).hasSize(1);
+    assertThat(diff.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldApplySingleChanges() {
+    EurekaService service1 = service("1", "host1", 8080);
+    EurekaService service2 = service("2", "host2", 8080);
+    diff.apply(Arrays.asList(service1, service2), new RecordingListener());
+
+    EurekaService moved = service("1", "host3", 8080);
+    EurekaService service3 = service("3", "host3", 8080);
+    diff.put(moved, listener);
+    diff.put(service("2", "host2", 8080), listener);
+    diff.put(service3, listener);
+    diff.remove(service2.id(), listener);
+    diff.remove("eureka:unknown", listener);
+
+    assertThat(listener.updated).containsExactly(service1);
+    assertThat(listener.registered).containsExactly(service3);
+    assertThat(listener.unregistered).containsExactly(service2);
+    assertThat(diff.get(moved.id()).host()).isEqualTo("host3");
+    assertThat(diff.size()).isEqualTo(2);
+  }
+
+  @Test(timeout = 10000)
+  public void shouldDiffLargeApplicationWithChurn() {
+    int instances = 20_000;
+    List<EurekaService> initial = new ArrayList<>(instances);
+    for (int i = 0; i < instances; i++) {
+      initial.add(service(Integer.toString(i), "host" + i, 8080));
+    }
+    diff.apply(initial, listener);
+    assertThat(listener.registered).hasSize(instances);
+
+    // Remove the first 10%, move the next 10% and add 10% new instances
+    List<EurekaService> next = new ArrayList<>(instances);
+    for (int i = instances / 10; i < instances; i++) {
+      String host = i < instances / 5 ? "moved" + i : "host" + i;
+      next.add(service(Integer.toString(i), host, 8080));
+    }
+    for (int i = instances; i < instances + instances / 10; i++) {
+      next.add(service(Integer.toString(i), "host" + i, 8080));
+    }
+
+    RecordingListener changes = new RecordingListener();
+    diff.apply(next, changes);
+
+    assertThat(changes.unregistered).hasSize(instances / 10);
+    assertThat(changes.updated).hasSize(instances / 10);
+    assertThat(changes.registered).hasSize(instances / 10);
+    assertThat(diff.size()).isEqualTo(instances);
+  }
+
+  @Test
+  public void shouldKeepKnownServicesWhenListenerFails() {
+    EurekaService service1 = service("1", "host1", 8080);
+    EurekaService service2 = service("2", "host2", 8080);
+    diff.apply(Arrays.asList(service1, service2), new RecordingListener());
+
+    RecordingListener failing = new RecordingListener() {
+      @Override
+      public void onUnregister(EurekaService service) {
+        throw new IllegalStateException();
+      }
+    };
+    EurekaService service3 = service("3", "host3", 8080);
+    assertThatThrownBy(() -> diff.apply(Arrays.asList(service1, service3), failing))
+        .isInstanceOf(IllegalStateException.class);
+    assertThatThrownBy(() -> diff.remove(service2.id(), failing)).isInstanceOf(IllegalStateException.class);
+
+    assertThat(diff.size()).isEqualTo(2);
+    assertThat(diff.get(service2.id())).isSameAs(service2);
+    assertThat(diff.get(service3.id())).isNull();
+  }
+
+  @Test(timeout = 10000)
+  public void shouldApplyUnchangedLargeSnapshotsRepeatedly() {
+    int instances = 50_000;
+    List<EurekaService> snapshot = new ArrayList<>(instances);
+    for (int i = 0; i < instances; i++) {
+      snapshot.add(service(Integer.toString(i), "host" + i, 8080));
+    }
+    diff.apply(snapshot, new RecordingListener());
+
+    for (int i = 0; i < 20; i++) {
+      diff.apply(snapshot, listener);
+    }
+
+    assertThat(listener.events()).isZero();
+  }
+
+  static EurekaService service(String id, String host, int port) {
+    return new EurekaService(InstanceInfo.Builder.newBuilder()
+        .setAppName("APP")
+        .setInstanceId(id)
+        .setHostName(host)
+        .setPort(port)
+        .setStatus(InstanceInfo.InstanceStatus.UP)
+        .build());
+  }
+
+  private static EurekaService service(String id, String host, int port, String weight) {
+    InstanceInfo instance = InstanceInfo.Builder.newBuilder()
+        .setAppName("APP")
+        .setInstanceId(id)
+        .setHostName(host)
+        .setPort(port)
+        .setStatus(InstanceInfo.InstanceStatus.UP)
+        .build();
+    instance.getMetadata().put("weight", weight);
+    return new EurekaService(instance, Collections.singletonList("weight"));
+  }
+
+  private static EurekaService weighted(String id, int weight) {
+    return new EurekaService(InstanceInfo.Builder.newBuilder()
+        .setAppName("APP")
+        .setInstanceId(id)
+        .setHostName("host" + id)
+        .setStatus(InstanceInfo.InstanceStatus.UP)
+        .build(), Collections.emptyList(), weight);
+  }
+
+  private static class RecordingListener implements EurekaServiceDiff.Listener {
+
+    private final List<EurekaService> registered = new ArrayList<>();
+    private final List<EurekaService> unregistered = new ArrayList<>();
+    private final List<EurekaService> updated = new ArrayList<>();
+
+    @Override
+    public void onRegister(EurekaService service) {
+      registered.add(service);
+    }
+
+    @Override
+    public void onUnregister(EurekaService service) {
+      unregistered.add(service);
+    }
+
+    @Override
+    public void onUpdate(EurekaService previous, EurekaService service) {
+      updated.add(previous);
+    }
+
+    int events() {
+      return registered.size() + unregistered.size() + updated.size();
+    }
+  }
+}
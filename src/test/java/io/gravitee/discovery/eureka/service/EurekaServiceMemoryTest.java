@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.service;
+
+import com.netflix.appinfo.DataCenterInfo;
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.appinfo.LeaseInfo;
+import com.netflix.appinfo.MyDataCenterInfo;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that published services do not retain the Eureka instances they have been built from.
+ */
+public class EurekaServiceMemoryTest {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(EurekaServiceMemoryTest.class);
+
+  private static final int INSTANCES = 10_000;
+
+  @Test
+  public void shouldNotRetainInstanceInfo() {
+    InstanceInfo instance = instance(1);
+    WeakReference<InstanceInfo> reference = new WeakReference<>(instance);
+    EurekaService service = new EurekaService(instance);
+    instance = null;
+
+    for (int i = 0; i < 10 && reference.get() != null; i++) {
+      System.gc();
+    }
+
+    assertThat(reference.get()).isNull();
+    assertThat(service.host()).isEqualTo("host1");
+  }
+
+  @Test
+  public void shouldReportRetainedHeapPer10kInstances() {
+    long instances = retainedHeap(() -> {
+      List<InstanceInfo> retained = new ArrayList<>(INSTANCES);
+      for (int i = 0; i < INSTANCES; i++) {
+        retained.add(instance(i));
+      }
+      return retained;
+    });
+    long services = retainedHeap(() -> {
+      List<EurekaService> retained = new ArrayList<>(INSTANCES);
+      for (int i = 0; i < INSTANCES; i++) {
+        retained.add(new EurekaService(instance(i)));
+      }
+      return retained;
+    });
+
+    LOGGER.info("Retained heap per {} instances: InstanceInfo {} KB, EurekaService {} KB",
+        INSTANCES, instances / 1024, services / 1024);
+    assertThat(services).isLessThan(instances);
+  }
+
+  private static long retainedHeap(Supplier<List<?>> allocation) {
+    long before = usedHeap();
+    List<?> retained = allocation.get();
+    long after = usedHeap();
+    assertThat(retained).hasSize(INSTANCES);
+    return after - before;
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static InstanceInfo instance(int i) {
+    Map<String, String> metadata = new HashMap<>();
+    metadata.put("management.port", "8081");
+    metadata.put("version", "1.0." + i);
+    DataCenterInfo dataCenterInfo = new MyDataCenterInfo(DataCenterInfo.Name.MyOwn);
+    return InstanceInfo.Builder.newBuilder()
+        .setAppName("APP")
+        .setInstanceId(Integer.toString(i))
+        .setHostName("host" + i)
+        .setIPAddr("10.0." + (i / 256) + '.' + (i % 256))
+        .setPort(8080)
+        .setStatus(InstanceInfo.InstanceStatus.UP)
+        .setDataCenterInfo(dataCenterInfo)
+        .setLeaseInfo(LeaseInfo.Builder.newBuilder().setRenewalIntervalInSecs(30).build())
+        .setHomePageUrl(null, "http://host" + i + ":8080/")
+        .setStatusPageUrl(null, "http://host" + i + ":8080/info")
+        .setHealthCheckUrls(null, "http://host" + i + ":8080/health", null)
+        .setMetadata(metadata)
+        .build();
+  }
+}
@@ -16,12 +16,16 @@
 package io.gravitee.discovery.eureka.service;
 
 import com.netflix.appinfo.InstanceInfo;
-import com.netflix.discovery.DiscoveryClient;
+import com.netflix.appinfo.LeaseInfo;
 import com.netflix.discovery.shared.Application;
+import io.gravitee.discovery.eureka.registry.RegistryClient;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
@@ -31,10 +35,10 @@ public class EurekaServiceResolverTest {
 
   @Test
   public void shouldReturnEmptyListIfUnknownApplication() {
-    DiscoveryClient discoveryClient = mock(DiscoveryClient.class);
-    EurekaServiceResolver resolver = new EurekaServiceResolver(discoveryClient);
+    RegistryClient registryClient = mock(RegistryClient.class);
+    EurekaServiceResolver resolver = new EurekaServiceResolver(registryClient);
 
-    when(discoveryClient.getApplication("APP")).thenReturn(null);
+    when(registryClient.getApplication("APP")).thenReturn(null);
 
     List<EurekaService> eurekaServices = resolver.getServicesUpByApplicationName("APP");
     assertThat(eurekaServices).isEmpty();
@@ -42,11 +46,11 @@ public class EurekaServiceResolverTest {
 
   @Test
   public void shouldReturnEmptyListIfNoInstance() {
-    DiscoveryClient discoveryClient = mock(DiscoveryClient.class);
-    EurekaServiceResolver resolver = new EurekaServiceResolver(discoveryClient);
+    RegistryClient registryClient = mock(RegistryClient.class);
+    EurekaServiceResolver resolver = new EurekaServiceResolver(registryClient);
     Application application = mock(Application.class);
 
-    when(discoveryClient.getApplication("APP")).thenReturn(application);
+    when(registryClient.getApplication("APP")).thenReturn(application);
 
     List<EurekaService> eurekaServices = resolver.getServicesUpByApplicationName("APP");
     assertThat(eurekaServices).isEmpty();
@@ -54,8 +58,8 @@ public class EurekaServiceResolverTest {
 
   @Test
   public void shouldGetOnlyUpInstance() {
-    DiscoveryClient discoveryClient = mock(DiscoveryClient.class);
-    EurekaServiceResolver resolver = new EurekaServiceResolver(discoveryClient);
+    RegistryClient registryClient = mock(RegistryClient.class);
+    EurekaServiceResolver resolver = new EurekaServiceResolver(registryClient);
     Application application = mock(Application.class);
     List<InstanceInfo> instanceInfos = new ArrayList<>();
     InstanceInfo instanceInfo1 = mock(InstanceInfo.class);
@@ -66,11 +70,121 @@ public class EurekaServiceResolverTest {
     when(instanceInfo1.getStatus()).thenReturn(InstanceInfo.InstanceStatus.UP);
     when(instanceInfo1.getId()).thenReturn("1");
     when(instanceInfo2.getStatus()).thenReturn(InstanceInfo.InstanceStatus.DOWN);
-    when(application.getInstances()).thenReturn(instanceInfos);
-    when(discoveryClient.getApplication("APP")).thenReturn(application);
+    when(application.getInstancesAsIsFromEureka()).thenReturn(instanceInfos);
+    when(registryClient.getApplication("APP")).thenReturn(application);
 
     List<EurekaService> eurekaServices = resolver.getServicesUpByApplicationName("APP");
     assertThat(eurekaServices).containsOnly(new EurekaService(instanceInfo1));
   }
 
-}
\ No newline at end of file
+  @Test
+  public void shouldPruneInstancesWhichStoppedRenewingTheirLease() {
+    Application application = new Application("APP");
+    InstanceInfo renewed = instance("1", System.currentTimeMillis());
+    application.addInstance(renewed);
+    application.addInstance(instance("2", System.currentTimeMillis() - 120_000));
+    application.addInstance(instance("3", System.currentTimeMillis()));
+    EurekaServiceResolver resolver = new EurekaServiceResolver(name -> application, new LeasePruning(3, 50));
+
+    List<EurekaService> eurekaServices = resolver.getServicesUpByApplicationName("APP");
+    assertThat(eurekaServices).extracting(EurekaService::host).containsOnly("host1", "host3");
+  }
+
+  @Test
+  public void shouldMergeInstancesOfApplicationsAndVipAddressesInSinglePass() {
+    Application blue = application("BLUE", instance("BLUE", "1", "orders", InstanceInfo.InstanceStatus.UP),
+        instance("BLUE", "2", null, InstanceInfo.InstanceStatus.DOWN));
+    Application green = application("GREEN", instance("GREEN", "1", "payments,orders", InstanceInfo.InstanceStatus.UP));
+    Application red = application("RED", instance("RED", "3", "payments", InstanceInfo.InstanceStatus.UP));
+    List<Application> registry = Arrays.asList(blue, green, red);
+    AtomicInteger passes = new AtomicInteger();
+    EurekaServiceResolver resolver = new EurekaServiceResolver(name -> {
+      throw new AssertionError("VIP addresses are looked up in all the applications");
+    }, () -> {
+      passes.incrementAndGet();
+      return registry;
+    }, null);
+
+    List<EurekaService> eurekaServices = resolver.getServicesUp(
+        new InstanceSelector(Collections.singletonList("blue"), "ORDERS", null),
+        instance -> new EurekaService(instance).withApplication(instance.getAppName()));
+
+    assertThat(eurekaServices).extracting(EurekaService::id).containsExactly("eureka:BLUE:1", "eureka:GREEN:1");
+    assertThat(passes).hasValue(1);
+  }
+
+  @Test
+  public void shouldGiveInstancesOfSeveralApplicationsOnce() {
+    InstanceInfo instance = instance("BLUE", "1", null, InstanceInfo.InstanceStatus.UP);
+    Application blue = application("BLUE", instance, instance);
+    Application green = application("GREEN", instance("GREEN", "2", null, InstanceInfo.InstanceStatus.UP));
+    EurekaServiceResolver resolver = new EurekaServiceResolver(
+        name -> "BLUE".equals(name) ? blue : "GREEN".equals(name) ? green : null);
+
+    List<EurekaService> eurekaServices = resolver.getServicesUp(
+        new InstanceSelector(Arrays.asList("blue", "green", "unknown"), null, null), EurekaService::new);
+
+    assertThat(eurekaServices).extracting(EurekaService::host).containsExactly("host1", "host2");
+  }
+
+  @Test
+  public void shouldOnlyGiveInstancesAcceptedByFilter() {
+    InstanceInfo draining = instance("BLUE", "1", null, InstanceInfo.InstanceStatus.OUT_OF_SERVICE);
+    Application blue = application("BLUE", draining, instance("BLUE", "2", null, InstanceInfo.InstanceStatus.DOWN));
+    EurekaServiceResolver resolver = new EurekaServiceResolver(name -> blue);
+
+    List<EurekaService> eurekaServices = resolver.getServicesUp(new InstanceSelector(Collections.singletonList("blue"),
+        null, null, InstanceFilter.compile("status in (UP, OUT_OF_SERVICE)")), EurekaService::new);
+
+    assertThat(eurekaServices).containsExactly(new EurekaService(draining));
+  }
+
+  @Test
+  public void shouldGiveInstancesAcceptedByFilterOfShuffledApplication() {
+    InstanceInfo draining = instance("BLUE", "1", null, InstanceInfo.InstanceStatus.OUT_OF_SERVICE);
+    InstanceInfo up = instance("BLUE", "2", null, InstanceInfo.InstanceStatus.UP);
+    Application blue = new Application("BLUE");
+    blue.addInstance(draining);
+    blue.addInstance(up);
+    // Shuffled as the discovery client does when it only keeps the UP instances
+    blue.shuffleAndStoreInstances(true);
+    EurekaServiceResolver resolver = new EurekaServiceResolver(name -> blue);
+
+    List<EurekaService> eurekaServices = resolver.getServicesUp(new InstanceSelector(Collections.singletonList("blue"),
+        null, null, InstanceFilter.compile("status in (UP, OUT_OF_SERVICE)")), EurekaService::new);
+
+    assertThat(blue.getInstances()).containsExactly(up);
+    assertThat(eurekaServices).containsOnly(new EurekaService(draining), new EurekaService(up));
+  }
+
+  private static Application application(String name, InstanceInfo... instances) {
+    Application application = mock(Application.class);
+    when(application.getName()).thenReturn(name);
+    when(application.getInstancesAsIsFromEureka()).thenReturn(Arrays.asList(instances));
+    return application;
+  }
+
+  private static InstanceInfo instance(String application, String id, String vipAddress,
+                                       InstanceInfo.InstanceStatus status) {
+    return InstanceInfo.Builder.newBuilder()
+        .setAppName(application)
+        .setInstanceId(id)
+        .setHostName("host" + id)
+        .setVIPAddress(vipAddress)
+        .setStatus(status)
+        .build();
+  }
+
+  private static InstanceInfo instance(String id, long renewalTimestamp) {
+    return InstanceInfo.Builder.newBuilder()
+        .setAppName("APP")
+        .setInstanceId(id)
+        .setHostName("host" + id)
+        .setStatus(InstanceInfo.InstanceStatus.UP)
+        .setLeaseInfo(LeaseInfo.Builder.newBuilder()
+            .setRenewalIntervalInSecs(30)
+            .setRenewalTimestamp(renewalTimestamp)
+            .build())
+        .build();
+  }
+}
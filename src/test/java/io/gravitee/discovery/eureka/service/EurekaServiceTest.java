@@ -15,15 +15,23 @@
  */
 package io.gravitee.discovery.eureka.service;
 
+import com.netflix.appinfo.AmazonInfo;
+import com.netflix.appinfo.DataCenterInfo;
 import com.netflix.appinfo.InstanceInfo;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
 import static com.netflix.appinfo.InstanceInfo.InstanceStatus.UNKNOWN;
 import static com.netflix.appinfo.InstanceInfo.InstanceStatus.UP;
 import static com.netflix.appinfo.InstanceInfo.PortType.SECURE;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -122,6 +130,33 @@ public class EurekaServiceTest {
     assertThat(eurekaService.isTargetEquals(eurekaService2)).isTrue();
   }
 
+  @Test
+  public void shouldTargetTheSameWhenOnlyWeightIsDifferent() {
+    InstanceInfo instanceInfo = Mockito.mock(InstanceInfo.class);
+    when(instanceInfo.getHostName()).thenReturn("host1");
+    EurekaService eurekaService = new EurekaService(instanceInfo);
+    EurekaService reweighted = eurekaService.withWeight(5);
+
+    assertThat(eurekaService.isTargetEquals(reweighted)).isTrue();
+    assertThat(eurekaService.isTargetAndWeightEquals(reweighted)).isFalse();
+    assertThat(eurekaService.isTargetAndWeightEquals(eurekaService.withWeight(1))).isTrue();
+  }
+
+  @Test
+  public void shouldTargetBeDifferentWhenSecureFlagIsDifferent() {
+    InstanceInfo instanceInfo = Mockito.mock(InstanceInfo.class);
+    when(instanceInfo.getHostName()).thenReturn("host1");
+    when(instanceInfo.getPort()).thenReturn(8443);
+    EurekaService eurekaService = new EurekaService(instanceInfo);
+
+    InstanceInfo instanceInfo2 = Mockito.mock(InstanceInfo.class);
+    when(instanceInfo2.getHostName()).thenReturn("host1");
+    when(instanceInfo2.isPortEnabled(SECURE)).thenReturn(true);
+    when(instanceInfo2.getSecurePort()).thenReturn(8443);
+    EurekaService eurekaService2 = new EurekaService(instanceInfo2);
+    assertThat(eurekaService.isTargetEquals(eurekaService2)).isFalse();
+  }
+
   @Test
   public void shouldTargetDifferentForNullInstance() {
     InstanceInfo instanceInfo = Mockito.mock(InstanceInfo.class);
@@ -198,4 +233,50 @@ public class EurekaServiceTest {
     assertThat(eurekaService.equals(eurekaService2)).isFalse();
   }
 
-}
\ No newline at end of file
+  @Test
+  public void shouldCopyOnlySelectedMetadata() {
+    Map<String, String> metadata = new HashMap<>();
+    metadata.put("weight", "10");
+    metadata.put("zone", "zone1");
+    InstanceInfo instanceInfo = Mockito.mock(InstanceInfo.class);
+    when(instanceInfo.getMetadata()).thenReturn(metadata);
+
+    EurekaService eurekaService = new EurekaService(instanceInfo, Arrays.asList("weight", "version"));
+    metadata.put("weight", "20");
+
+    assertThat(eurekaService.metadata()).containsOnly(entry("weight", "10"));
+    assertThat(new EurekaService(instanceInfo).metadata()).isEmpty();
+  }
+
+  @Test
+  public void shouldReadZoneFromAmazonInfoThenMetadata() {
+    InstanceInfo instanceInfo = Mockito.mock(InstanceInfo.class);
+    when(instanceInfo.getDataCenterInfo()).thenReturn(AmazonInfo.Builder.newBuilder()
+        .addMetadata(AmazonInfo.MetaDataKey.availabilityZone, "eu-west-1a")
+        .build());
+    when(instanceInfo.getMetadata()).thenReturn(Collections.singletonMap("zone", "zone1"));
+    assertThat(new EurekaService(instanceInfo).zone()).isEqualTo("eu-west-1a");
+
+    when(instanceInfo.getDataCenterInfo()).thenReturn(() -> DataCenterInfo.Name.MyOwn);
+    assertThat(new EurekaService(instanceInfo).zone()).isEqualTo("zone1");
+
+    when(instanceInfo.getMetadata()).thenReturn(Collections.emptyMap());
+    assertThat(new EurekaService(instanceInfo).zone()).isNull();
+  }
+
+  @Test
+  public void shouldNotReadInstanceInfoAfterConstruction() {
+    InstanceInfo instanceInfo = Mockito.mock(InstanceInfo.class);
+    when(instanceInfo.getId()).thenReturn("1");
+    when(instanceInfo.getHostName()).thenReturn("host");
+    when(instanceInfo.getPort()).thenReturn(8080);
+    EurekaService eurekaService = new EurekaService(instanceInfo);
+    Mockito.reset(instanceInfo);
+
+    assertThat(eurekaService.id()).isEqualTo("eureka:1");
+    assertThat(eurekaService.host()).isEqualTo("host");
+    assertThat(eurekaService.port()).isEqualTo(8080);
+    assertThat(eurekaService.hashCode()).isEqualTo("eureka:1".hashCode());
+    Mockito.verifyZeroInteractions(instanceInfo);
+  }
+}
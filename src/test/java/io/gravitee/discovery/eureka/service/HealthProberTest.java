@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.service;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.gravitee.discovery.eureka.service.EurekaServiceDiffTest.service;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HealthProberTest {
+
+  private final Map<String, CompletableFuture<Boolean>> probes = new LinkedHashMap<>();
+  private final AtomicInteger probed = new AtomicInteger();
+  private final List<String> events = new ArrayList<>();
+  private HealthProber prober;
+  private EurekaServiceDiff.Listener listener;
+
+  @Before
+  public void setUp() {
+    prober = new HealthProber(service -> {
+      CompletableFuture<Boolean> result = new CompletableFuture<>();
+      probes.put(service.host(), result);
+      return result;
+    }, 2, 2, probed::incrementAndGet);
+    listener = new EurekaServiceDiff.Listener() {
+      @Override
+      public void onRegister(EurekaService service) {
+        events.add("register " + service.host());
+      }
+
+      @Override
+      public void onUnregister(EurekaService service) {
+        events.add("unregister " + service.host());
+      }
+
+      @Override
+      public void onUpdate(EurekaService previous, EurekaService service) {
+        events.add("update " + service.host());
+      }
+    };
+  }
+
+  @Test
+  public void shouldHoldBackNewServicesUntilProbedHealthy() {
+    EurekaServiceDiff.Listener gate = prober.gate(listener);
+    gate.onRegister(service("1", "host1", 8080));
+    gate.onRegister(service("2", "host2", 8080));
+
+    assertThat(events).isEmpty();
+    assertThat(prober.pending()).isEqualTo(2);
+
+    probes.get("host1").complete(true);
+    probes.get("host2").complete(false);
+    prober.drain(listener);
+
+    assertThat(probed).hasValue(2);
+    assertThat(events).containsExactly("register host1");
+    assertThat(prober.pending()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldBoundConcurrentProbes() {
+    EurekaServiceDiff.Listener gate = prober.gate(listener);
+    gate.onRegister(service("1", "host1", 8080));
+    gate.onRegister(service("2", "host2", 8080));
+    gate.onRegister(service("3", "host3", 8080));
+
+    assertThat(probes).containsOnlyKeys("host1", "host2");
+
+    probes.get("host1").complete(true);
+
+    assertThat(probes).containsOnlyKeys("host1", "host2", "host3");
+  }
+
+  @Test
+  public void shouldUnpublishServiceAfterConsecutiveFailedProbes() {
+    EurekaServiceDiff.Listener gate = prober.gate(listener);
+    gate.onRegister(service("1", "host1", 8080));
+    probes.remove("host1").complete(true);
+    prober.drain(listener);
+
+    prober.probeAll();
+    probes.remove("host1").complete(false);
+    prober.drain(listener);
+    assertThat(events).containsExactly("register host1");
+
+    prober.probeAll();
+    probes.remove("host1").complete(false);
+    prober.drain(listener);
+    assertThat(events).containsExactly("register host1", "unregister host1");
+
+    prober.probeAll();
+    probes.remove("host1").complete(true);
+    prober.drain(listener);
+    assertThat(events).containsExactly("register host1", "unregister host1", "register host1");
+  }
+
+  @Test
+  public void shouldOnlyForwardChangesOfPublishedServices() {
+    EurekaServiceDiff.Listener gate = prober.gate(listener);
+    gate.onRegister(service("1", "host1", 8080));
+    gate.onRegister(service("2", "host2", 8080));
+    probes.get("host1").complete(true);
+    prober.drain(listener);
+
+    gate.onUpdate(service("1", "host1", 8080), service("1", "host3", 8080));
+    gate.onUnregister(service("2", "host2", 8080));
+    gate.onUnregister(service("1", "host3", 8080));
+    probes.get("host2").complete(true);
+    prober.drain(listener);
+
+    assertThat(events).containsExactly("register host1", "update host3", "unregister host3");
+    assertThat(prober.pending()).isZero();
+  }
+}
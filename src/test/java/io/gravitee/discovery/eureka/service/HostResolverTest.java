@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.service;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class HostResolverTest {
+
+  private static final long TTL = 60000;
+
+  private final Map<String, String> dns = new HashMap<>();
+  private final List<String> lookups = new ArrayList<>();
+  private final List<Runnable> pending = new ArrayList<>();
+  private final AtomicInteger changes = new AtomicInteger();
+  private final AtomicLong now = new AtomicLong();
+  private HostResolver resolver;
+
+  @Before
+  public void setUp() {
+    Clock clock = mock(Clock.class);
+    when(clock.millis()).thenAnswer(invocation -> now.get());
+    resolver = new HostResolver(pending::add, host -> {
+      lookups.add(host);
+      return dns.get(host);
+    }, TTL, clock, changes::incrementAndGet);
+  }
+
+  @Test
+  public void shouldResolveHostInBackground() {
+    dns.put("host1", "10.0.0.1");
+
+    assertThat(resolver.address("host1")).isNull();
+    assertThat(resolver.address("host1")).isNull();
+    runPending();
+
+    now.set(1000);
+    assertThat(resolver.address("host1")).isEqualTo("10.0.0.1");
+    assertThat(lookups).containsExactly("host1");
+    assertThat(changes).hasValue(1);
+  }
+
+  @Test
+  public void shouldServeCachedAddressWhileResolvingAgain() {
+    dns.put("host1", "10.0.0.1");
+    resolver.address("host1");
+    runPending();
+
+    dns.put("host1", "10.0.0.2");
+    now.set(TTL);
+    assertThat(resolver.address("host1")).isEqualTo("10.0.0.1");
+    runPending();
+
+    assertThat(resolver.address("host1")).isEqualTo("10.0.0.2");
+    assertThat(changes).hasValue(2);
+  }
+
+  @Test
+  public void shouldKeepLastAddressWhenLookupFails() {
+    dns.put("host1", "10.0.0.1");
+    resolver.address("host1");
+    runPending();
+
+    dns.remove("host1");
+    now.set(TTL);
+    resolver.refresh();
+    runPending();
+
+    assertThat(resolver.address("host1")).isEqualTo("10.0.0.1");
+    assertThat(lookups).hasSize(2);
+    assertThat(changes).hasValue(1);
+  }
+
+  @Test
+  public void shouldRetryUnknownHostAfterNegativeTtl() {
+    resolver.address("unknown");
+    runPending();
+
+    assertThat(resolver.address("unknown")).isNull();
+    assertThat(pending).isEmpty();
+    now.set(HostResolver.NEGATIVE_TTL);
+    assertThat(resolver.address("unknown")).isNull();
+    assertThat(pending).hasSize(1);
+    assertThat(changes).hasValue(0);
+  }
+
+  @Test
+  public void shouldEvictHostsNoLongerRequested() {
+    resolver.address("host1");
+    now.set(2 * TTL);
+    resolver.address("host2");
+
+    now.set(2 * TTL + 1);
+    resolver.refresh();
+
+    assertThat(resolver.size()).isEqualTo(1);
+  }
+
+  private void runPending() {
+    List<Runnable> tasks = new ArrayList<>(pending);
+    pending.clear();
+    tasks.forEach(Runnable::run);
+  }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.service;
+
+import com.netflix.appinfo.InstanceInfo;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class InstanceFilterTest {
+
+  @Test
+  public void shouldOnlyAcceptInstancesUpByDefault() {
+    InstanceFilter filter = InstanceFilter.compile("version=2");
+
+    assertThat(filter.test(instance(InstanceInfo.InstanceStatus.UP, "version", "2"))).isTrue();
+    assertThat(filter.test(instance(InstanceInfo.InstanceStatus.STARTING, "version", "2"))).isFalse();
+    assertThat(filter.test(instance(InstanceInfo.InstanceStatus.UP, "version", "1"))).isFalse();
+    assertThat(filter.test(instance(InstanceInfo.InstanceStatus.UP))).isFalse();
+  }
+
+  @Test
+  public void shouldAcceptRequiredStatuses() {
+    InstanceFilter filter = InstanceFilter.compile("status in (up, OUT_OF_SERVICE), status != UP");
+
+    assertThat(filter.test(instance(InstanceInfo.InstanceStatus.OUT_OF_SERVICE))).isTrue();
+    assertThat(filter.test(instance(InstanceInfo.InstanceStatus.UP))).isFalse();
+    assertThat(filter.test(instance(InstanceInfo.InstanceStatus.STARTING))).isFalse();
+  }
+
+  @Test
+  public void shouldMatchMetadataAndZone() {
+    InstanceFilter filter = InstanceFilter.compile(" version in (2.0, 2.1), !canary, zone notin (eu-west-1c), track ");
+
+    assertThat(filter.test(instance(InstanceInfo.InstanceStatus.UP, "version", "2.1", "zone", "eu-west-1a",
+        "track", "stable"))).isTrue();
+    assertThat(filter.test(instance(InstanceInfo.InstanceStatus.UP, "version", "2.1", "track", "stable"))).isTrue();
+    assertThat(filter.test(instance(InstanceInfo.InstanceStatus.UP, "version", "2.1", "track", "stable",
+        "canary", "true"))).isFalse();
+    assertThat(filter.test(instance(InstanceInfo.InstanceStatus.UP, "version", "2.1", "zone", "eu-west-1c",
+        "track", "stable"))).isFalse();
+    assertThat(filter.test(instance(InstanceInfo.InstanceStatus.UP, "version", "3.0", "track", "stable"))).isFalse();
+    assertThat(filter.test(instance(InstanceInfo.InstanceStatus.UP, "version", "2.0"))).isFalse();
+  }
+
+  @Test
+  public void shouldRejectInvalidExpressions() {
+    assertThatThrownBy(() -> InstanceFilter.compile("version=2,")).hasMessageContaining("empty requirement");
+    assertThatThrownBy(() -> InstanceFilter.compile("version in (1, 2")).hasMessageContaining("unbalanced");
+    assertThatThrownBy(() -> InstanceFilter.compile("version within (1, 2)")).hasMessageContaining("unknown operator");
+    assertThatThrownBy(() -> InstanceFilter.compile("status=RUNNING")).hasMessageContaining("unknown status");
+    assertThatThrownBy(() -> InstanceFilter.compile("!status")).hasMessageContaining("always set");
+    assertThatThrownBy(() -> InstanceFilter.compile("version=")).hasMessageContaining("invalid value");
+  }
+
+  private static InstanceInfo instance(InstanceInfo.InstanceStatus status, String... metadata) {
+    Map<String, String> instanceMetadata = new HashMap<>();
+    for (int i = 0; i < metadata.length; i += 2) {
+      instanceMetadata.put(metadata[i], metadata[i + 1]);
+    }
+    return InstanceInfo.Builder.newBuilder()
+        .setAppName("APP")
+        .setHostName("host")
+        .setStatus(status)
+        .setMetadata(instanceMetadata)
+        .build();
+  }
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.service;
+
+import com.netflix.appinfo.InstanceInfo;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InstanceSelectorTest {
+
+  @Test
+  public void shouldSelectInstancesOfApplications() {
+    InstanceSelector selector = new InstanceSelector(Arrays.asList("blue", "GREEN", " ", null), null, null);
+
+    assertThat(selector.getApplications()).containsExactly("BLUE", "GREEN");
+    assertThat(selector.hasVipAddresses()).isFalse();
+    assertThat(selector.matches(instance("BLUE", null, null))).isTrue();
+    assertThat(selector.matches(instance("green", null, null))).isTrue();
+    assertThat(selector.matches(instance("RED", null, null))).isFalse();
+  }
+
+  @Test
+  public void shouldSelectInstancesByVipAddress() {
+    InstanceSelector selector = new InstanceSelector(Collections.emptyList(), "orders", "orders-secure");
+
+    assertThat(selector.hasVipAddresses()).isTrue();
+    assertThat(selector.matches(instance("APP1", "ORDERS", null))).isTrue();
+    assertThat(selector.matches(instance("APP2", "payments, orders", null))).isTrue();
+    assertThat(selector.matches(instance("APP3", null, "orders-secure"))).isTrue();
+    assertThat(selector.matches(instance("APP4", "orders-secure", "orders"))).isFalse();
+    assertThat(selector.matches(instance("APP5", "orders-v2", null))).isFalse();
+  }
+
+  @Test
+  public void shouldBeEmptyWithoutApplicationNorVipAddress() {
+    assertThat(new InstanceSelector(Collections.singletonList(""), "", null).isEmpty()).isTrue();
+    assertThat(new InstanceSelector(null, null, "orders").isEmpty()).isFalse();
+  }
+
+  private static InstanceInfo instance(String application, String vipAddress, String secureVipAddress) {
+    return InstanceInfo.Builder.newBuilder()
+        .setAppName(application)
+        .setHostName("host")
+        .setVIPAddress(vipAddress)
+        .setSecureVIPAddress(secureVipAddress)
+        .build();
+  }
+}
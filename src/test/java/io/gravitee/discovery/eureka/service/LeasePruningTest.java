@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.service;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.appinfo.LeaseInfo;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LeasePruningTest {
+
+  private static final long NOW = 1_000_000;
+
+  private final LeasePruning leasePruning = new LeasePruning(3, 50);
+
+  @Test
+  public void shouldPruneInstancesWhichMissedRenewals() {
+    InstanceInfo renewed = instance("1", NOW - 30_000);
+    InstanceInfo late = instance("2", NOW - 90_000);
+    InstanceInfo stale = instance("3", NOW - 91_000);
+
+    assertThat(leasePruning.prune("APP", Arrays.asList(renewed, late, stale), NOW)).containsExactly(renewed, late);
+  }
+
+  @Test
+  public void shouldKeepInstancesWithUnknownLease() {
+    InstanceInfo unknown = InstanceInfo.Builder.newBuilder().setAppName("APP").setInstanceId("1").build();
+    InstanceInfo restored = instance("2", 0);
+
+    assertThat(leasePruning.prune("APP", Arrays.asList(unknown, restored), NOW)).containsExactly(unknown, restored);
+  }
+
+  @Test
+  public void shouldNotPruneBeyondSafetyCap() {
+    List<InstanceInfo> partitioned = Arrays.asList(
+        instance("1", NOW), instance("2", NOW - 120_000), instance("3", NOW - 120_000));
+    List<InstanceInfo> allStale = Arrays.asList(instance("1", NOW - 120_000), instance("2", NOW - 120_000));
+
+    assertThat(leasePruning.prune("APP", partitioned, NOW)).hasSize(3);
+    assertThat(new LeasePruning(3, 99).prune("APP", allStale, NOW)).hasSize(2);
+  }
+
+  private static InstanceInfo instance(String id, long renewalTimestamp) {
+    return InstanceInfo.Builder.newBuilder()
+        .setAppName("APP")
+        .setInstanceId(id)
+        .setHostName("host" + id)
+        .setStatus(InstanceInfo.InstanceStatus.UP)
+        .setLeaseInfo(LeaseInfo.Builder.newBuilder()
+            .setRenewalIntervalInSecs(30)
+            .setRenewalTimestamp(renewalTimestamp)
+            .build())
+        .build();
+  }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.service;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static io.gravitee.discovery.eureka.service.EurekaServiceDiffTest.service;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PanicGuardTest {
+
+  private final PanicGuard guard = new PanicGuard("APP", 50, 60000);
+
+  private final EurekaService service1 = service("1", "host1", 8080);
+  private final EurekaService service2 = service("2", "host2", 8080);
+  private final EurekaService service3 = service("3", "host3", 8080);
+  private final EurekaService service4 = service("4", "host4", 8080);
+
+  @Test
+  public void shouldApplyShrinkOverThreshold() {
+    guard.guard(Arrays.asList(service1, service2, service3, service4), 0);
+
+    List<EurekaService> services = guard.guard(Arrays.asList(service1, service2), 1000);
+
+    assertThat(services).containsExactly(service1, service2);
+    assertThat(guard.isPanicking()).isFalse();
+    assertThat(guard.deadline()).isEqualTo(-1);
+  }
+
+  @Test
+  public void shouldKeepLastKnownGoodServicesUnderThreshold() {
+    guard.guard(Arrays.asList(service1, service2, service3, service4), 0);
+
+    List<EurekaService> services = guard.guard(Collections.singletonList(service1), 1000);
+    assertThat(services).containsExactly(service1, service2, service3, service4);
+    assertThat(guard.isPanicking()).isTrue();
+    assertThat(guard.deadline()).isEqualTo(61000);
+
+    // New and updated services are merged in
+    services = guard.guard(Collections.singletonList(service("1", "host5", 8080)), 20000);
+    assertThat(services).extracting(EurekaService::host).containsExactly("host5", "host2", "host3", "host4");
+    services = guard.guard(Collections.singletonList(service("5", "host5", 8080)), 30000);
+    assertThat(services).extracting(EurekaService::id)
+        .containsExactly("eureka:1", "eureka:2", "eureka:3", "eureka:4", "eureka:5");
+    assertThat(guard.deadline()).isEqualTo(61000);
+  }
+
+  @Test
+  public void shouldApplyShrinkPersistingForDuration() {
+    guard.guard(Arrays.asList(service1, service2, service3, service4), 0);
+    guard.guard(Collections.emptyList(), 1000);
+
+    assertThat(guard.guard(Collections.emptyList(), 61000)).isEmpty();
+    assertThat(guard.isPanicking()).isFalse();
+
+    // The shrunk services are now the last known good ones
+    assertThat(guard.guard(Collections.singletonList(service1), 62000)).containsExactly(service1);
+  }
+
+  @Test
+  public void shouldExitPanicOnceServicesAreBack() {
+    guard.guard(Arrays.asList(service1, service2, service3, service4), 0);
+    guard.guard(Collections.singletonList(service1), 1000);
+
+    List<EurekaService> services = guard.guard(Arrays.asList(service1, service2, service3), 2000);
+
+    assertThat(services).containsExactly(service1, service2, service3);
+    assertThat(guard.isPanicking()).isFalse();
+  }
+
+  @Test
+  public void shouldKeepServicesUntilBackWithoutDuration() {
+    PanicGuard guard = new PanicGuard("APP", 50, 0);
+    guard.guard(Arrays.asList(service1, service2), 0);
+
+    assertThat(guard.guard(Collections.emptyList(), Long.MAX_VALUE)).containsExactly(service1, service2);
+    assertThat(guard.isPanicking()).isTrue();
+    assertThat(guard.deadline()).isEqualTo(-1);
+  }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.service;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.appinfo.LeaseInfo;
+import io.gravitee.discovery.eureka.configuration.SlowStartCurve;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SlowStartTest {
+
+  private static final long WINDOW = 10000;
+
+  @Test
+  public void shouldRampUpWeightLinearly() {
+    SlowStart slowStart = new SlowStart(WINDOW, SlowStartCurve.LINEAR);
+
+    assertThat(slowStart.weight(2, 0)).isEqualTo(2);
+    assertThat(slowStart.weight(2, WINDOW / 2)).isEqualTo(11);
+    assertThat(slowStart.weight(2, WINDOW)).isEqualTo(20);
+    assertThat(slowStart.weight(2, 2 * WINDOW)).isEqualTo(20);
+  }
+
+  @Test
+  public void shouldRampUpWeightExponentially() {
+    SlowStart slowStart = new SlowStart(WINDOW, SlowStartCurve.EXPONENTIAL);
+
+    assertThat(slowStart.weight(10, 0)).isEqualTo(10);
+    assertThat(slowStart.weight(10, WINDOW / 2)).isEqualTo(32);
+    assertThat(slowStart.weight(10, WINDOW)).isEqualTo(100);
+  }
+
+  @Test
+  public void shouldGiveFullWeightToInstancesStartedBeforeWindow() {
+    SlowStart slowStart = new SlowStart(WINDOW, SlowStartCurve.LINEAR);
+
+    assertThat(slowStart.weigh(service("1", 1000), 1000 + WINDOW, false).weight()).isEqualTo(SlowStart.SCALE);
+    assertThat(slowStart.weigh(service("2", 0), 1000, true).weight()).isEqualTo(SlowStart.SCALE);
+    assertThat(slowStart.isRamping()).isFalse();
+  }
+
+  @Test
+  public void shouldRampUpNewInstancesUntilEndOfWindow() {
+    SlowStart slowStart = new SlowStart(WINDOW, SlowStartCurve.LINEAR);
+    EurekaServiceDiff diff = new EurekaServiceDiff();
+    List<Integer> weights = new ArrayList<>();
+    EurekaServiceDiff.Listener listener = new EurekaServiceDiff.Listener() {
+      @Override
+      public void onRegister(EurekaService service) {
+        weights.add(service.weight());
+      }
+
+      @Override
+      public void onUnregister(EurekaService service) {
+      }
+
+      @Override
+      public void onUpdate(EurekaService previous, EurekaService service) {
+        weights.add(service.weight());
+      }
+    };
+
+    // Start time unknown, counted from the first time the instance is seen
+    diff.apply(Collections.singletonList(slowStart.weigh(service("1", 0), 1000, false)), listener);
+    assertThat(slowStart.isRamping()).isTrue();
+
+    slowStart.step(1000 + WINDOW / 2, diff, listener);
+    slowStart.step(1000 + WINDOW, diff, listener);
+    slowStart.step(1000 + 2 * WINDOW, diff, listener);
+
+    assertThat(weights).containsExactly(1, 6, 10);
+    assertThat(slowStart.isRamping()).isFalse();
+  }
+
+  @Test
+  public void shouldStopRampingInstancesGoneDown() {
+    SlowStart slowStart = new SlowStart(WINDOW, SlowStartCurve.LINEAR);
+    EurekaServiceDiff diff = new EurekaServiceDiff();
+    slowStart.weigh(service("1", 1000), 1000, false);
+
+    slowStart.step(2000, diff, null);
+
+    assertThat(slowStart.isRamping()).isFalse();
+  }
+
+  private static EurekaService service(String id, long upSince) {
+    return new EurekaService(InstanceInfo.Builder.newBuilder()
+        .setAppName("APP")
+        .setInstanceId(id)
+        .setHostName("host" + id)
+        .setStatus(InstanceInfo.InstanceStatus.UP)
+        .setLeaseInfo(LeaseInfo.Builder.newBuilder().setServiceUpTimestamp(upSince).build())
+        .build());
+  }
+}
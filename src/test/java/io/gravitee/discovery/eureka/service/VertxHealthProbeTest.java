@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.service;
+
+import com.netflix.appinfo.InstanceInfo;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class VertxHealthProbeTest {
+
+  private Vertx vertx;
+  private HttpServer server;
+  private VertxHealthProbe probe;
+
+  @Before
+  public void setUp() {
+    vertx = Vertx.vertx();
+    CompletableFuture<HttpServer> started = new CompletableFuture<>();
+    vertx.createHttpServer()
+        .requestHandler(request -> {
+          if (request.path().equals("/large")) {
+            request.response().end(Buffer.buffer(new byte[1024 * 1024]));
+          } else {
+            request.response().setStatusCode(request.path().equals("/health") ? 200 : 503).end();
+          }
+        })
+        .listen(0, "localhost", result -> started.complete(result.result()));
+    server = started.join();
+    probe = new VertxHealthProbe(vertx, 1000, true);
+  }
+
+  @After
+  public void tearDown() {
+    probe.close();
+    vertx.close();
+  }
+
+  @Test(timeout = 10000)
+  public void shouldProbeHealthCheckUrl() {
+    assertThat(probe.probe(service("http://localhost:" + server.actualPort() + "/health", 1)).join()).isTrue();
+    assertThat(probe.probe(service("http://localhost:" + server.actualPort() + "/down", 1)).join()).isFalse();
+  }
+
+  @Test(timeout = 10000)
+  public void shouldNotReadBodyOfHealthCheck() {
+    for (int i = 0; i < 20; i++) {
+      assertThat(probe.probe(service("http://localhost:" + server.actualPort() + "/large", 1)).join()).isTrue();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void shouldConnectToPortWithoutHealthCheckUrl() {
+    assertThat(probe.probe(service(null, server.actualPort())).join()).isTrue();
+
+    CompletableFuture<Void> closed = new CompletableFuture<>();
+    int port = server.actualPort();
+    server.close(result -> closed.complete(null));
+    closed.join();
+    assertThat(probe.probe(service(null, port)).join()).isFalse();
+  }
+
+  private static EurekaService service(String healthCheckUrl, int port) {
+    InstanceInfo.Builder builder = InstanceInfo.Builder.newBuilder()
+        .setAppName("APP")
+        .setInstanceId("1")
+        .setHostName("localhost")
+        .setPort(port)
+        .setStatus(InstanceInfo.InstanceStatus.UP);
+    if (healthCheckUrl != null) {
+      builder.setHealthCheckUrls(null, healthCheckUrl, null);
+    }
+    return new EurekaService(builder.build());
+  }
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.discovery.eureka.service;
+
+import com.netflix.appinfo.InstanceInfo;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ZoneAffinityTest {
+
+  private final ZoneAffinity zoneAffinity = new ZoneAffinity("zone-a", 50);
+
+  @Test
+  public void shouldSelectServicesOfGatewayZone() {
+    List<EurekaService> services = Arrays.asList(
+        service("1", "zone-a"), service("2", "zone-a"), service("3", "zone-b"), service("4", "zone-b"));
+
+    assertThat(zoneAffinity.select(services)).extracting(EurekaService::host).containsExactly("1", "2");
+    assertThat(zoneAffinity.isOverflowing()).isFalse();
+  }
+
+  @Test
+  public void shouldOverflowWhenGatewayZoneCapacityIsTooLow() {
+    List<EurekaService> services = new ArrayList<>();
+    services.add(service("1", "zone-a"));
+    for (int i = 2; i <= 7; i++) {
+      services.add(service(Integer.toString(i), i % 2 == 0 ? "zone-b" : "zone-c"));
+    }
+
+    assertThat(zoneAffinity.select(services)).hasSize(7);
+    assertThat(zoneAffinity.isOverflowing()).isTrue();
+
+    services.add(service("8", "zone-a"));
+    assertThat(zoneAffinity.select(services)).extracting(EurekaService::host).containsExactly("1", "8");
+    assertThat(zoneAffinity.isOverflowing()).isFalse();
+  }
+
+  @Test
+  public void shouldOverflowWhenNoServiceInGatewayZone() {
+    List<EurekaService> services = Arrays.asList(service("1", "zone-b"), service("2", null));
+
+    assertThat(zoneAffinity.select(services)).hasSize(2);
+    assertThat(zoneAffinity.select(Collections.emptyList())).isEmpty();
+  }
+
+  private static EurekaService service(String id, String zone) {
+    InstanceInfo.Builder builder = InstanceInfo.Builder.newBuilder()
+        .setAppName("APP")
+        .setInstanceId(id)
+        .setHostName(id)
+        .setStatus(InstanceInfo.InstanceStatus.UP);
+    if (zone != null) {
+      builder.add("zone", zone);
+    }
+    return new EurekaService(builder.build());
+  }
+}